@@ -1,4 +1,5 @@
 /* Setting up PROD DB */
+/* Indexes and later schema changes are applied at startup from src/main/resources/db/migration */
 create database prod;
 use prod;
 
@@ -45,9 +46,9 @@ create table ticket(
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(4,true,'CAR');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(5,true,'CAR');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(6,true,'CAR');
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(4,true,'BIKE');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(5,true,'BIKE');
 commit;
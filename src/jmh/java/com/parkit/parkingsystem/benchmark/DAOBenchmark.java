@@ -0,0 +1,169 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.ConnectionPoolSettings;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Round trip of each DAO method against H2 in MySQL mode, seeded with a synthetic
+// history. The DAO caches are left off so every call reaches the database.
+// SampleTime reports the p50/p99/p999 latencies, Throughput the calls per second.
+// indexes=false drops the indexes of V2__hot_query_indexes.sql after migrating.
+// The defaults keep a run short, use -p tickets=10000000 for production-sized tables.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class DAOBenchmark {
+
+	private static final String SEED_PARKING = "insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) "
+			+ "select X, mod(X, 10) >= 7, case when mod(X, 5) = 0 then 'BIKE' else 'CAR' end from system_range(1, ?)";
+	// a ticket every minute, plates come back every few days, the last spotCount tickets are still open
+	private static final String SEED_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) "
+			+ "select mod(X, ?) + 1, concat('P', mod(X * 7919, ?)), 1.5, dateadd('MINUTE', X, timestamp '2000-01-01 00:00:00'), "
+			+ "case when X > ? then null else dateadd('MINUTE', X + 90, timestamp '2000-01-01 00:00:00') end from system_range(1, ?)";
+
+	@Param({ "10000" })
+	private int spots;
+
+	@Param({ "1000000" })
+	private int tickets;
+
+	@Param({ "200000" })
+	private int plates;
+
+	@Param({ "true", "false" })
+	private boolean indexes;
+
+	@Param({ "true", "false" })
+	private boolean pooled;
+
+	private DataBaseConfig dataBaseConfig;
+	private ParkingSpotDAO parkingSpotDAO;
+	private TicketDAO ticketDAO;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		String url = "jdbc:h2:mem:dao-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1";
+		dataBaseConfig = new DataBaseConfig() {
+			@Override
+			protected Connection createConnection() throws SQLException {
+				return DriverManager.getConnection(url, "sa", "");
+			}
+		};
+		new SchemaMigrator(dataBaseConfig).migrate();
+		try (Connection con = dataBaseConfig.getConnection()) {
+			if (!indexes) {
+				try (Statement statement = con.createStatement()) {
+					statement.execute("drop index IDX_TICKET_PLATE_IN_TIME");
+					statement.execute("drop index IDX_TICKET_OPEN");
+					statement.execute("drop index IDX_PARKING_TYPE_AVAILABLE");
+				}
+			}
+			try (PreparedStatement ps = con.prepareStatement(SEED_PARKING)) {
+				ps.setInt(1, spots);
+				ps.executeUpdate();
+			}
+			try (PreparedStatement ps = con.prepareStatement(SEED_TICKET)) {
+				ps.setInt(1, spots);
+				ps.setInt(2, plates);
+				ps.setInt(3, tickets - spots);
+				ps.setInt(4, tickets);
+				ps.executeUpdate();
+			}
+			try (Statement statement = con.createStatement()) {
+				statement.execute("analyze");
+			}
+		}
+		if (pooled) {
+			dataBaseConfig.enablePooling(new ConnectionPoolSettings());
+		}
+		parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+		ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		dataBaseConfig.shutdown();
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute("shutdown");
+		}
+	}
+
+	@Benchmark
+	public int getNextAvailableSlot() {
+		return parkingSpotDAO.getNextAvailableSlot(ThreadLocalRandom.current().nextBoolean() ? ParkingType.CAR : ParkingType.BIKE);
+	}
+
+	@Benchmark
+	public boolean updateParking() {
+		// flips a random spot, so the share of free spots stays about the same
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int parkingNumber = 1 + random.nextInt(spots);
+		ParkingType parkingType = parkingNumber % 5 == 0 ? ParkingType.BIKE : ParkingType.CAR;
+		return parkingSpotDAO.updateParking(new ParkingSpot(parkingNumber, parkingType, random.nextBoolean()));
+	}
+
+	@Benchmark
+	public boolean saveTicket() {
+		int parkingNumber = 1 + ThreadLocalRandom.current().nextInt(spots);
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingNumber % 5 == 0 ? ParkingType.BIKE : ParkingType.CAR, false));
+		ticket.setVehicleRegNumber(randomPlate());
+		ticket.setInTime(new Date());
+		return ticketDAO.saveTicket(ticket);
+	}
+
+	@Benchmark
+	public Ticket getTicket() {
+		return ticketDAO.getTicket(randomPlate());
+	}
+
+	@Benchmark
+	public int getNbTicket() {
+		return ticketDAO.getNbTicket(randomPlate());
+	}
+
+	@Benchmark
+	public boolean updateTicket() {
+		Ticket ticket = new Ticket();
+		ticket.setId(1 + ThreadLocalRandom.current().nextInt(tickets));
+		ticket.setPrice(1.5);
+		ticket.setOutTime(new Date());
+		return ticketDAO.updateTicket(ticket);
+	}
+
+	private String randomPlate() {
+		return "P" + ThreadLocalRandom.current().nextInt(plates);
+	}
+}
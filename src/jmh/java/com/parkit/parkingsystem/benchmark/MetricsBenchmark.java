@@ -0,0 +1,58 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// What a timed call pays for its metrics: two nanoTime reads and a histogram record,
+// or a counter increment. The grouped benchmarks record from 8 threads into the same
+// histogram and counter, like gates do. All of them should stay well under 1us.
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+	private final LatencyHistogram histogram = new LatencyHistogram("benchmark");
+	private final Counter counter = new Counter("benchmark");
+
+	@Benchmark
+	@Group("recordSince")
+	public void recordSince() {
+		histogram.recordSince(System.nanoTime());
+	}
+
+	@Benchmark
+	@Group("recordSinceContended")
+	@GroupThreads(8)
+	public void recordSinceContended() {
+		histogram.recordSince(System.nanoTime());
+	}
+
+	@Benchmark
+	@Group("increment")
+	public void increment() {
+		counter.increment();
+	}
+
+	@Benchmark
+	@Group("incrementContended")
+	@GroupThreads(8)
+	public void incrementContended() {
+		counter.increment();
+	}
+}
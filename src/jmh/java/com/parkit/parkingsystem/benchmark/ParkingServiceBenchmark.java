@@ -0,0 +1,133 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryStorageEngine;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+// Entry and exit against the in-memory storage engine, so only the service logic
+// and the in-process stores are measured. Each is measured on its own, over a
+// batch of BATCH vehicles: every iteration starts from an empty lot for the
+// entries and from a lot holding the batch for the exits. Scores are the time of
+// a whole batch.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20, batchSize = ParkingServiceBenchmark.BATCH)
+@Measurement(iterations = 50, batchSize = ParkingServiceBenchmark.BATCH)
+@Fork(1)
+public class ParkingServiceBenchmark {
+
+	static final int BATCH = 1000;
+
+	// true when every vehicle of the batch was parked once before, so it gets the discount
+	@Param({ "false", "true" })
+	private boolean returning;
+
+	private ParkingService entryService;
+	private ScriptedInput entryInput;
+	private ParkingService exitService;
+	private ScriptedInput exitInput;
+	private PrintStream stdout;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// the service prints to the console on every entry and exit
+		stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpLots() {
+		entryInput = new ScriptedInput();
+		entryService = newLot(entryInput);
+		exitInput = new ScriptedInput();
+		exitService = newLot(exitInput);
+		for (String vehicleRegNumber : exitInput.vehicleRegNumbers) {
+			exitService.enter(vehicleRegNumber, ParkingType.CAR);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(stdout);
+	}
+
+	@Benchmark
+	public void processIncomingVehicle() {
+		entryInput.nextVehicle();
+		entryService.processIncomingVehicle();
+	}
+
+	@Benchmark
+	public void processExitingVehicle() {
+		exitInput.nextVehicle();
+		exitService.processExitingVehicle();
+	}
+
+	private ParkingService newLot(ScriptedInput input) {
+		InMemoryStorageEngine storageEngine = new InMemoryStorageEngine(BATCH, 1);
+		ParkingService parkingService = new ParkingService(input, storageEngine.getParkingSpotStore(),
+				storageEngine.getTicketStore());
+		if (returning) {
+			for (String vehicleRegNumber : input.vehicleRegNumbers) {
+				parkingService.enter(vehicleRegNumber, ParkingType.CAR);
+				parkingService.exit(vehicleRegNumber);
+			}
+		}
+		return parkingService;
+	}
+
+	private static final class ScriptedInput extends InputReaderUtil {
+		private final String[] vehicleRegNumbers = new String[BATCH];
+		private int next;
+		private String vehicleRegNumber;
+
+		private ScriptedInput() {
+			for (int i = 0; i < BATCH; i++) {
+				vehicleRegNumbers[i] = "BM" + i;
+			}
+		}
+
+		private void nextVehicle() {
+			vehicleRegNumber = vehicleRegNumbers[next];
+			next = (next + 1) % vehicleRegNumbers.length;
+		}
+
+		@Override
+		public int readSelection() {
+			// car
+			return 1;
+		}
+
+		@Override
+		public String readVehicleRegistrationNumber() {
+			return vehicleRegNumber;
+		}
+	}
+}
@@ -1,13 +1,35 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.dao.TicketExporter;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.MetricsReporter;
 import com.parkit.parkingsystem.service.InteractiveShell;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
     public static void main(String args[]){
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        Metrics.registerMBeans();
+        long dumpSeconds = Long.getLong(MetricsReporter.DUMP_SECONDS_PROPERTY, 60);
+        if(dumpSeconds > 0){
+            new MetricsReporter(dumpSeconds, TimeUnit.SECONDS);
+        }
+        if(args.length > 0 && "gate-server".equals(args[0])){
+            InteractiveShell.loadGateServer();
+        }else if(args.length > 0 && "gate-endpoint".equals(args[0])){
+            InteractiveShell.loadGateEndpoint(args.length > 1 ? Integer.parseInt(args[1]) : 7070);
+        }else if(args.length > 1 && "export".equals(args[0])){
+            InteractiveShell.exportTickets(Paths.get(args[1]),
+                    args.length > 2 ? TicketExporter.Format.valueOf(args[2].toUpperCase()) : TicketExporter.Format.CSV);
+        }else if(args.length > 0 && "rebuild-rollups".equals(args[0])){
+            InteractiveShell.rebuildRollups(args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors());
+        }else{
+            InteractiveShell.loadInterface();
+        }
     }
 }
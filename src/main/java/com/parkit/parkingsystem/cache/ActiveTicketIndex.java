@@ -0,0 +1,45 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Open tickets by vehicle plate. Callers get copies, so a ticket being priced
+// on exit is not visible to other gates until updateTicket has persisted it.
+public class ActiveTicketIndex {
+
+    private final ConcurrentHashMap<String, Ticket> openTickets = new ConcurrentHashMap<>();
+
+    public void put(Ticket ticket) {
+        openTickets.put(ticket.getVehicleRegNumber(), copyOf(ticket));
+    }
+
+    public Ticket get(String vehicleRegNumber) {
+        Ticket ticket = openTickets.get(vehicleRegNumber);
+        return ticket == null ? null : copyOf(ticket);
+    }
+
+    public boolean remove(Ticket ticket) {
+        Ticket indexed = openTickets.get(ticket.getVehicleRegNumber());
+        return indexed != null && indexed.getId() == ticket.getId()
+                && openTickets.remove(ticket.getVehicleRegNumber(), indexed);
+    }
+
+    public int size() {
+        return openTickets.size();
+    }
+
+    private static Ticket copyOf(Ticket ticket) {
+        Ticket copy = new Ticket();
+        copy.setId(ticket.getId());
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        copy.setParkingSpot(parkingSpot == null ? null
+                : new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+        copy.setPrice(ticket.getPrice());
+        copy.setInTime(ticket.getInTime());
+        copy.setOutTime(ticket.getOutTime());
+        return copy;
+    }
+}
@@ -0,0 +1,109 @@
+package com.parkit.parkingsystem.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free bitset where a set bit is a free spot. A second level of summary
+ * bits points at the words that may still hold free bits, so finding the
+ * lowest free spot touches a handful of words whatever the size of the lot.
+ */
+public class AtomicSpotBitSet {
+
+    private final int size;
+    private final AtomicLongArray words;
+    private final AtomicLongArray summary;
+
+    public AtomicSpotBitSet(int size) {
+        this.size = size;
+        int wordCount = (size + 63) >>> 6;
+        this.words = new AtomicLongArray(wordCount);
+        this.summary = new AtomicLongArray((wordCount + 63) >>> 6);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFree(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    public boolean free(int index) {
+        checkIndex(index);
+        int w = index >>> 6;
+        long bit = 1L << index;
+        long previous = words.getAndAccumulate(w, bit, (v, b) -> v | b);
+        markWord(w);
+        return (previous & bit) == 0;
+    }
+
+    public boolean claim(int index) {
+        checkIndex(index);
+        int w = index >>> 6;
+        long bit = 1L << index;
+        long previous = words.getAndAccumulate(w, ~bit, (v, b) -> v & b);
+        return (previous & bit) != 0;
+    }
+
+    public int claimLowest() {
+        for (int s = 0; s < summary.length(); s++) {
+            long summaryWord;
+            while ((summaryWord = summary.get(s)) != 0) {
+                int w = (s << 6) + Long.numberOfTrailingZeros(summaryWord);
+                int index = claimInWord(w);
+                if (index >= 0) {
+                    return index;
+                }
+                // word is exhausted: drop its hint, then re-check so a concurrent free is not lost
+                long hint = 1L << w;
+                summary.getAndAccumulate(s, ~hint, (v, b) -> v & b);
+                if (words.get(w) != 0) {
+                    markWord(w);
+                }
+            }
+        }
+        return -1;
+    }
+
+    public int lowestFree() {
+        for (int w = 0; w < words.length(); w++) {
+            long word = words.get(w);
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (int w = 0; w < words.length(); w++) {
+            count += Long.bitCount(words.get(w));
+        }
+        return count;
+    }
+
+    private int claimInWord(int w) {
+        while (true) {
+            long word = words.get(w);
+            if (word == 0) {
+                return -1;
+            }
+            long lowest = word & -word;
+            if (words.compareAndSet(w, word, word & ~lowest)) {
+                return (w << 6) + Long.numberOfTrailingZeros(lowest);
+            }
+        }
+    }
+
+    private void markWord(int w) {
+        long hint = 1L << w;
+        summary.getAndAccumulate(w >>> 6, hint, (v, b) -> v | b);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Spot index " + index + " outside [0," + size + ")");
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.parkit.parkingsystem.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Scalable Bloom filter of every plate that has a ticket. A negative answer is
+ * exact, so a first-time visitor needs no count query. When a stage fills up
+ * a bigger one is added with a tighter error rate, which keeps the overall
+ * false-positive rate under the target however many plates are added.
+ */
+public class KnownPlateFilter {
+
+    private static final int FILE_MAGIC = 0x504c4246; // "PLBF"
+    private static final int FILE_VERSION = 1;
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final int initialCapacity;
+    private final double falsePositiveRate;
+    private final CopyOnWriteArrayList<Stage> stages = new CopyOnWriteArrayList<>();
+    private final AtomicLong highestTicketId = new AtomicLong();
+
+    private final AtomicLong negatives = new AtomicLong();
+    private final AtomicLong positives = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public KnownPlateFilter(int initialCapacity, double falsePositiveRate) {
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+        stages.add(new Stage(initialCapacity, falsePositiveRate * (1 - TIGHTENING_RATIO)));
+    }
+
+    public void add(String vehicleRegNumber) {
+        long hash = hash(vehicleRegNumber);
+        for (Stage stage : stages) {
+            if (stage.contains(hash)) {
+                return;
+            }
+        }
+        currentStage().add(hash);
+    }
+
+    public boolean mightContain(String vehicleRegNumber) {
+        long hash = hash(vehicleRegNumber);
+        for (Stage stage : stages) {
+            if (stage.contains(hash)) {
+                positives.incrementAndGet();
+                return true;
+            }
+        }
+        negatives.incrementAndGet();
+        return false;
+    }
+
+    // called when the DB finds no ticket for a plate the filter reported as known
+    public void recordFalsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    public void recordTicketId(long ticketId) {
+        long highest;
+        while (ticketId > (highest = highestTicketId.get()) && !highestTicketId.compareAndSet(highest, ticketId)) {
+        }
+    }
+
+    public long getHighestTicketId() {
+        return highestTicketId.get();
+    }
+
+    public long getNegativeCount() {
+        return negatives.get();
+    }
+
+    public long getPositiveCount() {
+        return positives.get();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositives.get();
+    }
+
+    public double getObservedFalsePositiveRate() {
+        long unknownPlates = falsePositives.get() + negatives.get();
+        return unknownPlates == 0 ? 0 : falsePositives.get() / (double) unknownPlates;
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(initialCapacity);
+            out.writeDouble(falsePositiveRate);
+            out.writeLong(highestTicketId.get());
+            out.writeInt(stages.size());
+            for (Stage stage : stages) {
+                out.writeInt(stage.capacity);
+                out.writeInt(stage.hashCount);
+                out.writeInt(stage.count.get());
+                out.writeInt(stage.bits.length());
+                for (int i = 0; i < stage.bits.length(); i++) {
+                    out.writeLong(stage.bits.get(i));
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static KnownPlateFilter load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not a known plate filter file: " + file);
+            }
+            KnownPlateFilter filter = new KnownPlateFilter(in.readInt(), in.readDouble());
+            filter.highestTicketId.set(in.readLong());
+            int stageCount = in.readInt();
+            filter.stages.clear();
+            for (int s = 0; s < stageCount; s++) {
+                int capacity = in.readInt();
+                int hashCount = in.readInt();
+                int count = in.readInt();
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                filter.stages.add(new Stage(capacity, hashCount, count, words));
+            }
+            return filter;
+        }
+    }
+
+    private Stage currentStage() {
+        Stage last = stages.get(stages.size() - 1);
+        if (last.count.get() < last.capacity) {
+            return last;
+        }
+        synchronized (stages) {
+            last = stages.get(stages.size() - 1);
+            if (last.count.get() >= last.capacity) {
+                double rate = falsePositiveRate * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, stages.size());
+                last = new Stage(last.capacity * GROWTH_FACTOR, rate);
+                stages.add(last);
+            }
+            return last;
+        }
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over the UTF-8 bytes, finished with the murmur3 avalanche step
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Stage {
+        private final int capacity;
+        private final int hashCount;
+        private final long bitCount;
+        private final AtomicLongArray bits;
+        private final AtomicInteger count;
+
+        private Stage(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.hashCount = Math.max(1, (int) Math.round((double) m / capacity * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((m + 63) >>> 6));
+            this.bitCount = bits.length() * 64L;
+            this.count = new AtomicInteger();
+        }
+
+        private Stage(int capacity, int hashCount, int count, long[] words) {
+            this.capacity = capacity;
+            this.hashCount = hashCount;
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = words.length * 64L;
+            this.count = new AtomicInteger(count);
+        }
+
+        private void add(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+                long mask = 1L << index;
+                bits.getAndAccumulate((int) (index >>> 6), mask, (v, m) -> v | m);
+            }
+            count.incrementAndGet();
+        }
+
+        private boolean contains(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public class ParkingSpotAllocator {
+
+    private final Map<ParkingType, TypeSpots> spotsByType = new EnumMap<>(ParkingType.class);
+
+    public ParkingSpotAllocator(List<ParkingSpot> parkingSpots) {
+        Map<ParkingType, List<ParkingSpot>> grouped = new EnumMap<>(ParkingType.class);
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            grouped.computeIfAbsent(parkingSpot.getParkingType(), t -> new ArrayList<>()).add(parkingSpot);
+        }
+        for (Map.Entry<ParkingType, List<ParkingSpot>> entry : grouped.entrySet()) {
+            spotsByType.put(entry.getKey(), new TypeSpots(entry.getValue()));
+        }
+    }
+
+    public int claim(ParkingType parkingType) {
+        TypeSpots spots = spotsByType.get(parkingType);
+        if (spots == null) {
+            return -1;
+        }
+        int index = spots.free.claimLowest();
+        return index < 0 ? -1 : spots.numbers[index];
+    }
+
+    public int peek(ParkingType parkingType) {
+        TypeSpots spots = spotsByType.get(parkingType);
+        if (spots == null) {
+            return -1;
+        }
+        int index = spots.free.lowestFree();
+        return index < 0 ? -1 : spots.numbers[index];
+    }
+
+    public boolean claim(ParkingSpot parkingSpot) {
+        TypeSpots spots = spotsByType.get(parkingSpot.getParkingType());
+        int index = spots == null ? -1 : spots.indexOf(parkingSpot.getId());
+        return index >= 0 && spots.free.claim(index);
+    }
+
+    public boolean release(ParkingSpot parkingSpot) {
+        TypeSpots spots = spotsByType.get(parkingSpot.getParkingType());
+        int index = spots == null ? -1 : spots.indexOf(parkingSpot.getId());
+        return index >= 0 && spots.free.free(index);
+    }
+
+    public boolean isClaimed(ParkingSpot parkingSpot) {
+        TypeSpots spots = spotsByType.get(parkingSpot.getParkingType());
+        int index = spots == null ? -1 : spots.indexOf(parkingSpot.getId());
+        return index >= 0 && !spots.free.isFree(index);
+    }
+
+    public int getAvailableCount(ParkingType parkingType) {
+        TypeSpots spots = spotsByType.get(parkingType);
+        return spots == null ? 0 : spots.free.cardinality();
+    }
+
+    public int getCapacity(ParkingType parkingType) {
+        TypeSpots spots = spotsByType.get(parkingType);
+        return spots == null ? 0 : spots.numbers.length;
+    }
+
+    private static final class TypeSpots {
+        // sorted, so the lowest free bit is the lowest free PARKING_NUMBER
+        private final int[] numbers;
+        private final AtomicSpotBitSet free;
+
+        private TypeSpots(List<ParkingSpot> parkingSpots) {
+            int[] sorted = new int[parkingSpots.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = parkingSpots.get(i).getId();
+            }
+            Arrays.sort(sorted);
+            this.numbers = sorted;
+            this.free = new AtomicSpotBitSet(sorted.length);
+            for (ParkingSpot parkingSpot : parkingSpots) {
+                if (parkingSpot.isAvailable()) {
+                    free.free(indexOf(parkingSpot.getId()));
+                }
+            }
+        }
+
+        private int indexOf(int parkingNumber) {
+            int index = Arrays.binarySearch(numbers, parkingNumber);
+            return index < 0 ? -1 : index;
+        }
+    }
+}
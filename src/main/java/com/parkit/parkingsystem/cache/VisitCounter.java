@@ -0,0 +1,121 @@
+package com.parkit.parkingsystem.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+// Write-through visit counts per plate: a plate is counted in the DB once,
+// then every saved ticket bumps the cached count instead of re-running COUNT(*).
+// A count is loaded outside the map and only cached when no ticket of a plate
+// in the same stripe was saved meanwhile, as the count may or may not include
+// it. When full, a clock hand that resumes where the last eviction stopped
+// evicts the first count not read or bumped since the hand last passed it
+// (second chance), so plates going in and out stay cached.
+public class VisitCounter {
+
+    private static final int STRIPES = 64;
+
+    private final ConcurrentHashMap<String, Visits> visits = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    // saves begun per stripe, and those not committed or rolled back yet
+    private final AtomicLongArray saves = new AtomicLongArray(STRIPES);
+    private final AtomicIntegerArray savesInFlight = new AtomicIntegerArray(STRIPES);
+    // weakly consistent, restarted once it reaches the end of the map
+    private final Object handLock = new Object();
+    private Iterator<Map.Entry<String, Visits>> hand;
+
+    public VisitCounter(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // the loader returns null when the DB could not answer, and nothing is cached then
+    public Integer getVisits(String vehicleRegNumber, Function<String, Integer> loader) {
+        Visits cached = visits.get(vehicleRegNumber);
+        if (cached != null) {
+            cached.referenced = true;
+            return cached.count;
+        }
+        int stripe = stripe(vehicleRegNumber);
+        long savesBefore = saves.get(stripe);
+        boolean cacheable = savesInFlight.get(stripe) == 0;
+        Integer count = loader.apply(vehicleRegNumber);
+        if (count == null || !cacheable || saves.get(stripe) != savesBefore) {
+            return count;
+        }
+        if (visits.size() >= maxEntries) {
+            evictOne();
+        }
+        Visits loaded = new Visits(count);
+        Visits raced = visits.putIfAbsent(vehicleRegNumber, loaded);
+        if (raced != null) {
+            return raced.count;
+        }
+        // a save begun since the check may have missed the count: dropped unless it already bumped it
+        if (saves.get(stripe) != savesBefore) {
+            visits.remove(vehicleRegNumber, loaded);
+        }
+        return count;
+    }
+
+    // before the ticket is written; followed by recordVisit once committed, or by abortVisit
+    public void beginVisit(String vehicleRegNumber) {
+        int stripe = stripe(vehicleRegNumber);
+        savesInFlight.incrementAndGet(stripe);
+        saves.incrementAndGet(stripe);
+    }
+
+    public void recordVisit(String vehicleRegNumber) {
+        visits.computeIfPresent(vehicleRegNumber, (plate, cached) -> {
+            cached.count++;
+            cached.referenced = true;
+            return cached;
+        });
+        savesInFlight.decrementAndGet(stripe(vehicleRegNumber));
+    }
+
+    public void abortVisit(String vehicleRegNumber) {
+        savesInFlight.decrementAndGet(stripe(vehicleRegNumber));
+    }
+
+    public int size() {
+        return visits.size();
+    }
+
+    private void evictOne() {
+        synchronized (handLock) {
+            // a second turn finds a count whose bit the first one cleared
+            for (int steps = 2 * visits.size() + 1; steps > 0; steps--) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = visits.entrySet().iterator();
+                    if (!hand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<String, Visits> entry = hand.next();
+                Visits cached = entry.getValue();
+                if (cached.referenced) {
+                    cached.referenced = false;
+                } else if (visits.remove(entry.getKey(), cached)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int stripe(String vehicleRegNumber) {
+        return (vehicleRegNumber.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    private static final class Visits {
+        // only bumped inside computeIfPresent
+        private volatile int count;
+        private volatile boolean referenced;
+
+        private Visits(int count) {
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    private final DataBaseConfig dataBaseConfig;
+    private final ConnectionPoolSettings settings;
+
+    // one permit per leased connection, bounding the pool at maxSize
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public ConnectionPool(DataBaseConfig dataBaseConfig, ConnectionPoolSettings settings) {
+        if (settings.getMaxSize() < 1 || settings.getMinSize() < 0 || settings.getMinSize() > settings.getMaxSize()) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + settings.getMinSize() + ", max="
+                    + settings.getMaxSize());
+        }
+        this.dataBaseConfig = dataBaseConfig;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.getMaxSize(), true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fillToMinimum();
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, settings.getEvictionIntervalMillis(),
+                settings.getEvictionIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is shut down");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(settings.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTransientConnectionException(
+                        "Timed out after " + settings.getAcquireTimeoutMillis() + "ms waiting for a DB connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a DB connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            activeCount.incrementAndGet();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public PoolStatistics getStatistics() {
+        return new PoolStatistics(activeCount.get(), idleConnections.size(), acquireCount.get(), timeoutCount.get(),
+                totalWaitNanos.get(), maxWaitNanos.get(), statementCacheHits.get(), statementCacheMisses.get());
+    }
+
+    public void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idleConnections.descendingIterator();
+        while (it.hasNext() && idleConnections.size() > settings.getMinSize()) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsedMillis > settings.getIdleTimeoutMillis() && idleConnections.remove(pooled)) {
+                logger.debug("Evicting idle DB connection");
+                discard(pooled);
+            }
+        }
+        fillToMinimum();
+    }
+
+    public void shutdown() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            discard(pooled);
+        }
+        logger.info("Connection pool shut down: " + getStatistics());
+    }
+
+    private void fillToMinimum() {
+        while (!closed && activeCount.get() + idleConnections.size() < settings.getMinSize() && permits.tryAcquire()) {
+            try {
+                idleConnections.offerLast(open());
+            } catch (SQLException e) {
+                logger.error("Error while pre-filling connection pool", e);
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        try {
+            logger.info("Create DB connection");
+            return new PooledConnection(dataBaseConfig.createConnection());
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("JDBC driver not found", e);
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsedMillis < settings.getValidationIntervalMillis()) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(settings.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.error("Error while closing pooled connection", e);
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        activeCount.decrementAndGet();
+        pooled.lastUsedMillis = System.currentTimeMillis();
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                discard(pooled);
+            } else {
+                if (pooled.statementCache != null) {
+                    pooled.statementCache.endLease();
+                }
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                // LIFO keeps the hot connections warm and lets the tail go idle
+                idleConnections.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            logger.error("Error while returning connection to the pool", e);
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        acquireCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+        }
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statementCache;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = settings.getStatementCacheSize() > 0 ? new StatementCache(physical,
+                    settings.getStatementCacheSize(), statementCacheHits, statementCacheMisses) : null;
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Lease(this));
+        }
+    }
+
+    // a fresh handler per borrow, so a stale reference cannot reach the next borrower's connection
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        // a CAS rather than a monitor: release may block on a rollback, which would pin a virtual thread
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "close":
+                if (returned.compareAndSet(false, true)) {
+                    release(pooled);
+                }
+                return null;
+            case "isClosed":
+                return returned.get() || pooled.physical.isClosed();
+            case "prepareStatement":
+                if (!returned.get() && pooled.statementCache != null && args.length <= 2
+                        && (args.length == 1 || args[1] instanceof Integer)) {
+                    return args.length == 1 ? pooled.statementCache.prepareStatement((String) args[0])
+                            : pooled.statementCache.prepareStatement((String) args[0], (Integer) args[1]);
+                }
+                break;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "PooledConnection[" + pooled.physical + "]";
+            default:
+                break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -4,23 +4,87 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
+import java.util.concurrent.TimeUnit;
 
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    // -Dparkit.jdbc.trace=true -Dparkit.jdbc.slowQueryMillis=100
+    public static final String TRACE_PROPERTY = "parkit.jdbc.trace";
+
+    private volatile ConnectionPool connectionPool;
+    // -1 while the connections are not traced
+    private volatile long slowQueryNanos = -1;
+
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
+        Connection con;
+        ConnectionPool pool = connectionPool;
+        if(pool != null){
+            con = pool.acquire();
+        }else{
+            logger.debug("Create DB connection");
+            con = createConnection();
+        }
+        long slowQuery = slowQueryNanos;
+        return slowQuery < 0 ? con : JdbcTracer.wrap(con, slowQuery);
+    }
+
+    // allowMultiQueries sends a batch of different statements, e.g. the updates of an exit, in one round-trip;
+    // useLocalSessionState skips the SET autocommit that would not change the mode
+    protected Connection createConnection() throws ClassNotFoundException, SQLException {
         Class.forName("com.mysql.cj.jdbc.Driver");
         return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod","root","SEpi02121975@");
+                "jdbc:mysql://localhost:3306/prod?useServerPrepStmts=true&useCursorFetch=true&allowMultiQueries=true&useLocalSessionState=true","root","SEpi02121975@");
+    }
+
+    public synchronized void enablePooling(ConnectionPoolSettings settings){
+        if(connectionPool == null){
+            connectionPool = new ConnectionPool(this, settings);
+            logger.info("DB connection pooling enabled (min=" + settings.getMinSize() + ", max=" + settings.getMaxSize() + ")");
+        }
+    }
+
+    // counts the SQL work of each operation begun with JdbcTracer, and logs the statements slower than the threshold
+    public void enableTracing(long slowQueryMillis){
+        slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+        JdbcTracer.enable();
+        logger.info("JDBC tracing enabled, slow query threshold " + slowQueryMillis + "ms");
+    }
+
+    // from -Dparkit.jdbc.trace and -Dparkit.jdbc.slowQueryMillis
+    public void enableTracingIfRequested(){
+        if(Boolean.getBoolean(TRACE_PROPERTY)){
+            enableTracing(Long.getLong("parkit.jdbc.slowQueryMillis", 100));
+        }
+    }
+
+    public boolean isPooled(){
+        return connectionPool != null;
+    }
+
+    public PoolStatistics getPoolStatistics(){
+        ConnectionPool pool = connectionPool;
+        return pool == null ? null : pool.getStatistics();
+    }
+
+    public synchronized void shutdown(){
+        if(slowQueryNanos >= 0){
+            for(OperationStatistics statistics : JdbcTracer.getStatistics().values()){
+                logger.info("JDBC trace: " + statistics);
+            }
+        }
+        if(connectionPool != null){
+            connectionPool.shutdown();
+            connectionPool = null;
+        }
     }
 
     public void closeConnection(Connection con){
         if(con!=null){
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                logger.debug("Closing DB connection");
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -31,7 +95,7 @@ public class DataBaseConfig {
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logger.debug("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -42,7 +106,7 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logger.debug("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
@@ -0,0 +1,390 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the statements, round-trips, commits and rows of each business operation,
+ * per DBConstants query, through proxies around the connections of a
+ * {@link DataBaseConfig} with tracing enabled.
+ *
+ * <p>Services wrap each operation in {@link #begin}. A batch of n statements is one
+ * round-trip, and so is each commit or rollback, each setAutoCommit that changes the
+ * mode and each setTransactionIsolation. The statements of a batch mixing
+ * several queries with their parameters bound as literals, as UnitOfWork.addBatch
+ * sends them, are named after the DBConstants query they were bound from. Any statement slower than the
+ * threshold is logged as a warning with the types of its bind parameters, never
+ * their values. Statements run outside an operation, by background threads for
+ * instance, are only checked against that threshold.
+ */
+public final class JdbcTracer {
+
+    private static final Logger logger = LogManager.getLogger("JdbcTracer");
+
+    private static final int UNKNOWN_QUERY_LENGTH = 40;
+    private static final Map<String, String> QUERY_NAMES = new HashMap<>();
+    // the queries with parameters, whose ? may have been replaced by a literal
+    private static final Map<Pattern, String> BOUND_QUERY_NAMES = new HashMap<>();
+    private static final String LITERAL = "(?:null|true|false|timestamp '[^']*'|'[^']*'|[-+\\w.]+)";
+    private static final TracedOperation DISABLED = new TracedOperation(null);
+    private static final ThreadLocal<TracedOperation> current = new ThreadLocal<>();
+    private static final Map<String, OperationStatistics> statistics = new ConcurrentHashMap<>();
+    private static volatile boolean enabled;
+
+    static {
+        for (Field field : DBConstants.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                try {
+                    String sql = (String) field.get(null);
+                    QUERY_NAMES.put(sql, field.getName());
+                    if (sql.indexOf('?') >= 0) {
+                        BOUND_QUERY_NAMES.put(boundQuery(sql), field.getName());
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private JdbcTracer() {
+    }
+
+    // closing it ends the operation; a shared no-op while no connection is traced
+    public static TracedOperation begin(String operation) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        TracedOperation running = current.get();
+        if (running != null) {
+            running.join();
+            return running;
+        }
+        TracedOperation traced = new TracedOperation(operation);
+        current.set(traced);
+        return traced;
+    }
+
+    public static OperationStatistics getStatistics(String operation) {
+        return statistics.get(operation);
+    }
+
+    // by operation name
+    public static Map<String, OperationStatistics> getStatistics() {
+        return new TreeMap<>(statistics);
+    }
+
+    public static void reset() {
+        statistics.clear();
+    }
+
+    static void enable() {
+        enabled = true;
+    }
+
+    // operations begun from now on are not traced, connections already wrapped still count
+    public static void disable() {
+        enabled = false;
+    }
+
+    static Connection wrap(Connection connection, long slowQueryNanos) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new TracedConnection(connection, slowQueryNanos));
+    }
+
+    static void complete(TracedOperation operation) {
+        current.remove();
+        statistics.merge(operation.getName(), OperationStatistics.of(operation), OperationStatistics::plus);
+    }
+
+    static boolean isDisabled(TracedOperation operation) {
+        return operation == DISABLED;
+    }
+
+    private static Pattern boundQuery(String sql) {
+        StringBuilder regex = new StringBuilder();
+        int from = 0;
+        for (int at = sql.indexOf('?'); at >= 0; at = sql.indexOf('?', from)) {
+            regex.append(Pattern.quote(sql.substring(from, at))).append(LITERAL);
+            from = at + 1;
+        }
+        return Pattern.compile(regex.append(Pattern.quote(sql.substring(from))).toString());
+    }
+
+    private static String queryName(String sql) {
+        String name = QUERY_NAMES.get(sql);
+        if (name != null) {
+            return name;
+        }
+        return sql.length() <= UNKNOWN_QUERY_LENGTH ? sql : sql.substring(0, UNKNOWN_QUERY_LENGTH) + "...";
+    }
+
+    private static String boundQueryName(String sql) {
+        for (Map.Entry<Pattern, String> query : BOUND_QUERY_NAMES.entrySet()) {
+            if (query.getKey().matcher(sql).matches()) {
+                return query.getValue();
+            }
+        }
+        return queryName(sql);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class TracedConnection implements InvocationHandler {
+        private final Connection connection;
+        private final long slowQueryNanos;
+
+        private TracedConnection(Connection connection, long slowQueryNanos) {
+            this.connection = connection;
+            this.slowQueryNanos = slowQueryNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "prepareStatement":
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[] { PreparedStatement.class },
+                        new TracedStatement(JdbcTracer.invoke(connection, method, args), (String) args[0], slowQueryNanos));
+            case "createStatement":
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class },
+                        new TracedStatement(JdbcTracer.invoke(connection, method, args), null, slowQueryNanos));
+            case "commit":
+            case "rollback":
+                try {
+                    return JdbcTracer.invoke(connection, method, args);
+                } finally {
+                    TracedOperation operation = current.get();
+                    if (operation != null) {
+                        operation.recordEndOfTransaction("commit".equals(method.getName()));
+                    }
+                }
+            case "setAutoCommit":
+                // the driver keeps the session state locally and only sends a change
+                boolean change = connection.getAutoCommit() != (Boolean) args[0];
+                Object result = JdbcTracer.invoke(connection, method, args);
+                if (change) {
+                    recordSessionChange();
+                }
+                return result;
+            case "setTransactionIsolation":
+                try {
+                    return JdbcTracer.invoke(connection, method, args);
+                } finally {
+                    recordSessionChange();
+                }
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return JdbcTracer.invoke(connection, method, args);
+            }
+        }
+    }
+
+    private static void recordSessionChange() {
+        TracedOperation operation = current.get();
+        if (operation != null) {
+            operation.recordSessionChange();
+        }
+    }
+
+    private static final class TracedStatement implements InvocationHandler {
+        private final Object statement;
+        private final String sql;
+        private final long slowQueryNanos;
+        // bind parameter types by index, from the set* calls
+        private final List<String> parameterTypes = new ArrayList<>();
+        private int batchCount;
+        // of the statements added as SQL, in order
+        private final List<String> batchQueries = new ArrayList<>();
+
+        private TracedStatement(Object statement, String sql, long slowQueryNanos) {
+            this.statement = statement;
+            this.sql = sql;
+            this.slowQueryNanos = slowQueryNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+            case "executeQuery":
+            case "executeUpdate":
+            case "executeLargeUpdate":
+            case "execute":
+            case "executeBatch":
+            case "executeLargeBatch":
+                return execute(method, args);
+            case "getResultSet":
+                return traceRows(JdbcTracer.invoke(statement, method, args), queryName(sql == null ? "" : sql));
+            case "addBatch":
+                batchCount++;
+                if (args != null && args.length == 1 && args[0] instanceof String) {
+                    batchQueries.add(boundQueryName((String) args[0]));
+                }
+                break;
+            case "clearBatch":
+                batchCount = 0;
+                batchQueries.clear();
+                break;
+            case "clearParameters":
+                parameterTypes.clear();
+                break;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    recordParameterType((Integer) args[0], name.equals("setObject") && args[1] != null
+                            ? args[1].getClass().getSimpleName() : name.substring(3));
+                }
+                break;
+            }
+            return JdbcTracer.invoke(statement, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            boolean batch = method.getName().endsWith("Batch");
+            if (batch && batchCount == 0) {
+                // nothing is sent
+                return JdbcTracer.invoke(statement, method, args);
+            }
+            if (batch && !batchQueries.isEmpty()) {
+                return executeQueries(method, args);
+            }
+            String query = queryName(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql);
+            int statements = batch ? batchCount : 1;
+            if (batch) {
+                batchCount = 0;
+            }
+            TracedOperation operation = current.get();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = JdbcTracer.invoke(statement, method, args);
+            } catch (Throwable e) {
+                finish(operation, query, statements, batch, 0, System.nanoTime() - start);
+                throw e;
+            }
+            long elapsed = System.nanoTime() - start;
+            finish(operation, query, statements, batch, rows(result), elapsed);
+            return result instanceof ResultSet ? traceRows(result, query) : result;
+        }
+
+        // a batch of statements added as SQL, one round-trip for all of its queries
+        private Object executeQueries(Method method, Object[] args) throws Throwable {
+            List<String> queries = new ArrayList<>(batchQueries);
+            batchQueries.clear();
+            batchCount = 0;
+            TracedOperation operation = current.get();
+            long start = System.nanoTime();
+            Object result = null;
+            try {
+                result = JdbcTracer.invoke(statement, method, args);
+                return result;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                long[] rows = new long[queries.size()];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = result instanceof int[] ? rowCount(((int[]) result)[i])
+                            : result instanceof long[] ? rowCount(((long[]) result)[i]) : 0;
+                }
+                if (operation != null) {
+                    operation.recordBatch(queries, rows, elapsed);
+                }
+                if (elapsed >= slowQueryNanos) {
+                    logger.warn("Slow batch " + queries + " in " + (operation == null ? "no operation" : operation.getName())
+                            + ": " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+                }
+            }
+        }
+
+        private long rowCount(long count) {
+            return count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+        }
+
+        private long rows(Object result) throws Exception {
+            if (result instanceof Integer || result instanceof Long) {
+                return ((Number) result).longValue();
+            }
+            long rows = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+                }
+            } else if (Boolean.FALSE.equals(result)) {
+                rows = Math.max(((Statement) statement).getUpdateCount(), 0);
+            }
+            return rows;
+        }
+
+        private void finish(TracedOperation operation, String query, int statements, boolean batch, long rows, long nanos) {
+            if (operation != null) {
+                operation.recordExecution(query, statements, rows, nanos);
+            }
+            if (nanos >= slowQueryNanos) {
+                logger.warn("Slow query " + query + " in " + (operation == null ? "no operation" : operation.getName())
+                        + ": " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms, " + rows + " row(s), parameters "
+                        + (batch ? "batch of " + statements + " x " + parameterTypes : parameterTypes));
+            }
+        }
+
+        private void recordParameterType(int index, String type) {
+            while (parameterTypes.size() < index) {
+                parameterTypes.add("?");
+            }
+            parameterTypes.set(index - 1, type);
+        }
+    }
+
+    private static Object traceRows(Object resultSet, String query) {
+        if (resultSet == null) {
+            return null;
+        }
+        TracedOperation operation = current.get();
+        if (operation == null) {
+            return resultSet;
+        }
+        return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(resultSet, method, args);
+                    if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                        operation.recordRow(query);
+                    }
+                    return result;
+                });
+    }
+}
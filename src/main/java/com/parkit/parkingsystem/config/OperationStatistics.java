@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The SQL cost of every completed run of one operation, added up.
+public final class OperationStatistics {
+
+    private final String operation;
+    private final long count;
+    private final long statements;
+    private final long roundTrips;
+    private final long commits;
+    private final long rows;
+    private final long totalNanos;
+    private final Map<String, QueryStatistics> queries;
+
+    public OperationStatistics(String operation, long count, long statements, long roundTrips, long commits, long rows,
+            long totalNanos, Map<String, QueryStatistics> queries) {
+        this.operation = operation;
+        this.count = count;
+        this.statements = statements;
+        this.roundTrips = roundTrips;
+        this.commits = commits;
+        this.rows = rows;
+        this.totalNanos = totalNanos;
+        this.queries = Collections.unmodifiableMap(queries);
+    }
+
+    static OperationStatistics of(TracedOperation operation) {
+        return new OperationStatistics(operation.getName(), 1, operation.getStatements(), operation.getRoundTrips(),
+                operation.getCommits(), operation.getRows(), operation.getElapsedNanos(), operation.getQueries());
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public double getAverageRoundTrips() {
+        return count == 0 ? 0 : (double) roundTrips / count;
+    }
+
+    public Map<String, QueryStatistics> getQueries() {
+        return queries;
+    }
+
+    OperationStatistics plus(OperationStatistics other) {
+        Map<String, QueryStatistics> merged = new LinkedHashMap<>(queries);
+        for (QueryStatistics query : other.queries.values()) {
+            merged.merge(query.getQuery(), query, QueryStatistics::plus);
+        }
+        return new OperationStatistics(operation, count + other.count, statements + other.statements,
+                roundTrips + other.roundTrips, commits + other.commits, rows + other.rows, totalNanos + other.totalNanos,
+                merged);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder(operation).append(" count=").append(count)
+                .append(", statements=").append(statements).append(", roundTrips=").append(roundTrips)
+                .append(", commits=").append(commits).append(", rows=").append(rows)
+                .append(", totalMillis=").append(totalNanos / 1_000_000);
+        for (QueryStatistics query : queries.values()) {
+            description.append(System.lineSeparator()).append("  ").append(query);
+        }
+        return description.toString();
+    }
+}
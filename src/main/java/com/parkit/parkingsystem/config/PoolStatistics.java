@@ -0,0 +1,72 @@
+package com.parkit.parkingsystem.config;
+
+public final class PoolStatistics {
+
+    private final int active;
+    private final int idle;
+    private final long acquireCount;
+    private final long timeoutCount;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+
+    public PoolStatistics(int active, int idle, long acquireCount, long timeoutCount, long totalWaitNanos,
+            long maxWaitNanos, long statementCacheHits, long statementCacheMisses) {
+        this.active = active;
+        this.idle = idle;
+        this.acquireCount = acquireCount;
+        this.timeoutCount = timeoutCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return active + idle;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    public double getAverageWaitMillis() {
+        return acquireCount == 0 ? 0 : (totalWaitNanos / (double) acquireCount) / 1_000_000;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    @Override
+    public String toString() {
+        return "active=" + active + ", idle=" + idle + ", acquired=" + acquireCount + ", timeouts=" + timeoutCount
+                + ", avgWaitMs=" + getAverageWaitMillis() + ", maxWaitMs=" + (maxWaitNanos / 1_000_000.0) + ", stmtCacheHits=" + statementCacheHits
+                + ", stmtCacheMisses=" + statementCacheMisses;
+    }
+}
@@ -0,0 +1,57 @@
+package com.parkit.parkingsystem.config;
+
+public final class QueryStatistics {
+
+    private final String query;
+    private final long statements;
+    private final long roundTrips;
+    private final long rows;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    public QueryStatistics(String query, long statements, long roundTrips, long rows, long totalNanos, long maxNanos) {
+        this.query = query;
+        this.statements = statements;
+        this.roundTrips = roundTrips;
+        this.rows = rows;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    // the DBConstants field name, or the start of the SQL for other statements
+    public String getQuery() {
+        return query;
+    }
+
+    // a batch of n counts as n statements and one round-trip
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    QueryStatistics plus(QueryStatistics other) {
+        return new QueryStatistics(query, statements + other.statements, roundTrips + other.roundTrips,
+                rows + other.rows, totalNanos + other.totalNanos, Math.max(maxNanos, other.maxNanos));
+    }
+
+    @Override
+    public String toString() {
+        return query + " statements=" + statements + ", roundTrips=" + roundTrips + ", rows=" + rows
+                + ", totalMillis=" + totalNanos / 1_000_000 + ", maxMillis=" + maxNanos / 1_000_000;
+    }
+}
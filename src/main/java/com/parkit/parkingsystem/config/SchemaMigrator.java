@@ -0,0 +1,266 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+// Brings the schema up to date at startup. Scripts live in db/migration, are named
+// V<version>__<description>.sql and are applied once each, in version order; the
+// schema_version table records which ones already ran. A migration that cannot
+// be a script, because it goes through every ticket_history_<yyyymm> table, is a
+// method named like a script without .sql, and is written so it can run again
+// when it was interrupted.
+public class SchemaMigrator {
+
+    private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+    private static final String MIGRATION_PATH = "/db/migration/";
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)(\\.sql)?");
+
+    // append new scripts here, never edit one that has shipped
+    private static final String[] SCRIPTS = {
+            "V1__baseline.sql",
+            "V2__hot_query_indexes.sql",
+            "V3__journal_checkpoint.sql",
+            "V4__ticket_history.sql",
+            "V5__ticket_rollups.sql",
+            "V6__ticket_discount",
+            "V7__ticket_rollup_rebuild.sql"
+    };
+
+    private final DataBaseConfig dataBaseConfig;
+
+    public SchemaMigrator(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    public static int getLatestVersion() {
+        return version(SCRIPTS[SCRIPTS.length - 1]);
+    }
+
+    // returns the number of scripts applied
+    public int migrate() throws ClassNotFoundException, SQLException, IOException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            execute(con, DBConstants.CREATE_SCHEMA_VERSION);
+            Map<Integer, Long> applied = getAppliedVersions(con);
+            int count = 0;
+            for (String script : SCRIPTS) {
+                int version = version(script);
+                boolean java = !script.endsWith(".sql");
+                String sql = java ? script : read(script);
+                long checksum = checksum(sql);
+                Long appliedChecksum = applied.get(version);
+                if (appliedChecksum != null) {
+                    if (appliedChecksum != checksum) {
+                        logger.error("Migration " + script + " was modified after being applied");
+                    }
+                    continue;
+                }
+                logger.info("Applying migration " + script);
+                if (java) {
+                    migrate(con, script);
+                } else {
+                    for (String statement : split(sql)) {
+                        execute(con, statement);
+                    }
+                }
+                saveVersion(con, version, description(script), checksum);
+                count++;
+            }
+            logger.info("Schema is at version " + getLatestVersion() + ", " + count + " migration(s) applied");
+            return count;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void migrate(Connection con, String migration) throws SQLException {
+        if ("V6__ticket_discount".equals(migration)) {
+            addTicketDiscount(con);
+        } else {
+            throw new IllegalArgumentException("Unknown migration " + migration);
+        }
+    }
+
+    // Whether the price was calculated at the returning vehicle rate, i.e. the plate
+    // already had a ticket, on ticket and on every history month. A ticket is
+    // discounted unless it is the first of its plate, found in one pass per table.
+    private void addTicketDiscount(Connection con) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        tables.add("ticket");
+        for (int month : getHistoryMonths(con)) {
+            tables.add("ticket_history_" + month);
+        }
+        for (String table : tables) {
+            if (!hasColumn(con, table, "DISCOUNT")) {
+                execute(con, String.format(DBConstants.ADD_DISCOUNT, table));
+            }
+        }
+        execute(con, DBConstants.CREATE_FIRST_VISIT);
+        for (String table : tables) {
+            execute(con, String.format(DBConstants.ADD_FIRST_VISITS, table));
+        }
+        for (String table : tables) {
+            execute(con, String.format(DBConstants.SET_DISCOUNT_AFTER_FIRST_VISIT, table));
+        }
+        execute(con, DBConstants.DROP_FIRST_VISIT);
+    }
+
+    private List<Integer> getHistoryMonths(Connection con) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<Integer> months = new ArrayList<>();
+        try {
+            ps = con.prepareStatement(DBConstants.GET_TICKET_HISTORY_PARTITIONS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                months.add(rs.getInt(1));
+            }
+            return months;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    // identifiers are stored upper case by H2, as created by MySQL
+    private static boolean hasColumn(Connection con, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = con.getMetaData();
+        boolean upperCase = metaData.storesUpperCaseIdentifiers();
+        try (ResultSet rs = metaData.getColumns(con.getCatalog(), null, upperCase ? table.toUpperCase() : table,
+                upperCase ? column.toUpperCase() : column)) {
+            return rs.next();
+        }
+    }
+
+    public int getCurrentVersion() throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            execute(con, DBConstants.CREATE_SCHEMA_VERSION);
+            int current = 0;
+            for (int version : getAppliedVersions(con).keySet()) {
+                current = Math.max(current, version);
+            }
+            return current;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private Map<Integer, Long> getAppliedVersions(Connection con) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        Map<Integer, Long> applied = new HashMap<>();
+        try {
+            ps = con.prepareStatement(DBConstants.GET_SCHEMA_VERSIONS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getLong(2));
+            }
+            return applied;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private void saveVersion(Connection con, int version, String description, long checksum) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.SAVE_SCHEMA_VERSION);
+            ps.setInt(1, version);
+            ps.setString(2, description);
+            ps.setLong(3, checksum);
+            ps.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private static void execute(Connection con, String sql) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String read(String script) throws IOException {
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream(MIGRATION_PATH + script)) {
+            if (in == null) {
+                throw new IOException("Migration script not found: " + MIGRATION_PATH + script);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // statements end with a semicolon, lines starting with -- are comments
+    private static List<String> split(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : sql.split("\\r?\\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                statements.add(current.substring(0, current.lastIndexOf(";")));
+                current.setLength(0);
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString());
+        }
+        return statements;
+    }
+
+    private static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static int version(String script) {
+        return Integer.parseInt(match(script).group(1));
+    }
+
+    private static String description(String script) {
+        return match(script).group(2).replace('_', ' ');
+    }
+
+    private static Matcher match(String script) {
+        Matcher matcher = SCRIPT_NAME.matcher(script);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid migration script name: " + script);
+        }
+        return matcher;
+    }
+}
@@ -0,0 +1,169 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of the prepared statements of one physical connection. A pooled
+ * connection is only ever leased to one thread at a time, so the cache itself
+ * is not synchronized; the hit/miss counters are shared by the whole pool.
+ */
+public class StatementCache {
+
+    private static final Logger logger = LogManager.getLogger("StatementCache");
+
+    private final Connection physical;
+    private final int maxSize;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    public StatementCache(Connection physical, int maxSize, AtomicLong hits, AtomicLong misses) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepare(sql, sql, -1);
+    }
+
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return prepare(sql + '#' + autoGeneratedKeys, sql, autoGeneratedKeys);
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    // statements the borrower forgot to close cannot be trusted by the next borrower
+    public void endLease() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (it.hasNext()) {
+            CachedStatement cached = it.next();
+            if (cached.inUse) {
+                it.remove();
+                closeQuietly(cached.physical);
+            }
+        }
+    }
+
+    public void clear() {
+        for (CachedStatement cached : statements.values()) {
+            closeQuietly(cached.physical);
+        }
+        statements.clear();
+    }
+
+    private PreparedStatement prepare(String key, String sql, int autoGeneratedKeys) throws SQLException {
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            hits.incrementAndGet();
+            cached.inUse = true;
+            return cached.lease();
+        }
+        misses.incrementAndGet();
+        PreparedStatement ps = autoGeneratedKeys < 0 ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // the cached copy is still open in an outer call: hand out a plain, uncached statement
+            return ps;
+        }
+        cached = new CachedStatement(ps);
+        cached.inUse = true;
+        statements.put(key, cached);
+        evictOverflow();
+        return cached.lease();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, CachedStatement>> it = statements.entrySet().iterator();
+        while (statements.size() > maxSize && it.hasNext()) {
+            CachedStatement eldest = it.next().getValue();
+            if (!eldest.inUse) {
+                it.remove();
+                closeQuietly(eldest.physical);
+            }
+        }
+    }
+
+    private void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            logger.error("Error while closing cached prepared statement", e);
+        }
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement physical;
+        private boolean inUse;
+
+        private CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        private PreparedStatement lease() {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new Lease(this));
+        }
+    }
+
+    private static final class Lease implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean returned;
+
+        private Lease(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "close":
+                if (!returned) {
+                    returned = true;
+                    try {
+                        // a batch left behind by a failed execute would run with the next borrower's
+                        cached.physical.clearBatch();
+                        cached.physical.clearParameters();
+                    } finally {
+                        cached.inUse = false;
+                    }
+                }
+                return null;
+            case "isClosed":
+                return returned || cached.physical.isClosed();
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "CachedStatement[" + cached.physical + "]";
+            default:
+                if (returned) {
+                    throw new SQLException("Prepared statement has already been closed");
+                }
+                try {
+                    return method.invoke(cached.physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+}
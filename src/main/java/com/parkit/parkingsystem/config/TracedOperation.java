@@ -0,0 +1,141 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The SQL work of one business operation on one thread, from {@link JdbcTracer#begin}
+ * to {@link #close}. Operations begun while another one is running on the thread are
+ * part of it, so a caller can trace a whole service call and read its cost here.
+ */
+public final class TracedOperation implements AutoCloseable {
+
+    private final String name;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, QueryCounts> queries = new LinkedHashMap<>();
+    private int depth = 1;
+    private long statements;
+    private long roundTrips;
+    private long commits;
+    private long rows;
+    private long elapsedNanos = -1;
+
+    TracedOperation(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    // -1 until closed
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // by DBConstants name, in execution order
+    public Map<String, QueryStatistics> getQueries() {
+        Map<String, QueryStatistics> statistics = new LinkedHashMap<>();
+        for (Map.Entry<String, QueryCounts> query : queries.entrySet()) {
+            statistics.put(query.getKey(), query.getValue().toStatistics(query.getKey()));
+        }
+        return statistics;
+    }
+
+    @Override
+    public void close() {
+        if (JdbcTracer.isDisabled(this)) {
+            return;
+        }
+        if (--depth == 0) {
+            elapsedNanos = System.nanoTime() - startNanos;
+            JdbcTracer.complete(this);
+        }
+    }
+
+    void join() {
+        depth++;
+    }
+
+    void recordExecution(String query, int statementCount, long rowCount, long nanos) {
+        QueryCounts counts = queries.computeIfAbsent(query, key -> new QueryCounts());
+        counts.statements += statementCount;
+        counts.roundTrips++;
+        counts.rows += rowCount;
+        counts.totalNanos += nanos;
+        counts.maxNanos = Math.max(counts.maxNanos, nanos);
+        statements += statementCount;
+        roundTrips++;
+        rows += rowCount;
+    }
+
+    // one round-trip for the whole batch, counted once for each of its queries
+    void recordBatch(List<String> batchQueries, long[] rowCounts, long nanos) {
+        Set<String> sent = new HashSet<>();
+        for (int i = 0; i < batchQueries.size(); i++) {
+            QueryCounts counts = queries.computeIfAbsent(batchQueries.get(i), key -> new QueryCounts());
+            counts.statements++;
+            counts.rows += rowCounts[i];
+            if (sent.add(batchQueries.get(i))) {
+                counts.roundTrips++;
+                counts.totalNanos += nanos;
+                counts.maxNanos = Math.max(counts.maxNanos, nanos);
+            }
+            rows += rowCounts[i];
+        }
+        statements += batchQueries.size();
+        roundTrips++;
+    }
+
+    void recordRow(String query) {
+        QueryCounts counts = queries.get(query);
+        if (counts != null) {
+            counts.rows++;
+            rows++;
+        }
+    }
+
+    // SET autocommit or transaction isolation
+    void recordSessionChange() {
+        roundTrips++;
+    }
+
+    // commits and rollbacks
+    void recordEndOfTransaction(boolean commit) {
+        roundTrips++;
+        if (commit) {
+            commits++;
+        }
+    }
+
+    private static final class QueryCounts {
+        private long statements;
+        private long roundTrips;
+        private long rows;
+        private long totalNanos;
+        private long maxNanos;
+
+        private QueryStatistics toStatistics(String query) {
+            return new QueryStatistics(query, statements, roundTrips, rows, totalNanos, maxNanos);
+        }
+    }
+}
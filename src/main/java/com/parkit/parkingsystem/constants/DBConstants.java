@@ -3,10 +3,62 @@ package com.parkit.parkingsystem.constants;
 public class DBConstants {
 
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String GET_NEXT_PARKING_SPOT_AFTER = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ? and PARKING_NUMBER > ?";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
-    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
+    public static final String SAVE_TICKET_WITH_ID = "insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)";
+    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=?, DISCOUNT=? where ID=?";
+    public static final String CLOSE_TICKET = "update ticket set PRICE=?, OUT_TIME=?, DISCOUNT=? where ID=? and OUT_TIME is null";
     public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME DESC limit 1";
-    public static final String DISCOUNT_GET_TICKET = "SELECT COUNT(*) FROM ticket WHERE VEHICLE_REG_NUMBER = ?";
+    public static final String GET_TICKET_WITH_VISITS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, (select count(*) from ticket c where c.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER), (select h.VISITS from ticket_history_visits h where h.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER) from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME DESC limit 1";
+    public static final String GET_OPEN_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, t.VEHICLE_REG_NUMBER from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is null";
+    public static final String GET_KNOWN_PLATES_SINCE = "select VEHICLE_REG_NUMBER, max(ID) from ticket where ID > ? group by VEHICLE_REG_NUMBER";
+    public static final String DISCOUNT_GET_TICKET = "SELECT COUNT(*), (SELECT VISITS FROM ticket_history_visits WHERE VEHICLE_REG_NUMBER = ?) FROM ticket WHERE VEHICLE_REG_NUMBER = ?";
+    public static final String GET_VISIT_COUNTS = "select VEHICLE_REG_NUMBER, count(*) from ticket group by VEHICLE_REG_NUMBER";
+    public static final String GET_LAST_TICKET_ID = "select max(ID) from ticket";
+
+    public static final String GET_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=?";
+
+    // archival: closed tickets move to ticket_history_<yyyymm>, formatted with the month of their OUT_TIME
+    public static final String GET_ARCHIVABLE_TICKETS = "select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, DISCOUNT from ticket where OUT_TIME < ? and ID < (select max(ID) from ticket) order by ID limit ?";
+    public static final String DELETE_ARCHIVED_TICKET = "delete from ticket where ID = ? and OUT_TIME is not null";
+    public static final String CREATE_TICKET_HISTORY_PARTITION = "create table if not exists ticket_history_%d(ID int PRIMARY KEY, PARKING_NUMBER int NOT NULL, VEHICLE_REG_NUMBER varchar(10) NOT NULL, PRICE double, IN_TIME DATETIME NOT NULL, OUT_TIME DATETIME NOT NULL, DISCOUNT bool NOT NULL, INDEX IDX_TICKET_HISTORY_%d_PLATE (VEHICLE_REG_NUMBER))";
+    public static final String SAVE_TICKET_HISTORY_PARTITION = "insert into ticket_history_partition(PARTITION_MONTH) values(?) on duplicate key update PARTITION_MONTH = PARTITION_MONTH";
+    public static final String GET_TICKET_HISTORY_PARTITIONS = "select PARTITION_MONTH from ticket_history_partition order by PARTITION_MONTH desc";
+    public static final String SAVE_TICKET_HISTORY = "insert into ticket_history_%d(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, DISCOUNT) values(?,?,?,?,?,?,?)";
+    public static final String GET_TICKET_HISTORY = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket_history_%d t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=?";
+    public static final String ADD_HISTORY_VISITS = "insert into ticket_history_visits(VEHICLE_REG_NUMBER, VISITS, LAST_ID) values(?,?,?) on duplicate key update VISITS = VISITS + values(VISITS), LAST_ID = greatest(LAST_ID, values(LAST_ID))";
+    public static final String GET_HISTORY_VISIT_COUNTS = "select VEHICLE_REG_NUMBER, VISITS from ticket_history_visits";
+    public static final String GET_KNOWN_HISTORY_PLATES_SINCE = "select VEHICLE_REG_NUMBER, LAST_ID from ticket_history_visits where LAST_ID > ?";
+
+    // export: one page of tickets after the last ID read, from ticket or ticket_history_<yyyymm>
+    public static final String EXPORT_TICKETS = "select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID > ? order by ID limit ?";
+    public static final String EXPORT_TICKET_HISTORY = "select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket_history_%d where ID > ? order by ID limit ?";
+
+    // rollups: closed tickets added up per GRANULARITY bucket of OUT_TIME, parking type and rate
+    public static final String ADD_TICKET_ROLLUP = "insert into ticket_rollup(GRANULARITY, BUCKET, PARKING_TYPE, DISCOUNT, TICKETS, REVENUE, PARKED_SECONDS) values(?,?,?,?,?,?,?) on duplicate key update TICKETS = TICKETS + values(TICKETS), REVENUE = REVENUE + values(REVENUE), PARKED_SECONDS = PARKED_SECONDS + values(PARKED_SECONDS)";
+    public static final String GET_TICKET_ROLLUPS = "select BUCKET, PARKING_TYPE, DISCOUNT, TICKETS, REVENUE, PARKED_SECONDS from ticket_rollup where GRANULARITY = ? and BUCKET >= ? and BUCKET < ? order by BUCKET, PARKING_TYPE, DISCOUNT";
+    public static final String DELETE_TICKET_ROLLUPS = "delete from ticket_rollup";
+    public static final String ADD_TICKET_ROLLUP_REBUILD = "insert into ticket_rollup_rebuild(GRANULARITY, BUCKET, PARKING_TYPE, DISCOUNT, TICKETS, REVENUE, PARKED_SECONDS) values(?,?,?,?,?,?,?) on duplicate key update TICKETS = TICKETS + values(TICKETS), REVENUE = REVENUE + values(REVENUE), PARKED_SECONDS = PARKED_SECONDS + values(PARKED_SECONDS)";
+    public static final String DELETE_TICKET_ROLLUP_REBUILD = "delete from ticket_rollup_rebuild";
+    public static final String COPY_TICKET_ROLLUP_REBUILD = "insert into ticket_rollup(GRANULARITY, BUCKET, PARKING_TYPE, DISCOUNT, TICKETS, REVENUE, PARKED_SECONDS) select GRANULARITY, BUCKET, PARKING_TYPE, DISCOUNT, TICKETS, REVENUE, PARKED_SECONDS from ticket_rollup_rebuild";
+    public static final String GET_TICKET_ID_RANGE = "select min(ID), max(ID) from ticket";
+    public static final String GET_TICKET_HISTORY_ID_RANGE = "select min(ID), max(ID) from ticket_history_%d";
+    public static final String GET_CLOSED_TICKETS_IN_ID_RANGE = "select p.TYPE, t.DISCOUNT, t.PRICE, t.IN_TIME, t.OUT_TIME from ticket t,parking p where p.parking_number = t.parking_number and t.ID >= ? and t.ID < ? and t.OUT_TIME is not null";
+    public static final String GET_CLOSED_TICKET_HISTORY_IN_ID_RANGE = "select p.TYPE, t.DISCOUNT, t.PRICE, t.IN_TIME, t.OUT_TIME from ticket_history_%d t,parking p where p.parking_number = t.parking_number and t.ID >= ? and t.ID < ?";
+
+    public static final String GET_JOURNAL_CHECKPOINT = "select SEQUENCE from journal_checkpoint where ID = 1";
+    public static final String SAVE_JOURNAL_CHECKPOINT = "update journal_checkpoint set SEQUENCE = ? where ID = 1";
+
+    public static final String ADD_DISCOUNT = "alter table %s add column DISCOUNT bool NOT NULL default false";
+    public static final String CREATE_FIRST_VISIT = "create table if not exists ticket_first_visit(VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY, FIRST_ID int NOT NULL)";
+    public static final String ADD_FIRST_VISITS = "insert into ticket_first_visit(VEHICLE_REG_NUMBER, FIRST_ID) select VEHICLE_REG_NUMBER, min(ID) from %s group by VEHICLE_REG_NUMBER on duplicate key update FIRST_ID = least(FIRST_ID, values(FIRST_ID))";
+    public static final String SET_DISCOUNT_AFTER_FIRST_VISIT = "update %s t set DISCOUNT = t.ID > (select f.FIRST_ID from ticket_first_visit f where f.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER)";
+    public static final String DROP_FIRST_VISIT = "drop table ticket_first_visit";
+    public static final String CREATE_SCHEMA_VERSION = "create table if not exists schema_version(VERSION int PRIMARY KEY, DESCRIPTION varchar(100) NOT NULL, CHECKSUM bigint NOT NULL, INSTALLED_ON DATETIME NOT NULL)";
+    public static final String GET_SCHEMA_VERSIONS = "select VERSION, CHECKSUM from schema_version";
+    public static final String SAVE_SCHEMA_VERSION = "insert into schema_version(VERSION, DESCRIPTION, CHECKSUM, INSTALLED_ON) values(?,?,?,?)";
 }
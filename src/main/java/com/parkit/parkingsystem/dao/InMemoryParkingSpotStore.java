@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.cache.ParkingSpotAllocator;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.List;
+
+// Free spots per type in the lock-free allocator, with no table behind it.
+public class InMemoryParkingSpotStore implements ParkingSpotStore {
+
+    private final ParkingSpotAllocator allocator;
+
+    public InMemoryParkingSpotStore(List<ParkingSpot> parkingSpots) {
+        this.allocator = new ParkingSpotAllocator(parkingSpots);
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        return allocator.peek(parkingType);
+    }
+
+    @Override
+    public int claimNextAvailableSlot(UnitOfWork unitOfWork, ParkingType parkingType) {
+        int parkingNumber = allocator.claim(parkingType);
+        if (parkingNumber > 0) {
+            ParkingSpot claimed = new ParkingSpot(parkingNumber, parkingType, true);
+            unitOfWork.onRollback(() -> allocator.release(claimed));
+        }
+        return parkingNumber;
+    }
+
+    @Override
+    public boolean releaseParkingSpot(UnitOfWork unitOfWork, ParkingSpot parkingSpot) {
+        if (!allocator.isClaimed(parkingSpot)) {
+            return false;
+        }
+        ParkingSpot released = new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), true);
+        unitOfWork.afterCommit(() -> allocator.release(released));
+        return true;
+    }
+
+    public int getAvailableCount(ParkingType parkingType) {
+        return allocator.getAvailableCount(parkingType);
+    }
+}
@@ -0,0 +1,40 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class InMemoryStorageEngine implements StorageEngine {
+
+    private final InMemoryParkingSpotStore parkingSpotStore;
+    private final InMemoryTicketStore ticketStore = new InMemoryTicketStore();
+
+    // cars are numbered first, then bikes, like the parking table in Data.sql
+    public InMemoryStorageEngine(int cars, int bikes) {
+        List<ParkingSpot> parkingSpots = new ArrayList<>(cars + bikes);
+        for (int i = 1; i <= cars + bikes; i++) {
+            parkingSpots.add(new ParkingSpot(i, i <= cars ? ParkingType.CAR : ParkingType.BIKE, true));
+        }
+        this.parkingSpotStore = new InMemoryParkingSpotStore(parkingSpots);
+    }
+
+    public InMemoryStorageEngine(List<ParkingSpot> parkingSpots) {
+        this.parkingSpotStore = new InMemoryParkingSpotStore(parkingSpots);
+    }
+
+    @Override
+    public InMemoryParkingSpotStore getParkingSpotStore() {
+        return parkingSpotStore;
+    }
+
+    @Override
+    public InMemoryTicketStore getTicketStore() {
+        return ticketStore;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
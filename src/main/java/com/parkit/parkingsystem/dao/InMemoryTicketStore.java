@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.cache.ActiveTicketIndex;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketWithVisits;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Open tickets and visit counts only: closed tickets are not kept, so memory
+// stays bounded by the number of spots and distinct plates.
+public class InMemoryTicketStore implements TicketStore {
+
+    private final ActiveTicketIndex openTickets;
+    private final ConcurrentHashMap<String, Integer> visits;
+    private final AtomicInteger lastTicketId;
+
+    public InMemoryTicketStore() {
+        this(new ActiveTicketIndex(), 0, Collections.emptyMap());
+    }
+
+    // starts from a known state, e.g. a snapshot
+    public InMemoryTicketStore(ActiveTicketIndex openTickets, int lastTicketId, Map<String, Integer> visits) {
+        this.openTickets = openTickets;
+        this.lastTicketId = new AtomicInteger(lastTicketId);
+        this.visits = new ConcurrentHashMap<>(visits);
+    }
+
+    @Override
+    public UnitOfWork beginUnitOfWork() {
+        return new UnitOfWork();
+    }
+
+    @Override
+    public int getNbTicket(UnitOfWork unitOfWork, String vehicleRegNumber) {
+        return visits.getOrDefault(vehicleRegNumber, 0);
+    }
+
+    @Override
+    public void saveTicket(UnitOfWork unitOfWork, Ticket ticket) {
+        ticket.setId(lastTicketId.incrementAndGet());
+        unitOfWork.afterCommit(() -> {
+            if (ticket.getOutTime() == null) {
+                openTickets.put(ticket);
+            }
+            visits.merge(ticket.getVehicleRegNumber(), 1, Integer::sum);
+        });
+    }
+
+    @Override
+    public TicketWithVisits getTicketWithVisits(UnitOfWork unitOfWork, String vehicleRegNumber) {
+        Ticket openTicket = openTickets.get(vehicleRegNumber);
+        return openTicket == null ? null
+                : new TicketWithVisits(openTicket, getNbTicket(unitOfWork, vehicleRegNumber));
+    }
+
+    @Override
+    public boolean closeTicket(UnitOfWork unitOfWork, Ticket ticket) {
+        // removed straight away so a concurrent exit cannot close the same ticket
+        Ticket openTicket = openTickets.get(ticket.getVehicleRegNumber());
+        if (openTicket == null || !openTickets.remove(ticket)) {
+            return false;
+        }
+        unitOfWork.onRollback(() -> openTickets.put(openTicket));
+        return true;
+    }
+
+    public int getOpenTicketCount() {
+        return openTickets.size();
+    }
+}
@@ -0,0 +1,94 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.cache.VisitCounter;
+import com.parkit.parkingsystem.config.ConnectionPoolSettings;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class JdbcStorageEngine implements StorageEngine {
+
+    private static final Logger logger = LogManager.getLogger("JdbcStorageEngine");
+
+    private static final Path KNOWN_PLATES_FILE = Paths.get("known-plates.bloom");
+
+    // -Dparkit.writeBehind=true -Dparkit.writeBehind.batchSize=100 -Dparkit.writeBehind.maxLatencyMillis=5
+    public static final String WRITE_BEHIND_PROPERTY = "parkit.writeBehind";
+
+    private final DataBaseConfig dataBaseConfig;
+    private final ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+    private final TicketDAO ticketDAO = new TicketDAO();
+    private WriteBehindQueue writeBehindQueue;
+    private final TicketArchiver ticketArchiver;
+
+    public JdbcStorageEngine() {
+        this(new DataBaseConfig());
+    }
+
+    public JdbcStorageEngine(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+        dataBaseConfig.enablePooling(new ConnectionPoolSettings());
+        dataBaseConfig.enableTracingIfRequested();
+        try {
+            new SchemaMigrator(dataBaseConfig).migrate();
+        } catch (Exception e) {
+            // the DAOs would run against a schema they do not know
+            dataBaseConfig.shutdown();
+            throw new IllegalStateException("Unable to migrate the DB schema", e);
+        }
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAllocator();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.loadActiveTicketIndex();
+        ticketDAO.visitCounter = new VisitCounter(100000);
+        ticketDAO.loadKnownPlateFilter(KNOWN_PLATES_FILE);
+        if (Boolean.getBoolean(WRITE_BEHIND_PROPERTY)) {
+            enableWriteBehind(Integer.getInteger(WRITE_BEHIND_PROPERTY + ".batchSize", 100),
+                    Long.getLong(WRITE_BEHIND_PROPERTY + ".maxLatencyMillis", 5));
+        }
+        ticketArchiver = TicketArchiver.startFromSystemProperties(dataBaseConfig);
+    }
+
+    // gates then commit together; needs the spots and open tickets in memory
+    public void enableWriteBehind(int batchSize, long maxLatencyMillis) {
+        if (parkingSpotDAO.parkingSpotAllocator == null || ticketDAO.activeTicketIndex == null) {
+            logger.error("Write-behind needs the spots and open tickets in memory, writing each gate on its own");
+            return;
+        }
+        writeBehindQueue = new WriteBehindQueue(dataBaseConfig, batchSize, maxLatencyMillis);
+        parkingSpotDAO.writeBehindQueue = writeBehindQueue;
+        ticketDAO.writeBehindQueue = writeBehindQueue;
+        logger.info("Write-behind enabled, batches of " + batchSize + " writes or " + maxLatencyMillis + "ms");
+    }
+
+    // null unless write-behind is enabled
+    public WriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
+    @Override
+    public ParkingSpotDAO getParkingSpotStore() {
+        return parkingSpotDAO;
+    }
+
+    @Override
+    public TicketDAO getTicketStore() {
+        return ticketDAO;
+    }
+
+    @Override
+    public void shutdown() {
+        if (ticketArchiver != null) {
+            ticketArchiver.close();
+        }
+        if (writeBehindQueue != null) {
+            writeBehindQueue.close();
+        }
+        ticketDAO.saveKnownPlateFilter(KNOWN_PLATES_FILE);
+        dataBaseConfig.shutdown();
+    }
+}
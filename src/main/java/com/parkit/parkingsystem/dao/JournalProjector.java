@@ -0,0 +1,203 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcTracer;
+import com.parkit.parkingsystem.config.TracedOperation;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.journal.EventJournal;
+import com.parkit.parkingsystem.journal.JournalEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Applies the journal to the ticket and parking tables in the background, in
+// sequence order and in JDBC batches. The sequence of the last applied event is
+// saved in journal_checkpoint in the same transaction as the rows, so each event
+// reaches the tables exactly once, even across crashes.
+public class JournalProjector implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("JournalProjector");
+
+    private static final int BATCH_SIZE = 500;
+    private static final long IDLE_WAIT_MILLIS = 100;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final DataBaseConfig dataBaseConfig;
+    private final EventJournal journal;
+    private EventJournal.Reader reader;
+    private volatile long checkpoint = -1;
+    private volatile boolean running;
+    private Thread thread;
+
+    public JournalProjector(DataBaseConfig dataBaseConfig, EventJournal journal) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.journal = journal;
+    }
+
+    // applies every durable event past the checkpoint, returns how many
+    public synchronized int catchUp() throws ClassNotFoundException, SQLException, IOException {
+        if (reader == null) {
+            checkpoint = loadCheckpoint();
+            reader = journal.reader(checkpoint);
+        }
+        int applied = 0;
+        List<JournalEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            JournalEvent event;
+            while (batch.size() < BATCH_SIZE && (event = reader.next()) != null) {
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                apply(batch);
+            } catch (ClassNotFoundException | SQLException e) {
+                // the events are read again on the next attempt
+                reader = null;
+                throw e;
+            }
+            applied += batch.size();
+            checkpoint = batch.get(batch.size() - 1).getSequence();
+            batch.clear();
+        }
+        return applied;
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "journal-projector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // -1 before the first catchUp
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    // stops the background thread, then applies what is left
+    @Override
+    public void close() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            catchUp();
+        } catch (Exception e) {
+            logger.error("Unable to apply the journal on shutdown, it will be applied on next start", e);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (catchUp() == 0) {
+                    journal.awaitDurable(checkpoint + 1, IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (Exception e) {
+                logger.error("Unable to apply the journal to the DB, retrying", e);
+                pause();
+            }
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+
+    // tickets are inserted before they are closed, spots change in event order
+    private void apply(List<JournalEvent> batch) throws ClassNotFoundException, SQLException {
+        TracedOperation traced = JdbcTracer.begin("JournalProjector.apply");
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            Connection con = unitOfWork.getConnection();
+            PreparedStatement insertTickets = null;
+            PreparedStatement closeTickets = null;
+            PreparedStatement updateSpots = null;
+            PreparedStatement addRollups = null;
+            PreparedStatement saveCheckpoint = null;
+            try {
+                insertTickets = con.prepareStatement(DBConstants.SAVE_TICKET_WITH_ID);
+                closeTickets = con.prepareStatement(DBConstants.CLOSE_TICKET);
+                updateSpots = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+                addRollups = con.prepareStatement(DBConstants.ADD_TICKET_ROLLUP);
+                for (JournalEvent event : batch) {
+                    if (event.getType() == JournalEvent.Type.ENTER) {
+                        insertTickets.setInt(1, event.getTicketId());
+                        insertTickets.setInt(2, event.getParkingNumber());
+                        insertTickets.setString(3, event.getVehicleRegNumber());
+                        insertTickets.setDouble(4, event.getPrice());
+                        insertTickets.setTimestamp(5, new Timestamp(event.getInTime()));
+                        insertTickets.setTimestamp(6, null);
+                        insertTickets.addBatch();
+                    } else {
+                        closeTickets.setDouble(1, event.getPrice());
+                        closeTickets.setTimestamp(2, new Timestamp(event.getOutTime()));
+                        closeTickets.setBoolean(3, event.isDiscount());
+                        closeTickets.setInt(4, event.getTicketId());
+                        closeTickets.addBatch();
+                        TicketRollupDAO.addClosedTicket(addRollups, event.toTicket());
+                    }
+                    updateSpots.setBoolean(1, event.getType() == JournalEvent.Type.EXIT);
+                    updateSpots.setInt(2, event.getParkingNumber());
+                    updateSpots.addBatch();
+                }
+                insertTickets.executeBatch();
+                closeTickets.executeBatch();
+                updateSpots.executeBatch();
+                addRollups.executeBatch();
+
+                saveCheckpoint = con.prepareStatement(DBConstants.SAVE_JOURNAL_CHECKPOINT);
+                saveCheckpoint.setLong(1, batch.get(batch.size() - 1).getSequence());
+                if (saveCheckpoint.executeUpdate() != 1) {
+                    throw new SQLException("Journal checkpoint row is missing");
+                }
+            } finally {
+                dataBaseConfig.closePreparedStatement(saveCheckpoint);
+                dataBaseConfig.closePreparedStatement(addRollups);
+                dataBaseConfig.closePreparedStatement(updateSpots);
+                dataBaseConfig.closePreparedStatement(closeTickets);
+                dataBaseConfig.closePreparedStatement(insertTickets);
+            }
+            unitOfWork.commit();
+        } finally {
+            traced.close();
+        }
+    }
+
+    private long loadCheckpoint() throws ClassNotFoundException, SQLException {
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            try {
+                ps = unitOfWork.getConnection().prepareStatement(DBConstants.GET_JOURNAL_CHECKPOINT);
+                rs = ps.executeQuery();
+                if (!rs.next()) {
+                    throw new SQLException("Journal checkpoint row is missing");
+                }
+                return rs.getLong(1);
+            } finally {
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+        }
+    }
+}
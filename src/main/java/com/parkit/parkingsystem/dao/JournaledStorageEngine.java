@@ -0,0 +1,177 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.cache.ActiveTicketIndex;
+import com.parkit.parkingsystem.config.ConnectionPoolSettings;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.journal.EventJournal;
+import com.parkit.parkingsystem.journal.JournalEvent;
+import com.parkit.parkingsystem.journal.JournalSnapshotter;
+import com.parkit.parkingsystem.journal.ParkingState;
+import com.parkit.parkingsystem.journal.SnapshotStore;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Gates are answered from memory as soon as their event is durable in the journal;
+// the ticket and parking tables follow through the projector. On start the state
+// comes from the latest snapshot plus the journal events after it, so the gates
+// do not wait for the tables, however long the ticket history. Without a usable
+// snapshot the projector first brings the tables up to date and the state is
+// read from them once, then snapshotted.
+// Ticket ids are handed out in memory, so no other process may write tickets.
+public class JournaledStorageEngine implements StorageEngine {
+
+    private static final Logger logger = LogManager.getLogger("JournaledStorageEngine");
+
+    public static final String JOURNAL_DIR_PROPERTY = "parkit.journal.dir";
+    public static final String SNAPSHOT_INTERVAL_PROPERTY = "parkit.journal.snapshotSeconds";
+
+    private final DataBaseConfig dataBaseConfig;
+    private final EventJournal journal;
+    private final JournalProjector projector;
+    private final JournalSnapshotter snapshotter;
+    private final InMemoryParkingSpotStore parkingSpotStore;
+    private final JournalingTicketStore ticketStore;
+    private final TicketArchiver ticketArchiver;
+
+    public JournaledStorageEngine(Path journalDirectory) {
+        this(new DataBaseConfig(), journalDirectory);
+    }
+
+    public JournaledStorageEngine(DataBaseConfig dataBaseConfig, Path journalDirectory) {
+        this.dataBaseConfig = dataBaseConfig;
+        dataBaseConfig.enablePooling(new ConnectionPoolSettings());
+        dataBaseConfig.enableTracingIfRequested();
+        try {
+            long start = System.nanoTime();
+            new SchemaMigrator(dataBaseConfig).migrate();
+            journal = new EventJournal(journalDirectory);
+            projector = new JournalProjector(dataBaseConfig, journal);
+            SnapshotStore snapshotStore = new SnapshotStore(journalDirectory);
+
+            ParkingState state = snapshotStore.loadLatest();
+            long snapshotSequence = 0;
+            if (state != null) {
+                snapshotSequence = state.getSequence();
+                state = replay(state);
+            }
+            if (state == null) {
+                state = loadState();
+                snapshotStore.write(state);
+                snapshotSequence = state.getSequence();
+            }
+
+            parkingSpotStore = new InMemoryParkingSpotStore(state.getParkingSpots());
+            ActiveTicketIndex openTickets = new ActiveTicketIndex();
+            for (Ticket ticket : state.getOpenTickets()) {
+                openTickets.put(ticket);
+            }
+            ticketStore = new JournalingTicketStore(
+                    new InMemoryTicketStore(openTickets, state.getLastTicketId(), state.getVisits()), journal);
+            // the stores hold copies, the snapshotter keeps the state itself up to date
+            snapshotter = new JournalSnapshotter(journal, snapshotStore, state, snapshotSequence,
+                    projector::getCheckpoint, Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, 60), TimeUnit.SECONDS);
+            logger.info("Journaled storage ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                    + "ms at journal sequence " + state.getSequence() + ", " + state.getOpenTicketCount()
+                    + " open tickets");
+        } catch (Exception e) {
+            dataBaseConfig.shutdown();
+            throw new IllegalStateException("Unable to start the journaled storage in " + journalDirectory, e);
+        }
+        projector.start();
+        ticketArchiver = TicketArchiver.startFromSystemProperties(dataBaseConfig);
+    }
+
+    // the snapshot brought up to the end of the journal, or null if the journal cannot continue it
+    private ParkingState replay(ParkingState state) {
+        if (state.getSequence() > journal.getLastSequence()) {
+            logger.error("Snapshot at sequence " + state.getSequence() + " is ahead of the journal at "
+                    + journal.getLastSequence() + ", reloading from the DB");
+            return null;
+        }
+        try {
+            EventJournal.Reader reader = journal.reader(state.getSequence());
+            int replayed = 0;
+            JournalEvent event;
+            while ((event = reader.next()) != null) {
+                state.apply(event);
+                replayed++;
+            }
+            logger.info(replayed + " journal event(s) replayed after the snapshot");
+            return state;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to replay the journal after the snapshot, reloading from the DB", e);
+            return null;
+        }
+    }
+
+    // the tables are brought up to date with the journal first
+    private ParkingState loadState() throws ClassNotFoundException, SQLException, IOException {
+        int applied = projector.catchUp();
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        List<ParkingSpot> parkingSpots = parkingSpotDAO.getParkingSpots();
+        if (parkingSpots.isEmpty()) {
+            throw new IllegalStateException("No parking spot in the DB");
+        }
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+            ParkingState state = new ParkingState(projector.getCheckpoint(), ticketDAO.getLastTicketId(unitOfWork));
+            for (ParkingSpot parkingSpot : parkingSpots) {
+                state.putParkingSpot(parkingSpot);
+            }
+            for (Ticket ticket : ticketDAO.getOpenTickets(unitOfWork)) {
+                state.putOpenTicket(ticket);
+            }
+            for (Map.Entry<String, Integer> visits : ticketDAO.getVisitCounts(unitOfWork).entrySet()) {
+                state.putVisits(visits.getKey(), visits.getValue());
+            }
+            logger.info("State loaded from the DB after applying " + applied + " journal event(s)");
+            return state;
+        }
+    }
+
+    @Override
+    public InMemoryParkingSpotStore getParkingSpotStore() {
+        return parkingSpotStore;
+    }
+
+    @Override
+    public JournalingTicketStore getTicketStore() {
+        return ticketStore;
+    }
+
+    public EventJournal getJournal() {
+        return journal;
+    }
+
+    public JournalProjector getProjector() {
+        return projector;
+    }
+
+    public JournalSnapshotter getSnapshotter() {
+        return snapshotter;
+    }
+
+    // stop the gates first: events journaled after this are only applied on next start
+    @Override
+    public void shutdown() {
+        if (ticketArchiver != null) {
+            ticketArchiver.close();
+        }
+        projector.close();
+        snapshotter.close();
+        journal.close();
+        dataBaseConfig.shutdown();
+    }
+}
@@ -0,0 +1,57 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.journal.EventJournal;
+import com.parkit.parkingsystem.journal.JournalEvent;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketWithVisits;
+
+// In-memory tickets whose entries and exits are journaled before they commit:
+// a gate is only answered once its event is durable, and a failed append rolls
+// the unit of work back like a failed insert would.
+public class JournalingTicketStore implements TicketStore {
+
+    private final InMemoryTicketStore tickets;
+    private final EventJournal journal;
+
+    public JournalingTicketStore(InMemoryTicketStore tickets, EventJournal journal) {
+        this.tickets = tickets;
+        this.journal = journal;
+    }
+
+    @Override
+    public UnitOfWork beginUnitOfWork() {
+        return tickets.beginUnitOfWork();
+    }
+
+    @Override
+    public int getNbTicket(UnitOfWork unitOfWork, String vehicleRegNumber) {
+        return tickets.getNbTicket(unitOfWork, vehicleRegNumber);
+    }
+
+    @Override
+    public void saveTicket(UnitOfWork unitOfWork, Ticket ticket) {
+        tickets.saveTicket(unitOfWork, ticket);
+        JournalEvent event = JournalEvent.entered(ticket);
+        unitOfWork.beforeCommit(() -> journal.appendAndSync(event));
+    }
+
+    @Override
+    public TicketWithVisits getTicketWithVisits(UnitOfWork unitOfWork, String vehicleRegNumber) {
+        return tickets.getTicketWithVisits(unitOfWork, vehicleRegNumber);
+    }
+
+    // the EXIT event also frees the spot in the tables
+    @Override
+    public boolean closeTicket(UnitOfWork unitOfWork, Ticket ticket) {
+        if (!tickets.closeTicket(unitOfWork, ticket)) {
+            return false;
+        }
+        JournalEvent event = JournalEvent.exited(ticket);
+        unitOfWork.beforeCommit(() -> journal.appendAndSync(event));
+        return true;
+    }
+
+    public int getOpenTicketCount() {
+        return tickets.getOpenTicketCount();
+    }
+}
@@ -1,5 +1,6 @@
 package com.parkit.parkingsystem.dao;
 
+import com.parkit.parkingsystem.cache.ParkingSpotAllocator;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
@@ -10,48 +11,214 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
-public class ParkingSpotDAO {
+public class ParkingSpotDAO implements ParkingSpotStore {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    private static final int MAX_CLAIM_ATTEMPTS = 10;
+
+    // when set, free spots are looked up in memory instead of with GET_NEXT_PARKING_SPOT
+    public ParkingSpotAllocator parkingSpotAllocator;
+
+    // when set with the allocator, spot updates in a unit of work are batched with other gates
+    public WriteBehindQueue writeBehindQueue;
+
     public int getNextAvailableSlot(ParkingType parkingType){
+        if(parkingSpotAllocator != null){
+            return parkingSpotAllocator.peek(parkingType);
+        }
         Connection con = null;
         int result=-1;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
-            ps.setString(1, parkingType.toString());
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                result = rs.getInt(1);;
+            result = selectNextAvailableSlot(con, parkingType, 0);
+        }catch (Exception ex){
+            logger.error("Error fetching next available slot",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return result;
+    }
+
+    public List<ParkingSpot> getParkingSpots(){
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+            rs = ps.executeQuery();
+            while(rs.next()){
+                parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
             }
+        }catch (Exception ex){
+            logger.error("Error fetching parking spots",ex);
+        }finally {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+        return parkingSpots;
+    }
+
+    public void loadAllocator(){
+        List<ParkingSpot> parkingSpots = getParkingSpots();
+        if(parkingSpots.isEmpty()){
+            logger.error("No parking spot loaded, keeping SQL spot lookup");
+            return;
+        }
+        parkingSpotAllocator = new ParkingSpotAllocator(parkingSpots);
+        logger.info("Loaded " + parkingSpots.size() + " parking spots in memory");
+    }
+
+    public int claimNextAvailableSlot(ParkingType parkingType){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            return claimNextAvailableSlot(con, parkingType);
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            logger.error("Error claiming next available slot",ex);
+            return -1;
         }finally {
             dataBaseConfig.closeConnection(con);
         }
-        return result;
+    }
+
+    public int claimNextAvailableSlot(UnitOfWork unitOfWork, ParkingType parkingType) throws ClassNotFoundException, SQLException {
+        ParkingSpotAllocator allocator = parkingSpotAllocator;
+        WriteBehindQueue queue = writeBehindQueue;
+        if(queue != null && allocator != null){
+            // the allocator hands the spot out, the table follows at commit
+            int parkingNumber = allocator.claim(parkingType);
+            if(parkingNumber <= 0){
+                return -1;
+            }
+            ParkingSpot claimed = new ParkingSpot(parkingNumber, parkingType, true);
+            unitOfWork.onRollback(() -> allocator.release(claimed));
+            queue.stage(unitOfWork, WriteBehindQueue.updateParkingSpot(parkingNumber, false));
+            return parkingNumber;
+        }
+        int parkingNumber = claimNextAvailableSlot(unitOfWork.getConnection(), parkingType);
+        if(parkingNumber > 0 && allocator != null){
+            ParkingSpot claimed = new ParkingSpot(parkingNumber, parkingType, true);
+            unitOfWork.onRollback(() -> allocator.release(claimed));
+        }
+        return parkingNumber;
+    }
+
+    private int claimNextAvailableSlot(Connection con, ParkingType parkingType) throws SQLException {
+        ParkingSpotAllocator allocator = parkingSpotAllocator;
+        int parkingNumber = 0;
+        int claimedInMemory = 0;
+        try {
+            for(int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++){
+                // inside a transaction the select reads a snapshot, so look past the numbers already lost
+                parkingNumber = (allocator != null) ? allocator.claim(parkingType)
+                        : selectNextAvailableSlot(con, parkingType, parkingNumber);
+                if(parkingNumber <= 0){
+                    return -1;
+                }
+                claimedInMemory = (allocator != null) ? parkingNumber : 0;
+                boolean claimed = claimParkingSpot(con, parkingNumber);
+                // once the DB has answered, the allocator agrees with it either way
+                claimedInMemory = 0;
+                if(claimed){
+                    return parkingNumber;
+                }
+                logger.debug("Lost the race for parking spot " + parkingNumber + ", retrying");
+            }
+            logger.error("Unable to claim a " + parkingType + " parking spot after " + MAX_CLAIM_ATTEMPTS + " attempts");
+            return -1;
+        }finally {
+            if(claimedInMemory > 0){
+                allocator.release(new ParkingSpot(claimedInMemory, parkingType, true));
+            }
+        }
+    }
+
+    private int selectNextAvailableSlot(Connection con, ParkingType parkingType, int after) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(after > 0 ? DBConstants.GET_NEXT_PARKING_SPOT_AFTER : DBConstants.GET_NEXT_PARKING_SPOT);
+            ps.setString(1, parkingType.toString());
+            if(after > 0){
+                ps.setInt(2, after);
+            }
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : -1;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private boolean claimParkingSpot(Connection con, int parkingNumber) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+            ps.setInt(1, parkingNumber);
+            return ps.executeUpdate() == 1;
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
     }
 
     public boolean updateParking(ParkingSpot parkingSpot){
+        ParkingSpotAllocator allocator = parkingSpotAllocator;
+        if(allocator != null && !parkingSpot.isAvailable()){
+            allocator.claim(parkingSpot);
+        }
+        boolean updated = updateParkingInDB(parkingSpot);
+        if(allocator != null && (updated == parkingSpot.isAvailable())){
+            // a release is applied once persisted, a claim that failed to persist is handed back
+            allocator.release(parkingSpot);
+        }
+        return updated;
+    }
+
+    // without the write-behind queue the release is added to the unit of work's batch
+    public boolean releaseParkingSpot(UnitOfWork unitOfWork, ParkingSpot parkingSpot) throws ClassNotFoundException, SQLException {
+        WriteBehindQueue queue = writeBehindQueue;
+        ParkingSpotAllocator allocator = parkingSpotAllocator;
+        if(queue != null && allocator != null){
+            if(!allocator.isClaimed(parkingSpot)){
+                return false;
+            }
+            queue.stage(unitOfWork, WriteBehindQueue.updateParkingSpot(parkingSpot.getId(), true));
+            unitOfWork.afterCommit(() -> allocator.release(parkingSpot));
+            return true;
+        }
+        unitOfWork.addBatch(DBConstants.UPDATE_PARKING_SPOT, false, true, parkingSpot.getId());
+        if(allocator != null){
+            // the spot is only handed out again once the release is committed
+            unitOfWork.afterCommit(() -> allocator.release(parkingSpot));
+        }
+        return true;
+    }
+
+    private boolean updateParkingInDB(ParkingSpot parkingSpot){
         //update the availability fo that parking slot
         Connection con = null;
+        PreparedStatement ps = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+            ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
             ps.setBoolean(1, parkingSpot.isAvailable());
             ps.setInt(2, parkingSpot.getId());
             int updateRowCount = ps.executeUpdate();
-            dataBaseConfig.closePreparedStatement(ps);
             return (updateRowCount == 1);
         }catch (Exception ex){
             logger.error("Error updating parking info",ex);
             return false;
         }finally {
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
         }
     }
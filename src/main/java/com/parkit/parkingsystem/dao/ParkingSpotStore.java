@@ -0,0 +1,16 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.sql.SQLException;
+
+public interface ParkingSpotStore {
+
+    // a hint only, the spot is not reserved until claimNextAvailableSlot
+    int getNextAvailableSlot(ParkingType parkingType);
+
+    int claimNextAvailableSlot(UnitOfWork unitOfWork, ParkingType parkingType) throws ClassNotFoundException, SQLException;
+
+    boolean releaseParkingSpot(UnitOfWork unitOfWork, ParkingSpot parkingSpot) throws ClassNotFoundException, SQLException;
+}
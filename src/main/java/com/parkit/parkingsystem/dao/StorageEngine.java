@@ -0,0 +1,35 @@
+package com.parkit.parkingsystem.dao;
+
+import java.nio.file.Paths;
+
+// The stores behind ParkingService. "jdbc" (the default) uses the MySQL DAOs,
+// "memory" keeps everything in process, for simulations and tests without a DB:
+// java -Dparkit.storage=memory -Dparkit.storage.cars=500 -Dparkit.storage.bikes=100 ...
+// "journal" answers from memory once events are in the journal and updates MySQL
+// behind: java -Dparkit.storage=journal -Dparkit.journal.dir=/var/lib/parkit/journal ...
+public interface StorageEngine {
+
+    String STORAGE_PROPERTY = "parkit.storage";
+
+    ParkingSpotStore getParkingSpotStore();
+
+    TicketStore getTicketStore();
+
+    void shutdown();
+
+    static StorageEngine fromSystemProperties() {
+        String storage = System.getProperty(STORAGE_PROPERTY, "jdbc");
+        switch (storage) {
+        case "jdbc":
+            return new JdbcStorageEngine();
+        case "memory":
+            return new InMemoryStorageEngine(Integer.getInteger("parkit.storage.cars", 3),
+                    Integer.getInteger("parkit.storage.bikes", 2));
+        case "journal":
+            return new JournaledStorageEngine(
+                    Paths.get(System.getProperty(JournaledStorageEngine.JOURNAL_DIR_PROPERTY, "journal")));
+        default:
+            throw new IllegalArgumentException("Unknown " + STORAGE_PROPERTY + ": " + storage);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcTracer;
+import com.parkit.parkingsystem.config.TracedOperation;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the tickets closed for longer than the retention out of the ticket table,
+ * so the queries of the gates keep reading a small table. Each ticket goes to
+ * ticket_history_&lt;yyyymm&gt; for the month of its exit, created on first use, and
+ * the plate's archived visits are added up in ticket_history_visits.
+ *
+ * <p>Tickets move in batches of {@value #BATCH_SIZE}, with one short transaction
+ * per batch. The batch touches closed tickets only, which no gate updates. The
+ * newest ticket is never archived: ticket ids continue from the highest id in the
+ * ticket table, through AUTO_INCREMENT or GET_LAST_TICKET_ID.
+ */
+public class TicketArchiver implements AutoCloseable {
+
+    // -Dparkit.archive.retentionDays=30 (0 disables archival) -Dparkit.archive.intervalMinutes=60
+    public static final String RETENTION_DAYS_PROPERTY = "parkit.archive.retentionDays";
+    public static final String INTERVAL_MINUTES_PROPERTY = "parkit.archive.intervalMinutes";
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiver");
+
+    private static final int BATCH_SIZE = 500;
+
+    private final DataBaseConfig dataBaseConfig;
+    private final long retentionMillis;
+    private final long intervalMillis;
+    private Set<Integer> partitions;
+    private long archivedCount;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private Thread thread;
+
+    public TicketArchiver(DataBaseConfig dataBaseConfig, long retention, long interval, TimeUnit unit) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.retentionMillis = unit.toMillis(retention);
+        this.intervalMillis = unit.toMillis(interval);
+    }
+
+    // started, or null when archival is disabled
+    public static TicketArchiver startFromSystemProperties(DataBaseConfig dataBaseConfig) {
+        long retentionDays = Long.getLong(RETENTION_DAYS_PROPERTY, 30);
+        if (retentionDays <= 0) {
+            return null;
+        }
+        TicketArchiver archiver = new TicketArchiver(dataBaseConfig, TimeUnit.DAYS.toMinutes(retentionDays),
+                Long.getLong(INTERVAL_MINUTES_PROPERTY, 60), TimeUnit.MINUTES);
+        archiver.start();
+        return archiver;
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "ticket-archiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // archives the tickets closed before the retention, returns how many
+    public int archive() throws ClassNotFoundException, SQLException {
+        return archiveClosedBefore(new Date(System.currentTimeMillis() - retentionMillis));
+    }
+
+    public synchronized int archiveClosedBefore(Date cutoff) throws ClassNotFoundException, SQLException {
+        int archived = 0;
+        int moved;
+        do {
+            TracedOperation traced = JdbcTracer.begin("TicketArchiver.archive");
+            try {
+                moved = archiveBatch(cutoff);
+            } finally {
+                traced.close();
+            }
+            archived += moved;
+        } while (moved == BATCH_SIZE);
+        archivedCount += archived;
+        if (archived > 0) {
+            logger.info(archived + " ticket(s) closed before " + cutoff + " archived");
+        }
+        return archived;
+    }
+
+    public synchronized long getArchivedCount() {
+        return archivedCount;
+    }
+
+    @Override
+    public void close() {
+        stopped.countDown();
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (!stopped.await(intervalMillis, TimeUnit.MILLISECONDS)) {
+                try {
+                    archive();
+                } catch (Exception e) {
+                    logger.error("Unable to archive tickets, retrying at the next interval", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int archiveBatch(Date cutoff) throws ClassNotFoundException, SQLException {
+        List<Ticket> tickets = readArchivableTickets(cutoff);
+        if (tickets.isEmpty()) {
+            return 0;
+        }
+        Map<Integer, List<Ticket>> byMonth = new TreeMap<>();
+        for (Ticket ticket : tickets) {
+            byMonth.computeIfAbsent(monthOf(ticket.getOutTime()), month -> new ArrayList<>()).add(ticket);
+        }
+        try {
+            // DDL commits on MySQL, so the tables are created before the move starts
+            for (int month : byMonth.keySet()) {
+                createPartition(month);
+            }
+            move(byMonth);
+        } catch (ClassNotFoundException | SQLException e) {
+            // another archiver may have created months meanwhile, they are read again on the next batch
+            partitions = null;
+            throw e;
+        }
+        return tickets.size();
+    }
+
+    private List<Ticket> readArchivableTickets(Date cutoff) throws ClassNotFoundException, SQLException {
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            List<Ticket> tickets = new ArrayList<>();
+            try {
+                ps = unitOfWork.getConnection().prepareStatement(DBConstants.GET_ARCHIVABLE_TICKETS);
+                ps.setTimestamp(1, new Timestamp(cutoff.getTime()));
+                ps.setInt(2, BATCH_SIZE);
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    // ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, DISCOUNT
+                    Ticket ticket = new Ticket();
+                    ticket.setId(rs.getInt(1));
+                    ticket.setParkingSpot(new ParkingSpot(rs.getInt(2), null, true));
+                    ticket.setVehicleRegNumber(rs.getString(3));
+                    ticket.setPrice(rs.getDouble(4));
+                    ticket.setInTime(rs.getTimestamp(5));
+                    ticket.setOutTime(rs.getTimestamp(6));
+                    ticket.setDiscount(rs.getBoolean(7));
+                    tickets.add(ticket);
+                }
+                return tickets;
+            } finally {
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+        }
+    }
+
+    private void createPartition(int month) throws ClassNotFoundException, SQLException {
+        if (partitions == null) {
+            partitions = loadPartitions();
+        }
+        if (partitions.contains(month)) {
+            return;
+        }
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            Connection con = unitOfWork.getConnection();
+            Statement statement = null;
+            PreparedStatement ps = null;
+            try {
+                statement = con.createStatement();
+                statement.execute(String.format(DBConstants.CREATE_TICKET_HISTORY_PARTITION, month, month));
+                // a no-op when another archiver created the month first
+                ps = con.prepareStatement(DBConstants.SAVE_TICKET_HISTORY_PARTITION);
+                ps.setInt(1, month);
+                ps.executeUpdate();
+            } finally {
+                dataBaseConfig.closePreparedStatement(ps);
+                if (statement != null) {
+                    statement.close();
+                }
+            }
+            unitOfWork.commit();
+        }
+        partitions.add(month);
+        logger.info("Ticket history partition " + month + " created");
+    }
+
+    private Set<Integer> loadPartitions() throws ClassNotFoundException, SQLException {
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            Set<Integer> months = new HashSet<>();
+            try {
+                ps = unitOfWork.getConnection().prepareStatement(DBConstants.GET_TICKET_HISTORY_PARTITIONS);
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    months.add(rs.getInt(1));
+                }
+                return months;
+            } finally {
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+        }
+    }
+
+    // copies, counts the visits and deletes in one transaction, or leaves the batch where it was
+    private void move(Map<Integer, List<Ticket>> byMonth) throws ClassNotFoundException, SQLException {
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            Connection con = unitOfWork.getConnection();
+            Map<String, int[]> visits = new HashMap<>();
+            for (Map.Entry<Integer, List<Ticket>> month : byMonth.entrySet()) {
+                PreparedStatement ps = null;
+                try {
+                    ps = con.prepareStatement(String.format(DBConstants.SAVE_TICKET_HISTORY, month.getKey()));
+                    for (Ticket ticket : month.getValue()) {
+                        ps.setInt(1, ticket.getId());
+                        ps.setInt(2, ticket.getParkingSpot().getId());
+                        ps.setString(3, ticket.getVehicleRegNumber());
+                        ps.setDouble(4, ticket.getPrice());
+                        ps.setTimestamp(5, new Timestamp(ticket.getInTime().getTime()));
+                        ps.setTimestamp(6, new Timestamp(ticket.getOutTime().getTime()));
+                        ps.setBoolean(7, ticket.isDiscount());
+                        ps.addBatch();
+                        // visits, highest ticket id
+                        int[] plate = visits.computeIfAbsent(ticket.getVehicleRegNumber(), key -> new int[2]);
+                        plate[0]++;
+                        plate[1] = Math.max(plate[1], ticket.getId());
+                    }
+                    ps.executeBatch();
+                } finally {
+                    dataBaseConfig.closePreparedStatement(ps);
+                }
+            }
+            PreparedStatement addVisits = null;
+            PreparedStatement delete = null;
+            try {
+                addVisits = con.prepareStatement(DBConstants.ADD_HISTORY_VISITS);
+                for (Map.Entry<String, int[]> plate : visits.entrySet()) {
+                    addVisits.setString(1, plate.getKey());
+                    addVisits.setInt(2, plate.getValue()[0]);
+                    addVisits.setInt(3, plate.getValue()[1]);
+                    addVisits.addBatch();
+                }
+                addVisits.executeBatch();
+
+                delete = con.prepareStatement(DBConstants.DELETE_ARCHIVED_TICKET);
+                for (List<Ticket> tickets : byMonth.values()) {
+                    for (Ticket ticket : tickets) {
+                        delete.setInt(1, ticket.getId());
+                        delete.addBatch();
+                    }
+                }
+                for (int deleted : delete.executeBatch()) {
+                    if (deleted == 0) {
+                        throw new SQLException("An archived ticket was reopened or deleted meanwhile, batch rolled back");
+                    }
+                }
+            } finally {
+                dataBaseConfig.closePreparedStatement(delete);
+                dataBaseConfig.closePreparedStatement(addVisits);
+            }
+            unitOfWork.commit();
+        }
+    }
+
+    private static int monthOf(Date outTime) {
+        LocalDate date = outTime.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        return date.getYear() * 100 + date.getMonthValue();
+    }
+}
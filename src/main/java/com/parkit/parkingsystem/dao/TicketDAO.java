@@ -1,28 +1,96 @@
 package com.parkit.parkingsystem.dao;
 
+import com.parkit.parkingsystem.cache.ActiveTicketIndex;
+import com.parkit.parkingsystem.cache.KnownPlateFilter;
+import com.parkit.parkingsystem.cache.VisitCounter;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketWithVisits;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
-public class TicketDAO {
+public class TicketDAO implements TicketStore {
 
 	private static final Logger logger = LogManager.getLogger("TicketDAO");
 
 	public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+	// open tickets by plate, so exits can skip GET_TICKET; the ticket table stays the reference
+	public ActiveTicketIndex activeTicketIndex;
+
+	// when set, getNbTicket counts a plate in the DB once and saveTicket keeps the count current
+	public VisitCounter visitCounter;
+
+	// when set, plates the filter has never seen are answered as first visits without a query
+	public KnownPlateFilter knownPlateFilter;
+
+	// when set, saveTicket and closeTicket in a unit of work are batched with other gates; needs activeTicketIndex
+	public WriteBehindQueue writeBehindQueue;
+
+	public UnitOfWork beginUnitOfWork() {
+		return new UnitOfWork(dataBaseConfig);
+	}
+
 	public boolean saveTicket(Ticket ticket) {
+		VisitCounter counter = beginVisit(ticket);
 		Connection con = null;
+		boolean saved = false;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+			insertTicket(con, ticket);
+			saved = true;
+			ticketSaved(ticket, counter);
+			return true;
+		} catch (Exception ex) {
+			logger.error("Error saving ticket", ex);
+			return false;
+		} finally {
+			if (counter != null && !saved) {
+				counter.abortVisit(ticket.getVehicleRegNumber());
+			}
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	public void saveTicket(UnitOfWork unitOfWork, Ticket ticket) throws ClassNotFoundException, SQLException {
+		VisitCounter counter = beginVisit(ticket);
+		if (counter != null) {
+			unitOfWork.onRollback(() -> counter.abortVisit(ticket.getVehicleRegNumber()));
+		}
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue != null) {
+			// the id is set by the flush, before the commit returns
+			queue.stage(unitOfWork, WriteBehindQueue.insertTicket(ticket));
+		} else {
+			insertTicket(unitOfWork.getConnection(), ticket);
+		}
+		unitOfWork.afterCommit(() -> ticketSaved(ticket, counter));
+	}
+
+	private void insertTicket(Connection con, Ticket ticket) throws SQLException {
+		PreparedStatement ps = null;
+		ResultSet keys = null;
+		try {
+			ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
 			// ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
 			// ps.setInt(1,ticket.getId());
 			ps.setInt(1, ticket.getParkingSpot().getId());
@@ -30,83 +98,430 @@ public class TicketDAO {
 			ps.setDouble(3, ticket.getPrice());
 			ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
 			ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
-			return ps.execute();
-		} catch (Exception ex) {
-			logger.error("Error fetching next available slot", ex);
+			if (ps.executeUpdate() != 1) {
+				throw new SQLException("Ticket for " + ticket.getVehicleRegNumber() + " was not inserted");
+			}
+			keys = ps.getGeneratedKeys();
+			if (keys.next()) {
+				ticket.setId(keys.getInt(1));
+			}
 		} finally {
-			dataBaseConfig.closeConnection(con);
-			return false;
+			dataBaseConfig.closeResultSet(keys);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	// the visit counter must not cache a count loaded while the ticket is being saved
+	private VisitCounter beginVisit(Ticket ticket) {
+		VisitCounter counter = visitCounter;
+		if (counter != null) {
+			counter.beginVisit(ticket.getVehicleRegNumber());
+		}
+		return counter;
+	}
+
+	private void ticketSaved(Ticket ticket, VisitCounter counter) {
+		if (counter != null) {
+			counter.recordVisit(ticket.getVehicleRegNumber());
+		}
+		if (knownPlateFilter != null) {
+			knownPlateFilter.add(ticket.getVehicleRegNumber());
+			knownPlateFilter.recordTicketId(ticket.getId());
+		}
+		if (activeTicketIndex != null && ticket.getOutTime() == null) {
+			activeTicketIndex.put(ticket);
 		}
 	}
 
 	public Ticket getTicket(String vehicleRegNumber) {
+		if (activeTicketIndex != null) {
+			Ticket openTicket = activeTicketIndex.get(vehicleRegNumber);
+			if (openTicket != null) {
+				return openTicket;
+			}
+		}
 		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
 		Ticket ticket = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+			ps = con.prepareStatement(DBConstants.GET_TICKET);
 			// ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
 			ps.setString(1, vehicleRegNumber);
-			ResultSet rs = ps.executeQuery();
+			rs = ps.executeQuery();
 			if (rs.next()) {
-				ticket = new Ticket();
-				ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false);
-				ticket.setParkingSpot(parkingSpot);
-				ticket.setId(rs.getInt(2));
-				ticket.setVehicleRegNumber(vehicleRegNumber);
-				ticket.setPrice(rs.getDouble(3));
-				ticket.setInTime(rs.getTimestamp(4));
-				ticket.setOutTime(rs.getTimestamp(5));
+				ticket = readTicket(rs, vehicleRegNumber);
 			}
-			dataBaseConfig.closeResultSet(rs);
-			dataBaseConfig.closePreparedStatement(ps);
 		} catch (Exception ex) {
 			logger.error("Error fetching next available slot", ex);
 		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
 			return ticket;
 		}
 	}
 
+	// An open ticket is closed and added to the rollups in the same transaction, like at
+	// an exit. A closed one is only corrected, its rollups keep the values of its close.
 	public boolean updateTicket(Ticket ticket) {
+		try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+			PreparedStatement ps = null;
+			try {
+				ps = unitOfWork.getConnection().prepareStatement(DBConstants.CLOSE_TICKET);
+				setClosedTicket(ps, ticket);
+				if (ps.executeUpdate() == 1) {
+					TicketRollupDAO.addClosedTicket(unitOfWork, ticket);
+				} else {
+					dataBaseConfig.closePreparedStatement(ps);
+					ps = unitOfWork.getConnection().prepareStatement(DBConstants.UPDATE_TICKET);
+					setClosedTicket(ps, ticket);
+					ps.executeUpdate();
+				}
+			} finally {
+				dataBaseConfig.closePreparedStatement(ps);
+			}
+			unitOfWork.commit();
+			if (activeTicketIndex != null) {
+				activeTicketIndex.remove(ticket);
+			}
+			return true;
+		} catch (Exception ex) {
+			logger.error("Error updating ticket", ex);
+		}
+		return false;
+	}
+
+	private static void setClosedTicket(PreparedStatement ps, Ticket ticket) throws SQLException {
+		ps.setDouble(1, ticket.getPrice());
+		ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+		ps.setBoolean(3, ticket.isDiscount());
+		ps.setInt(4, ticket.getId());
+	}
+
+	// latest ticket of the plate and its number of tickets, read with a single query
+	public TicketWithVisits getTicketWithVisits(UnitOfWork unitOfWork, String vehicleRegNumber)
+			throws ClassNotFoundException, SQLException {
+		if (activeTicketIndex != null) {
+			Ticket openTicket = activeTicketIndex.get(vehicleRegNumber);
+			if (openTicket != null) {
+				return new TicketWithVisits(openTicket, getNbTicket(unitOfWork, vehicleRegNumber));
+			}
+		}
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = unitOfWork.getConnection().prepareStatement(DBConstants.GET_TICKET_WITH_VISITS);
+			ps.setString(1, vehicleRegNumber);
+			rs = ps.executeQuery();
+			if (!rs.next()) {
+				return null;
+			}
+			Ticket ticket = readTicket(rs, vehicleRegNumber);
+			// archived visits are null for a plate never archived, read as 0
+			return new TicketWithVisits(ticket, rs.getInt(7) + rs.getInt(8));
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	// false when the ticket is known to be closed already. Otherwise the close and its rollups
+	// are added to the unit of work's batch, whose execution fails when a concurrent exit closed it first
+	public boolean closeTicket(UnitOfWork unitOfWork, Ticket ticket) throws ClassNotFoundException, SQLException {
+		WriteBehindQueue queue = writeBehindQueue;
+		ActiveTicketIndex index = activeTicketIndex;
+		if (queue != null && index != null) {
+			// the index decides instead of the update count: removed straight away, put back on rollback
+			Ticket openTicket = index.get(ticket.getVehicleRegNumber());
+			if (openTicket == null || !index.remove(ticket)) {
+				return false;
+			}
+			unitOfWork.onRollback(() -> index.put(openTicket));
+			queue.stage(unitOfWork, WriteBehindQueue.closeTicket(ticket));
+			return true;
+		}
+		unitOfWork.addBatch(DBConstants.CLOSE_TICKET, true, ticket.getPrice(), new Timestamp(ticket.getOutTime().getTime()),
+				ticket.isDiscount(), ticket.getId());
+		TicketRollupDAO.addClosedTicket(unitOfWork, ticket);
+		if (index != null) {
+			unitOfWork.afterCommit(() -> index.remove(ticket));
+		}
+		return true;
+	}
+
+	public int getNbTicket(String vehicleRegNumber) {
+		return getNbTicket(vehicleRegNumber, this::countTickets);
+	}
+
+	public int getNbTicket(UnitOfWork unitOfWork, String vehicleRegNumber) {
+		if (writeBehindQueue != null) {
+			// the unit of work must not hold a connection while its commit waits for the flusher
+			return getNbTicket(vehicleRegNumber);
+		}
+		return getNbTicket(vehicleRegNumber, plate -> {
+			try {
+				return countTickets(unitOfWork.getConnection(), plate);
+			} catch (Exception ex) {
+				logger.error("Error retrieving ticket count", ex);
+				return null;
+			}
+		});
+	}
+
+	private int getNbTicket(String vehicleRegNumber, Function<String, Integer> counter) {
+		KnownPlateFilter filter = knownPlateFilter;
+		if (filter != null && !filter.mightContain(vehicleRegNumber)) {
+			return 0;
+		}
+		Integer countTicket = (visitCounter != null) ? visitCounter.getVisits(vehicleRegNumber, counter)
+				: counter.apply(vehicleRegNumber);
+		if (filter != null && countTicket != null && countTicket == 0) {
+			filter.recordFalsePositive();
+		}
+		return countTicket == null ? 0 : countTicket;
+	}
+
+	private Integer countTickets(String vehicleRegNumber) {
+
 		Connection con = null;
+		Integer countTicket = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
-			ps.setDouble(1, ticket.getPrice());
-			ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
-			ps.setInt(3, ticket.getId());
-			ps.execute();
-			return true;
+			countTicket = countTickets(con, vehicleRegNumber);
 		} catch (Exception ex) {
+			logger.error("Error retrieving ticket count", ex);
 		} finally {
 			dataBaseConfig.closeConnection(con);
 		}
-		return false;
+		return countTicket;
 	}
 
-	public int getNbTicket(String vehicleRegNumber) {
+	// tickets left in ticket plus the archived ones, read with a single query
+	private int countTickets(Connection con, String vehicleRegNumber) throws SQLException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = con.prepareStatement(DBConstants.DISCOUNT_GET_TICKET);
+			ps.setString(1, vehicleRegNumber);
+			ps.setString(2, vehicleRegNumber);
+			rs = ps.executeQuery();
+			return rs.next() ? rs.getInt(1) + rs.getInt(2) : 0;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
 
+	// every ticket of the plate, archived ones included, newest first; one query per history month, for audits
+	public List<Ticket> getTickets(String vehicleRegNumber) {
 		Connection con = null;
-		int countTicket = 0;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		List<Ticket> tickets = new ArrayList<>();
 		try {
 			con = dataBaseConfig.getConnection();
+			List<Integer> months = new ArrayList<>();
+			ps = con.prepareStatement(DBConstants.GET_TICKET_HISTORY_PARTITIONS);
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				months.add(rs.getInt(1));
+			}
+			addTickets(con, DBConstants.GET_TICKETS, vehicleRegNumber, tickets);
+			for (int month : months) {
+				addTickets(con, String.format(DBConstants.GET_TICKET_HISTORY, month), vehicleRegNumber, tickets);
+			}
+			tickets.sort(Comparator.comparing(Ticket::getInTime).reversed());
+		} catch (Exception ex) {
+			logger.error("Error fetching the tickets of " + vehicleRegNumber, ex);
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+		}
+		return tickets;
+	}
 
-			PreparedStatement ps = con.prepareStatement(DBConstants.DISCOUNT_GET_TICKET);
+	private void addTickets(Connection con, String query, String vehicleRegNumber, List<Ticket> tickets)
+			throws SQLException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = con.prepareStatement(query);
 			ps.setString(1, vehicleRegNumber);
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				tickets.add(readTicket(rs, vehicleRegNumber));
+			}
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
 
-			ResultSet rs = ps.executeQuery();
+	// 0 when the table is empty
+	public int getLastTicketId(UnitOfWork unitOfWork) throws ClassNotFoundException, SQLException {
+		return getLastTicketId(unitOfWork.getConnection());
+	}
 
-			if (rs.next()) {
-				countTicket = rs.getInt(1);
+	private int getLastTicketId(Connection con) throws SQLException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = con.prepareStatement(DBConstants.GET_LAST_TICKET_ID);
+			rs = ps.executeQuery();
+			return rs.next() ? rs.getInt(1) : 0;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	public List<Ticket> getOpenTickets(UnitOfWork unitOfWork) throws ClassNotFoundException, SQLException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		List<Ticket> openTickets = new ArrayList<>();
+		try {
+			ps = unitOfWork.getConnection().prepareStatement(DBConstants.GET_OPEN_TICKETS);
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				openTickets.add(readTicket(rs, rs.getString(7)));
 			}
+			return openTickets;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	// number of tickets of every plate, archived ones included, in one pass over each table
+	public Map<String, Integer> getVisitCounts(UnitOfWork unitOfWork) throws ClassNotFoundException, SQLException {
+		Map<String, Integer> visits = new HashMap<>();
+		addVisitCounts(unitOfWork.getConnection(), DBConstants.GET_VISIT_COUNTS, visits);
+		addVisitCounts(unitOfWork.getConnection(), DBConstants.GET_HISTORY_VISIT_COUNTS, visits);
+		return visits;
+	}
 
+	private void addVisitCounts(Connection con, String query, Map<String, Integer> visits) throws SQLException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = con.prepareStatement(query);
+			ps.setFetchSize(1000);
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				visits.merge(rs.getString(1), rs.getInt(2), Integer::sum);
+			}
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	public void loadActiveTicketIndex() {
+		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+			rs = ps.executeQuery();
+			ActiveTicketIndex index = new ActiveTicketIndex();
+			while (rs.next()) {
+				index.put(readTicket(rs, rs.getString(7)));
+			}
+			activeTicketIndex = index;
+			logger.info("Loaded " + index.size() + " open tickets in memory");
 		} catch (Exception ex) {
-			logger.error("Error retrieving ticket count", ex);
+			logger.error("Error loading open tickets, exits will query the ticket table", ex);
 		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
 		}
-		return countTicket;
+	}
+
+	public void loadKnownPlateFilter(Path file) {
+		KnownPlateFilter filter = null;
+		if (file != null && Files.exists(file)) {
+			try {
+				filter = KnownPlateFilter.load(file);
+			} catch (IOException ex) {
+				logger.error("Unable to read known plate filter " + file + ", rebuilding it", ex);
+			}
+		}
+		if (filter == null) {
+			filter = new KnownPlateFilter(100000, 0.01);
+		}
+		Connection con = null;
+		try {
+			// only tickets saved after the file was written need to be added, some may be archived already
+			con = dataBaseConfig.getConnection();
+			int lastTicketId = getLastTicketId(con);
+			if (filter.getHighestTicketId() > lastTicketId) {
+				// the file saw tickets this DB does not have, e.g. after a restore: its plates cannot be trusted
+				logger.warn("Known plate filter " + file + " is ahead of the ticket table (ticket "
+						+ filter.getHighestTicketId() + " > " + lastTicketId + "), rebuilding it");
+				filter = new KnownPlateFilter(100000, 0.01);
+			}
+			long highestTicketId = filter.getHighestTicketId();
+			int added = addKnownPlates(con, DBConstants.GET_KNOWN_PLATES_SINCE, highestTicketId, filter)
+					+ addKnownPlates(con, DBConstants.GET_KNOWN_HISTORY_PLATES_SINCE, highestTicketId, filter);
+			knownPlateFilter = filter;
+			logger.info("Known plate filter ready, " + added + " plates added from the ticket tables");
+		} catch (Exception ex) {
+			logger.error("Error loading known plates, first visits will be counted in the DB", ex);
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private int addKnownPlates(Connection con, String query, long highestTicketId, KnownPlateFilter filter)
+			throws SQLException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = con.prepareStatement(query);
+			ps.setLong(1, highestTicketId);
+			rs = ps.executeQuery();
+			int added = 0;
+			while (rs.next()) {
+				filter.add(rs.getString(1));
+				filter.recordTicketId(rs.getLong(2));
+				added++;
+			}
+			return added;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	public void saveKnownPlateFilter(Path file) {
+		if (knownPlateFilter == null) {
+			return;
+		}
+		try {
+			knownPlateFilter.save(file);
+			logger.info("Known plate filter saved, observed false positive rate "
+					+ knownPlateFilter.getObservedFalsePositiveRate());
+		} catch (IOException ex) {
+			logger.error("Unable to save known plate filter to " + file, ex);
+		}
+	}
+
+	private Ticket readTicket(ResultSet rs, String vehicleRegNumber) throws SQLException {
+		// PARKING_NUMBER, ID, PRICE, IN_TIME, OUT_TIME, TYPE
+		Ticket ticket = new Ticket();
+		ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false);
+		ticket.setParkingSpot(parkingSpot);
+		ticket.setId(rs.getInt(2));
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setPrice(rs.getDouble(3));
+		ticket.setInTime(rs.getTimestamp(4));
+		ticket.setOutTime(rs.getTimestamp(5));
+		return ticket;
 	}
 
 }
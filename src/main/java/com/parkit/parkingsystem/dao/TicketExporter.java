@@ -0,0 +1,273 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcTracer;
+import com.parkit.parkingsystem.config.TracedOperation;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams every ticket, the hot table then each history month, to a channel as CSV
+ * or as a compact binary format. Tickets are read in pages of {@value #PAGE_SIZE}
+ * ordered by ID, each page starting after the last ID of the previous one, with a
+ * forward-only cursor in its own short read-only transaction. The export never
+ * holds more than a page of rows and the 64KB write buffer, and the gates only
+ * wait for a pooled connection between two pages.
+ *
+ * <p>A ticket archived while the export runs may come out twice, with the same ID:
+ * once from ticket and once from its history month. None is left out.
+ *
+ * <p>The binary format is big-endian, readable with a DataInputStream:
+ * <pre>
+ * int magic | short format version
+ * per ticket: byte 1 | int id | int parking number | byte plate length | plate UTF-8 | double price | long in time millis | long out time millis, -1 when open
+ * byte 0 | long ticket count
+ * </pre>
+ */
+public class TicketExporter {
+
+    public enum Format { CSV, BINARY }
+
+    public static final int MAGIC = 0x504b5458;
+    public static final short FORMAT_VERSION = 1;
+
+    private static final Logger logger = LogManager.getLogger("TicketExporter");
+
+    private static final int PAGE_SIZE = 10000;
+    private static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // a plate is at most 10 characters, 40 bytes of UTF-8
+    private static final int MAX_ROW_SIZE = 256;
+    private static final byte[] CSV_HEADER = "ID,PARKING_NUMBER,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final DataBaseConfig dataBaseConfig;
+
+    public TicketExporter(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    // written to a temporary file and renamed, so the file is either complete or absent
+    public long export(Path file, Format format) throws IOException, ClassNotFoundException, SQLException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long exported;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            exported = export(channel, format);
+            channel.force(false);
+        } catch (IOException | ClassNotFoundException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return exported;
+    }
+
+    // number of tickets written; the channel is left open
+    public long export(WritableByteChannel channel, Format format)
+            throws IOException, ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        if (format == Format.CSV) {
+            buffer.put(CSV_HEADER);
+        } else {
+            buffer.putInt(MAGIC).putShort(FORMAT_VERSION);
+        }
+        long exported;
+        TracedOperation traced = JdbcTracer.begin("TicketExporter.export");
+        try {
+            exported = exportTable(DBConstants.EXPORT_TICKETS, channel, buffer, format);
+            for (int month : readPartitions()) {
+                exported += exportTable(String.format(DBConstants.EXPORT_TICKET_HISTORY, month), channel, buffer, format);
+            }
+        } finally {
+            traced.close();
+        }
+        if (format == Format.BINARY) {
+            buffer.put((byte) 0).putLong(exported);
+        }
+        drain(channel, buffer);
+        logger.info(exported + " tickets exported as " + format + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        return exported;
+    }
+
+    private long exportTable(String query, WritableByteChannel channel, ByteBuffer buffer, Format format)
+            throws IOException, ClassNotFoundException, SQLException {
+        long exported = 0;
+        int lastId = 0;
+        int read;
+        do {
+            read = 0;
+            try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+                PreparedStatement ps = null;
+                ResultSet rs = null;
+                try {
+                    ps = unitOfWork.getConnection().prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(FETCH_SIZE);
+                    ps.setInt(1, lastId);
+                    ps.setInt(2, PAGE_SIZE);
+                    rs = ps.executeQuery();
+                    while (rs.next()) {
+                        if (buffer.remaining() < MAX_ROW_SIZE) {
+                            drain(channel, buffer);
+                        }
+                        // ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME
+                        lastId = rs.getInt(1);
+                        if (format == Format.CSV) {
+                            writeCsvRow(buffer, lastId, rs.getInt(2), rs.getString(3), rs.getDouble(4),
+                                    rs.getTimestamp(5), rs.getTimestamp(6));
+                        } else {
+                            writeBinaryRow(buffer, lastId, rs.getInt(2), rs.getString(3), rs.getDouble(4),
+                                    rs.getTimestamp(5), rs.getTimestamp(6));
+                        }
+                        read++;
+                    }
+                } finally {
+                    dataBaseConfig.closeResultSet(rs);
+                    dataBaseConfig.closePreparedStatement(ps);
+                }
+            }
+            exported += read;
+        } while (read == PAGE_SIZE);
+        return exported;
+    }
+
+    private List<Integer> readPartitions() throws ClassNotFoundException, SQLException {
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            List<Integer> months = new ArrayList<>();
+            try {
+                ps = unitOfWork.getConnection().prepareStatement(DBConstants.GET_TICKET_HISTORY_PARTITIONS);
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    months.add(rs.getInt(1));
+                }
+                return months;
+            } finally {
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+        }
+    }
+
+    private static void drain(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void writeCsvRow(ByteBuffer buffer, int id, int parkingNumber, String plate, double price,
+            Timestamp inTime, Timestamp outTime) {
+        putDigits(buffer, id);
+        buffer.put((byte) ',');
+        putDigits(buffer, parkingNumber);
+        buffer.put((byte) ',');
+        putCsvField(buffer, plate);
+        buffer.put((byte) ',');
+        putAscii(buffer, BigDecimal.valueOf(price).toPlainString());
+        buffer.put((byte) ',');
+        putDateTime(buffer, inTime);
+        buffer.put((byte) ',');
+        putDateTime(buffer, outTime);
+        buffer.put((byte) '\n');
+    }
+
+    private static void writeBinaryRow(ByteBuffer buffer, int id, int parkingNumber, String plate, double price,
+            Timestamp inTime, Timestamp outTime) {
+        byte[] plateBytes = plate.getBytes(StandardCharsets.UTF_8);
+        buffer.put((byte) 1).putInt(id).putInt(parkingNumber);
+        buffer.put((byte) plateBytes.length).put(plateBytes);
+        buffer.putDouble(price).putLong(inTime.getTime()).putLong(outTime == null ? -1 : outTime.getTime());
+    }
+
+    // quoted only when it holds a separator, a quote or a line break
+    private static void putCsvField(ByteBuffer buffer, String value) {
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            buffer.put(value.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        buffer.put((byte) '"');
+        buffer.put(value.replace("\"", "\"\"").getBytes(StandardCharsets.UTF_8));
+        buffer.put((byte) '"');
+    }
+
+    // yyyy-MM-dd HH:mm:ss, nothing for a ticket still open
+    private static void putDateTime(ByteBuffer buffer, Timestamp timestamp) {
+        if (timestamp == null) {
+            return;
+        }
+        LocalDateTime dateTime = timestamp.toLocalDateTime();
+        putPadded(buffer, dateTime.getYear(), 4);
+        buffer.put((byte) '-');
+        putPadded(buffer, dateTime.getMonthValue(), 2);
+        buffer.put((byte) '-');
+        putPadded(buffer, dateTime.getDayOfMonth(), 2);
+        buffer.put((byte) ' ');
+        putPadded(buffer, dateTime.getHour(), 2);
+        buffer.put((byte) ':');
+        putPadded(buffer, dateTime.getMinute(), 2);
+        buffer.put((byte) ':');
+        putPadded(buffer, dateTime.getSecond(), 2);
+    }
+
+    private static void putPadded(ByteBuffer buffer, int value, int width) {
+        for (int divisor = (int) Math.pow(10, width - 1); divisor > 1 && value < divisor; divisor /= 10) {
+            buffer.put((byte) '0');
+        }
+        putDigits(buffer, value);
+    }
+
+    private static void putDigits(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value > 0);
+        // digits were written lowest first
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte digit = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, digit);
+        }
+    }
+
+    private static void putAscii(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketRollup;
+import com.parkit.parkingsystem.model.TicketRollup.Granularity;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revenue and parked time of the closed tickets, added up per minute, hour and day
+ * of exit, parking type and rate in ticket_rollup. Every close adds its ticket to
+ * its three buckets in the transaction that closes it, through
+ * {@link #addClosedTicket}, so a dashboard reads a handful of rows whatever the
+ * number of tickets.
+ *
+ * <p>{@link #rebuild} recomputes the table from ticket and the history months,
+ * e.g. after tickets were backfilled, in chunks of {@value #DEFAULT_CHUNK_SIZE}
+ * ticket ids by default, run in parallel. The chunks write to ticket_rollup_rebuild,
+ * copied over ticket_rollup in one transaction once all of them succeeded, so a
+ * failed rebuild leaves the dashboards on the previous totals. Gates closing
+ * tickets meanwhile are not counted, so it runs with the gates stopped.
+ */
+public class TicketRollupDAO {
+
+    private static final Logger logger = LogManager.getLogger("TicketRollupDAO");
+
+    public static final int DEFAULT_CHUNK_SIZE = 50000;
+    private static final Granularity[] GRANULARITIES = Granularity.values();
+    // the order every chunk writes its rows in, so concurrent chunks lock shared rows in the same order
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.<RollupKey, Granularity>comparing(key -> key.granularity)
+            .thenComparing(key -> key.bucket).thenComparing(key -> key.parkingType)
+            .thenComparing(key -> key.discount);
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    private final int chunkSize;
+
+    public TicketRollupDAO() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    // ticket ids per chunk of a rebuild
+    public TicketRollupDAO(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    // binds the ticket's three buckets to a batch of ADD_TICKET_ROLLUP
+    public static void addClosedTicket(PreparedStatement addRollups, Ticket ticket) throws SQLException {
+        LocalDateTime outTime = LocalDateTime.ofInstant(ticket.getOutTime().toInstant(), ZoneId.systemDefault());
+        long parkedSeconds = (ticket.getOutTime().getTime() - ticket.getInTime().getTime()) / 1000;
+        for (Granularity granularity : GRANULARITIES) {
+            addRollup(addRollups, granularity, granularity.bucketOf(outTime), ticket.getParkingSpot().getParkingType(),
+                    ticket.isDiscount(), 1, ticket.getPrice(), parkedSeconds);
+        }
+    }
+
+    // the same three buckets, added to the batch of the unit of work
+    public static void addClosedTicket(UnitOfWork unitOfWork, Ticket ticket) {
+        LocalDateTime outTime = LocalDateTime.ofInstant(ticket.getOutTime().toInstant(), ZoneId.systemDefault());
+        long parkedSeconds = (ticket.getOutTime().getTime() - ticket.getInTime().getTime()) / 1000;
+        for (Granularity granularity : GRANULARITIES) {
+            unitOfWork.addBatch(DBConstants.ADD_TICKET_ROLLUP, false, granularity,
+                    Timestamp.valueOf(granularity.bucketOf(outTime)), ticket.getParkingSpot().getParkingType(),
+                    ticket.isDiscount(), 1L, ticket.getPrice(), parkedSeconds);
+        }
+    }
+
+    // the bucket holding the time, one rollup per parking type and rate that had tickets
+    public List<TicketRollup> getRollups(Granularity granularity, Date time) {
+        LocalDateTime bucket = granularity.bucketOf(LocalDateTime.ofInstant(time.toInstant(), ZoneId.systemDefault()));
+        return getRollups(granularity, Timestamp.valueOf(bucket), Timestamp.valueOf(granularity.next(bucket)));
+    }
+
+    // buckets starting in [from, to), oldest first
+    public List<TicketRollup> getRollups(Granularity granularity, Date from, Date to) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<TicketRollup> rollups = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_TICKET_ROLLUPS);
+            ps.setString(1, granularity.name());
+            ps.setTimestamp(2, new Timestamp(from.getTime()));
+            ps.setTimestamp(3, new Timestamp(to.getTime()));
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                // BUCKET, PARKING_TYPE, DISCOUNT, TICKETS, REVENUE, PARKED_SECONDS
+                rollups.add(new TicketRollup(new Date(rs.getTimestamp(1).getTime()), ParkingType.valueOf(rs.getString(2)),
+                        rs.getBoolean(3), rs.getLong(4), rs.getDouble(5), rs.getLong(6)));
+            }
+        } catch (Exception ex) {
+            logger.error("Error fetching the " + granularity + " rollups from " + from + " to " + to, ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+        return rollups;
+    }
+
+    // returns the number of closed tickets added up
+    public long rebuild(int threads) throws ClassNotFoundException, SQLException, InterruptedException {
+        long start = System.nanoTime();
+        List<Callable<Long>> chunks = new ArrayList<>();
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            Connection con = unitOfWork.getConnection();
+            PreparedStatement ps = null;
+            try {
+                // what a failed rebuild left
+                ps = con.prepareStatement(DBConstants.DELETE_TICKET_ROLLUP_REBUILD);
+                ps.executeUpdate();
+            } finally {
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            addChunks(con, DBConstants.GET_TICKET_ID_RANGE, DBConstants.GET_CLOSED_TICKETS_IN_ID_RANGE, chunks);
+            for (int month : readPartitions(con)) {
+                addChunks(con, String.format(DBConstants.GET_TICKET_HISTORY_ID_RANGE, month),
+                        String.format(DBConstants.GET_CLOSED_TICKET_HISTORY_IN_ID_RANGE, month), chunks);
+            }
+            unitOfWork.commit();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "rollup-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickets = 0;
+        try {
+            for (Future<Long> chunk : executor.invokeAll(chunks)) {
+                tickets += chunk.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Unable to rebuild the ticket rollups", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        replaceRollups();
+        logger.info("Ticket rollups rebuilt from " + tickets + " tickets in " + chunks.size() + " chunks, "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        return tickets;
+    }
+
+    private void replaceRollups() throws ClassNotFoundException, SQLException {
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            Connection con = unitOfWork.getConnection();
+            for (String sql : new String[] { DBConstants.DELETE_TICKET_ROLLUPS, DBConstants.COPY_TICKET_ROLLUP_REBUILD,
+                    DBConstants.DELETE_TICKET_ROLLUP_REBUILD }) {
+                PreparedStatement ps = null;
+                try {
+                    ps = con.prepareStatement(sql);
+                    ps.executeUpdate();
+                } finally {
+                    dataBaseConfig.closePreparedStatement(ps);
+                }
+            }
+            unitOfWork.commit();
+        }
+    }
+
+    private void addChunks(Connection con, String rangeQuery, String chunkQuery, List<Callable<Long>> chunks)
+            throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(rangeQuery);
+            rs = ps.executeQuery();
+            if (!rs.next() || rs.getObject(1) == null) {
+                return;
+            }
+            long maxId = rs.getLong(2);
+            for (long fromId = rs.getLong(1); fromId <= maxId; fromId += chunkSize) {
+                long chunkStart = fromId;
+                chunks.add(() -> rebuildChunk(chunkQuery, chunkStart, chunkStart + chunkSize));
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private List<Integer> readPartitions(Connection con) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<Integer> months = new ArrayList<>();
+        try {
+            ps = con.prepareStatement(DBConstants.GET_TICKET_HISTORY_PARTITIONS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                months.add(rs.getInt(1));
+            }
+            return months;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    // the chunk's tickets are added up in memory, then added to the table in one batch
+    private long rebuildChunk(String query, long fromId, long toId) throws ClassNotFoundException, SQLException {
+        Map<RollupKey, RollupTotals> totals = new TreeMap<>(KEY_ORDER);
+        long tickets = 0;
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            Connection con = unitOfWork.getConnection();
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            try {
+                ps = con.prepareStatement(query);
+                ps.setLong(1, fromId);
+                ps.setLong(2, toId);
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    // TYPE, DISCOUNT, PRICE, IN_TIME, OUT_TIME
+                    ParkingType parkingType = ParkingType.valueOf(rs.getString(1));
+                    boolean discount = rs.getBoolean(2);
+                    double price = rs.getDouble(3);
+                    Timestamp inTime = rs.getTimestamp(4);
+                    Timestamp outTime = rs.getTimestamp(5);
+                    long parkedSeconds = (outTime.getTime() - inTime.getTime()) / 1000;
+                    for (Granularity granularity : GRANULARITIES) {
+                        RollupTotals bucket = totals.computeIfAbsent(new RollupKey(granularity,
+                                granularity.bucketOf(outTime.toLocalDateTime()), parkingType, discount),
+                                key -> new RollupTotals());
+                        bucket.tickets++;
+                        bucket.revenue += price;
+                        bucket.parkedSeconds += parkedSeconds;
+                    }
+                    tickets++;
+                }
+            } finally {
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            if (totals.isEmpty()) {
+                return 0;
+            }
+            PreparedStatement addRollups = null;
+            try {
+                addRollups = con.prepareStatement(DBConstants.ADD_TICKET_ROLLUP_REBUILD);
+                for (Map.Entry<RollupKey, RollupTotals> entry : totals.entrySet()) {
+                    RollupKey key = entry.getKey();
+                    RollupTotals bucket = entry.getValue();
+                    addRollup(addRollups, key.granularity, key.bucket, key.parkingType, key.discount, bucket.tickets,
+                            bucket.revenue, bucket.parkedSeconds);
+                }
+                addRollups.executeBatch();
+            } finally {
+                dataBaseConfig.closePreparedStatement(addRollups);
+            }
+            unitOfWork.commit();
+        }
+        return tickets;
+    }
+
+    private static void addRollup(PreparedStatement addRollups, Granularity granularity, LocalDateTime bucket,
+            ParkingType parkingType, boolean discount, long tickets, double revenue, long parkedSeconds)
+            throws SQLException {
+        addRollups.setString(1, granularity.name());
+        addRollups.setTimestamp(2, Timestamp.valueOf(bucket));
+        addRollups.setString(3, parkingType.name());
+        addRollups.setBoolean(4, discount);
+        addRollups.setLong(5, tickets);
+        addRollups.setDouble(6, revenue);
+        addRollups.setLong(7, parkedSeconds);
+        addRollups.addBatch();
+    }
+
+    private static final class RollupKey {
+        private final Granularity granularity;
+        private final LocalDateTime bucket;
+        private final ParkingType parkingType;
+        private final boolean discount;
+
+        private RollupKey(Granularity granularity, LocalDateTime bucket, ParkingType parkingType, boolean discount) {
+            this.granularity = granularity;
+            this.bucket = bucket;
+            this.parkingType = parkingType;
+            this.discount = discount;
+        }
+    }
+
+    private static final class RollupTotals {
+        private long tickets;
+        private double revenue;
+        private long parkedSeconds;
+    }
+}
@@ -0,0 +1,19 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketWithVisits;
+
+import java.sql.SQLException;
+
+public interface TicketStore {
+
+    UnitOfWork beginUnitOfWork();
+
+    int getNbTicket(UnitOfWork unitOfWork, String vehicleRegNumber);
+
+    void saveTicket(UnitOfWork unitOfWork, Ticket ticket) throws ClassNotFoundException, SQLException;
+
+    TicketWithVisits getTicketWithVisits(UnitOfWork unitOfWork, String vehicleRegNumber) throws ClassNotFoundException, SQLException;
+
+    boolean closeTicket(UnitOfWork unitOfWork, Ticket ticket) throws ClassNotFoundException, SQLException;
+}
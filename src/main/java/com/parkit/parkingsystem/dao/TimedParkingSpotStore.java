@@ -0,0 +1,52 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.sql.SQLException;
+
+// Records the latency of every call into ParkingSpotStore.<method>, whatever the storage.
+public class TimedParkingSpotStore implements ParkingSpotStore {
+
+    private static final LatencyHistogram getNextAvailableSlot = Metrics.histogram("ParkingSpotStore.getNextAvailableSlot");
+    private static final LatencyHistogram claimNextAvailableSlot = Metrics.histogram("ParkingSpotStore.claimNextAvailableSlot");
+    private static final LatencyHistogram releaseParkingSpot = Metrics.histogram("ParkingSpotStore.releaseParkingSpot");
+
+    private final ParkingSpotStore parkingSpots;
+
+    public TimedParkingSpotStore(ParkingSpotStore parkingSpots) {
+        this.parkingSpots = parkingSpots;
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        long start = System.nanoTime();
+        try {
+            return parkingSpots.getNextAvailableSlot(parkingType);
+        } finally {
+            getNextAvailableSlot.recordSince(start);
+        }
+    }
+
+    @Override
+    public int claimNextAvailableSlot(UnitOfWork unitOfWork, ParkingType parkingType) throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        try {
+            return parkingSpots.claimNextAvailableSlot(unitOfWork, parkingType);
+        } finally {
+            claimNextAvailableSlot.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean releaseParkingSpot(UnitOfWork unitOfWork, ParkingSpot parkingSpot) throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        try {
+            return parkingSpots.releaseParkingSpot(unitOfWork, parkingSpot);
+        } finally {
+            releaseParkingSpot.recordSince(start);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketWithVisits;
+
+import java.sql.SQLException;
+
+// Records the latency of every call into TicketStore.<method>, whatever the storage.
+public class TimedTicketStore implements TicketStore {
+
+    private static final LatencyHistogram beginUnitOfWork = Metrics.histogram("TicketStore.beginUnitOfWork");
+    private static final LatencyHistogram getNbTicket = Metrics.histogram("TicketStore.getNbTicket");
+    private static final LatencyHistogram saveTicket = Metrics.histogram("TicketStore.saveTicket");
+    private static final LatencyHistogram getTicketWithVisits = Metrics.histogram("TicketStore.getTicketWithVisits");
+    private static final LatencyHistogram closeTicket = Metrics.histogram("TicketStore.closeTicket");
+
+    private final TicketStore tickets;
+
+    public TimedTicketStore(TicketStore tickets) {
+        this.tickets = tickets;
+    }
+
+    @Override
+    public UnitOfWork beginUnitOfWork() {
+        long start = System.nanoTime();
+        try {
+            return tickets.beginUnitOfWork();
+        } finally {
+            beginUnitOfWork.recordSince(start);
+        }
+    }
+
+    @Override
+    public int getNbTicket(UnitOfWork unitOfWork, String vehicleRegNumber) {
+        long start = System.nanoTime();
+        try {
+            return tickets.getNbTicket(unitOfWork, vehicleRegNumber);
+        } finally {
+            getNbTicket.recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveTicket(UnitOfWork unitOfWork, Ticket ticket) throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        try {
+            tickets.saveTicket(unitOfWork, ticket);
+        } finally {
+            saveTicket.recordSince(start);
+        }
+    }
+
+    @Override
+    public TicketWithVisits getTicketWithVisits(UnitOfWork unitOfWork, String vehicleRegNumber)
+            throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        try {
+            return tickets.getTicketWithVisits(unitOfWork, vehicleRegNumber);
+        } finally {
+            getTicketWithVisits.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean closeTicket(UnitOfWork unitOfWork, Ticket ticket) throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        try {
+            return tickets.closeTicket(unitOfWork, ticket);
+        } finally {
+            closeTicket.recordSince(start);
+        }
+    }
+}
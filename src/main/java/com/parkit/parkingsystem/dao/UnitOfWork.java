@@ -0,0 +1,218 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// One connection and one transaction shared by several DAO calls. Anything not
+// committed when the unit of work is closed is rolled back, and the in-memory
+// caches only see the changes through the afterCommit callbacks. A unit of work
+// without a DataBaseConfig only runs the callbacks, for the in-memory stores.
+// beforeCommit steps run first on commit; if one fails nothing is committed.
+// Statements added with addBatch are sent together in one round-trip by
+// executeBatch, or on commit when they are still pending.
+public class UnitOfWork implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("UnitOfWork");
+
+    public interface CommitStep {
+        void run() throws Exception;
+    }
+
+    private final DataBaseConfig dataBaseConfig;
+    private final List<CommitStep> beforeCommit = new ArrayList<>();
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private final List<Runnable> onRollback = new ArrayList<>();
+    private final Map<Object, Object> resources = new HashMap<>();
+    private final List<String> batch = new ArrayList<>();
+    // positions in batch of the statements that must update a row
+    private final List<Integer> mustUpdate = new ArrayList<>();
+    private Connection connection;
+    private boolean completed;
+
+    public UnitOfWork() {
+        this(null);
+    }
+
+    public UnitOfWork(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    public Connection getConnection() throws ClassNotFoundException, SQLException {
+        if (completed) {
+            throw new IllegalStateException("Unit of work is already completed");
+        }
+        if (dataBaseConfig == null) {
+            throw new IllegalStateException("Unit of work has no database");
+        }
+        if (connection == null) {
+            connection = dataBaseConfig.getConnection();
+            connection.setAutoCommit(false);
+        }
+        return connection;
+    }
+
+    // one instance per key for the whole unit of work, e.g. the writes a DAO batches for it
+    @SuppressWarnings("unchecked")
+    public <T> T getResource(Object key, Supplier<T> factory) {
+        return (T) resources.computeIfAbsent(key, k -> factory.get());
+    }
+
+    // The parameters are bound as SQL literals, so only numbers, booleans, timestamps and
+    // enum constants are accepted; when mustUpdate, executeBatch fails if it updates no row.
+    public void addBatch(String sql, boolean mustUpdate, Object... parameters) {
+        if (completed) {
+            throw new IllegalStateException("Unit of work is already completed");
+        }
+        StringBuilder statement = new StringBuilder(sql.length() + 16 * parameters.length);
+        int parameter = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c != '?') {
+                statement.append(c);
+            } else if (parameter < parameters.length) {
+                statement.append(literal(parameters[parameter++]));
+            } else {
+                throw new IllegalArgumentException("Missing parameter " + (parameter + 1) + " of " + sql);
+            }
+        }
+        if (parameter != parameters.length) {
+            throw new IllegalArgumentException(parameters.length + " parameters for " + parameter + " in " + sql);
+        }
+        if (mustUpdate) {
+            this.mustUpdate.add(batch.size());
+        }
+        batch.add(statement.toString());
+    }
+
+    // false when a statement that must update a row updated none; nothing is sent when the batch is empty
+    public boolean executeBatch() throws ClassNotFoundException, SQLException {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        int[] counts;
+        Statement statement = getConnection().createStatement();
+        try {
+            for (String sql : batch) {
+                statement.addBatch(sql);
+            }
+            counts = statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+        batch.clear();
+        boolean updated = true;
+        for (int position : mustUpdate) {
+            updated &= counts[position] != 0;
+        }
+        mustUpdate.clear();
+        return updated;
+    }
+
+    public void beforeCommit(CommitStep step) {
+        beforeCommit.add(step);
+    }
+
+    public void afterCommit(Runnable action) {
+        afterCommit.add(action);
+    }
+
+    public void onRollback(Runnable action) {
+        onRollback.add(action);
+    }
+
+    public void commit() throws SQLException {
+        if (completed) {
+            throw new IllegalStateException("Unit of work is already completed");
+        }
+        try {
+            if (!executeBatch()) {
+                throw new SQLException("A batched statement of the unit of work updated no row");
+            }
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("Unit of work could not be committed", e);
+        }
+        for (CommitStep step : beforeCommit) {
+            try {
+                step.run();
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException("Unit of work could not be committed", e);
+            }
+        }
+        if (connection != null) {
+            connection.commit();
+        }
+        completed = true;
+        run(afterCommit);
+    }
+
+    public void rollback() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                logger.error("Error while rolling back unit of work", e);
+            }
+        }
+        run(onRollback);
+    }
+
+    @Override
+    public void close() {
+        rollback();
+        if (connection != null) {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Error while restoring auto-commit", e);
+            }
+            dataBaseConfig.closeConnection(connection);
+            connection = null;
+        }
+    }
+
+    private static String literal(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            return value.toString();
+        }
+        if (value instanceof Double && Double.isFinite((Double) value)) {
+            return value.toString();
+        }
+        if (value instanceof Timestamp) {
+            return "timestamp '" + value + "'";
+        }
+        if (value instanceof Enum) {
+            return "'" + ((Enum<?>) value).name() + "'";
+        }
+        throw new IllegalArgumentException("Cannot batch the parameter " + value);
+    }
+
+    private void run(List<Runnable> actions) {
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.error("Error in unit of work callback", e);
+            }
+        }
+    }
+}
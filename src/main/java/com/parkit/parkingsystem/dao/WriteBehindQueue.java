@@ -0,0 +1,362 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcTracer;
+import com.parkit.parkingsystem.config.TracedOperation;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batches the ticket and spot writes of many gates into one transaction.
+ *
+ * <p>The DAOs stage their writes in the unit of work instead of running them, and
+ * its commit hands them over here and waits. A single flusher thread runs the
+ * writes of every waiting unit of work as JDBC batches and commits once, then
+ * releases all of them: the commit returns only when the rows are durable, but
+ * the DB pays one commit for the whole batch. A batch is flushed once it holds
+ * {@code batchSize} writes or its oldest write has waited {@code maxLatencyMillis},
+ * and straight away when the queue is full; gates block on a full queue.
+ *
+ * <p>The writes of one unit of work always go in the same transaction. If a batch
+ * fails, its units of work are retried one by one, so one bad row only fails its
+ * own gate.
+ *
+ * <p>Flushes are exported through {@link Metrics} as the WriteBehindQueue.flush
+ * histogram and counters per trigger, summed over every queue of the process;
+ * {@link #getStatistics} covers this queue only. Writes still queued when the
+ * flusher stops fail, and a gate gives up waiting after
+ * {@value #DURABLE_TIMEOUT_SECONDS}s.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("WriteBehindQueue");
+
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long DURABLE_TIMEOUT_SECONDS = 30;
+
+    private static final LatencyHistogram flushLatency = Metrics.histogram("WriteBehindQueue.flush");
+    private static final Counter writeCounter = Metrics.counter("WriteBehindQueue.writes");
+    private static final Counter sizeFlushCounter = Metrics.counter("WriteBehindQueue.flush.size");
+    private static final Counter timeFlushCounter = Metrics.counter("WriteBehindQueue.flush.time");
+    private static final Counter backpressureFlushCounter = Metrics.counter("WriteBehindQueue.flush.backpressure");
+    private static final Counter failedFlushCounter = Metrics.counter("WriteBehindQueue.flush.failed");
+
+    private final DataBaseConfig dataBaseConfig;
+    private final int batchSize;
+    private final long maxLatencyNanos;
+    private final BlockingQueue<PendingWrites> queue;
+    private final Thread flusher;
+    private volatile boolean closed;
+    // set by the flusher before it fails what is left in the queue
+    private volatile boolean stopped;
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong sizeFlushes = new AtomicLong();
+    private final AtomicLong timeFlushes = new AtomicLong();
+    private final AtomicLong backpressureFlushes = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    public WriteBehindQueue(DataBaseConfig dataBaseConfig, int batchSize, long maxLatencyMillis) {
+        if (batchSize < 1 || maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("Invalid write-behind batch size or latency");
+        }
+        this.dataBaseConfig = dataBaseConfig;
+        this.batchSize = batchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.queue = new ArrayBlockingQueue<>(batchSize * 4);
+        this.flusher = new Thread(this::run, "write-behind-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public static Write insertTicket(Ticket ticket) {
+        return new Write(Write.Kind.INSERT_TICKET, ticket, 0, false);
+    }
+
+    public static Write closeTicket(Ticket ticket) {
+        return new Write(Write.Kind.CLOSE_TICKET, ticket, 0, false);
+    }
+
+    public static Write updateParkingSpot(int parkingNumber, boolean available) {
+        return new Write(Write.Kind.UPDATE_PARKING_SPOT, null, parkingNumber, available);
+    }
+
+    // the write runs when the unit of work commits, with the other writes staged in it
+    public void stage(UnitOfWork unitOfWork, Write write) {
+        List<Write> writes = unitOfWork.getResource(this, () -> {
+            List<Write> staged = new ArrayList<>();
+            unitOfWork.beforeCommit(() -> await(submit(staged)));
+            return staged;
+        });
+        writes.add(write);
+    }
+
+    // completes once the writes are committed
+    public CompletableFuture<Void> submit(List<Write> writes) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Write-behind queue is closed");
+        }
+        PendingWrites pending = new PendingWrites(writes);
+        queue.put(pending);
+        // the flusher may have stopped between the check and the put
+        if (stopped) {
+            failQueued(new IllegalStateException("Write-behind queue is closed"));
+        }
+        return pending.durable;
+    }
+
+    public WriteBehindStatistics getStatistics() {
+        return new WriteBehindStatistics(queue.size(), flushCount.get(), writeCount.get(), sizeFlushes.get(),
+                timeFlushes.get(), backpressureFlushes.get(), failedFlushes.get(), totalFlushNanos.get(),
+                maxFlushNanos.get());
+    }
+
+    // flushes what is queued, then stops
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Write-behind queue closed: " + getStatistics());
+    }
+
+    private static void await(CompletableFuture<Void> durable) throws SQLException, InterruptedException {
+        try {
+            durable.get(DURABLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // the flush may still commit the writes later
+            throw new SQLException("Write-behind flush not done after " + DURABLE_TIMEOUT_SECONDS + "s", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Write-behind flush failed", e.getCause());
+        }
+    }
+
+    private void run() {
+        List<PendingWrites> batch = new ArrayList<>();
+        Exception stop = new IllegalStateException("Write-behind queue is closed");
+        try {
+            while (true) {
+                PendingWrites first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                int writes = first.writes.size();
+                AtomicLong trigger = timeFlushes;
+                long deadline = first.queuedAt + maxLatencyNanos;
+                while (writes < batchSize) {
+                    if (queue.remainingCapacity() == 0) {
+                        trigger = backpressureFlushes;
+                    }
+                    long wait = trigger == backpressureFlushes || closed ? 0 : deadline - System.nanoTime();
+                    PendingWrites next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    writes += next.writes.size();
+                }
+                if (writes >= batchSize) {
+                    trigger = sizeFlushes;
+                }
+                countTrigger(trigger);
+                flush(batch, writes);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            stop = e;
+            for (PendingWrites pending : batch) {
+                pending.durable.completeExceptionally(e);
+            }
+        } finally {
+            stopped = true;
+            failQueued(stop);
+        }
+    }
+
+    private void countTrigger(AtomicLong trigger) {
+        trigger.incrementAndGet();
+        if (trigger == sizeFlushes) {
+            sizeFlushCounter.increment();
+        } else if (trigger == timeFlushes) {
+            timeFlushCounter.increment();
+        } else {
+            backpressureFlushCounter.increment();
+        }
+    }
+
+    private void failQueued(Exception cause) {
+        for (PendingWrites pending = queue.poll(); pending != null; pending = queue.poll()) {
+            pending.durable.completeExceptionally(cause);
+        }
+    }
+
+    private void flush(List<PendingWrites> batch, int writes) {
+        long start = System.nanoTime();
+        try {
+            write(batch);
+            for (PendingWrites pending : batch) {
+                pending.durable.complete(null);
+            }
+        } catch (Exception e) {
+            failedFlushes.incrementAndGet();
+            failedFlushCounter.increment();
+            if (batch.size() == 1) {
+                logger.error("Write-behind flush failed", e);
+                batch.get(0).durable.completeExceptionally(e);
+            } else {
+                logger.error("Write-behind flush of " + batch.size() + " units of work failed, retrying them one by one", e);
+                for (PendingWrites pending : batch) {
+                    flush(List.of(pending), pending.writes.size());
+                }
+                return;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        flushCount.incrementAndGet();
+        writeCount.addAndGet(writes);
+        totalFlushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        flushLatency.record(elapsed);
+        writeCounter.add(writes);
+    }
+
+    // tickets are inserted before they are closed, spots change in staging order
+    private void write(List<PendingWrites> batch) throws ClassNotFoundException, SQLException {
+        TracedOperation traced = JdbcTracer.begin("WriteBehindQueue.flush");
+        try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+            Connection con = unitOfWork.getConnection();
+            PreparedStatement insertTickets = null;
+            PreparedStatement closeTickets = null;
+            PreparedStatement updateSpots = null;
+            PreparedStatement addRollups = null;
+            ResultSet keys = null;
+            try {
+                insertTickets = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+                closeTickets = con.prepareStatement(DBConstants.CLOSE_TICKET);
+                updateSpots = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+                addRollups = con.prepareStatement(DBConstants.ADD_TICKET_ROLLUP);
+                List<Ticket> inserted = new ArrayList<>();
+                for (PendingWrites pending : batch) {
+                    for (Write write : pending.writes) {
+                        switch (write.kind) {
+                        case INSERT_TICKET:
+                            Ticket ticket = write.ticket;
+                            insertTickets.setInt(1, ticket.getParkingSpot().getId());
+                            insertTickets.setString(2, ticket.getVehicleRegNumber());
+                            insertTickets.setDouble(3, ticket.getPrice());
+                            insertTickets.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                            insertTickets.setTimestamp(5,
+                                    ticket.getOutTime() == null ? null : new Timestamp(ticket.getOutTime().getTime()));
+                            insertTickets.addBatch();
+                            inserted.add(ticket);
+                            break;
+                        case CLOSE_TICKET:
+                            closeTickets.setDouble(1, write.ticket.getPrice());
+                            closeTickets.setTimestamp(2, new Timestamp(write.ticket.getOutTime().getTime()));
+                            closeTickets.setBoolean(3, write.ticket.isDiscount());
+                            closeTickets.setInt(4, write.ticket.getId());
+                            closeTickets.addBatch();
+                            TicketRollupDAO.addClosedTicket(addRollups, write.ticket);
+                            break;
+                        default:
+                            updateSpots.setBoolean(1, write.available);
+                            updateSpots.setInt(2, write.parkingNumber);
+                            updateSpots.addBatch();
+                        }
+                    }
+                }
+                if (!inserted.isEmpty()) {
+                    insertTickets.executeBatch();
+                    keys = insertTickets.getGeneratedKeys();
+                    for (Ticket ticket : inserted) {
+                        if (!keys.next()) {
+                            throw new SQLException("Missing generated id for the ticket of " + ticket.getVehicleRegNumber());
+                        }
+                        ticket.setId(keys.getInt(1));
+                    }
+                }
+                for (int updated : closeTickets.executeBatch()) {
+                    if (updated == 0) {
+                        logger.error("A ticket closed by write-behind was already closed in the DB");
+                    }
+                }
+                updateSpots.executeBatch();
+                addRollups.executeBatch();
+            } finally {
+                dataBaseConfig.closeResultSet(keys);
+                dataBaseConfig.closePreparedStatement(addRollups);
+                dataBaseConfig.closePreparedStatement(updateSpots);
+                dataBaseConfig.closePreparedStatement(closeTickets);
+                dataBaseConfig.closePreparedStatement(insertTickets);
+            }
+            unitOfWork.commit();
+        } finally {
+            traced.close();
+        }
+    }
+
+    public static final class Write {
+
+        private enum Kind {
+            INSERT_TICKET,
+            CLOSE_TICKET,
+            UPDATE_PARKING_SPOT
+        }
+
+        private final Kind kind;
+        private final Ticket ticket;
+        private final int parkingNumber;
+        private final boolean available;
+
+        private Write(Kind kind, Ticket ticket, int parkingNumber, boolean available) {
+            this.kind = kind;
+            this.ticket = ticket;
+            this.parkingNumber = parkingNumber;
+            this.available = available;
+        }
+    }
+
+    private static final class PendingWrites {
+        private final List<Write> writes;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private PendingWrites(List<Write> writes) {
+            this.writes = writes;
+        }
+    }
+}
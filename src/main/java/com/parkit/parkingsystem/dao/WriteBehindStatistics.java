@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem.dao;
+
+public final class WriteBehindStatistics {
+
+    private final int queued;
+    private final long flushCount;
+    private final long writeCount;
+    private final long sizeFlushes;
+    private final long timeFlushes;
+    private final long backpressureFlushes;
+    private final long failedFlushes;
+    private final long totalFlushNanos;
+    private final long maxFlushNanos;
+
+    public WriteBehindStatistics(int queued, long flushCount, long writeCount, long sizeFlushes, long timeFlushes,
+            long backpressureFlushes, long failedFlushes, long totalFlushNanos, long maxFlushNanos) {
+        this.queued = queued;
+        this.flushCount = flushCount;
+        this.writeCount = writeCount;
+        this.sizeFlushes = sizeFlushes;
+        this.timeFlushes = timeFlushes;
+        this.backpressureFlushes = backpressureFlushes;
+        this.failedFlushes = failedFlushes;
+        this.totalFlushNanos = totalFlushNanos;
+        this.maxFlushNanos = maxFlushNanos;
+    }
+
+    // units of work waiting for a flush
+    public int getQueued() {
+        return queued;
+    }
+
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    // flushes started because the batch was full
+    public long getSizeFlushes() {
+        return sizeFlushes;
+    }
+
+    // flushes started because the oldest write reached the max latency
+    public long getTimeFlushes() {
+        return timeFlushes;
+    }
+
+    // flushes started early because the queue was full
+    public long getBackpressureFlushes() {
+        return backpressureFlushes;
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes;
+    }
+
+    public double getAverageBatchSize() {
+        return flushCount == 0 ? 0 : writeCount / (double) flushCount;
+    }
+
+    public double getAverageFlushMillis() {
+        return flushCount == 0 ? 0 : (totalFlushNanos / (double) flushCount) / 1_000_000;
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "queued=" + queued + ", flushes=" + flushCount + ", writes=" + writeCount + ", avgBatch="
+                + getAverageBatchSize() + ", bySize=" + sizeFlushes + ", byTime=" + timeFlushes + ", byBackpressure="
+                + backpressureFlushes + ", failed=" + failedFlushes + ", avgFlushMs=" + getAverageFlushMillis()
+                + ", maxFlushMs=" + (maxFlushNanos / 1_000_000.0);
+    }
+}
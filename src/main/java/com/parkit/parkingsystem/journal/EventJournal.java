@@ -0,0 +1,479 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of gate events, kept in memory-mapped segment files named
+ * journal-&lt;first sequence&gt;.seg. Every record is
+ * <pre>
+ * int length | int crc32 of the body | body: long sequence, byte type and discount flag, int ticket id,
+ *   int parking number, byte parking type, long in time, long out time, double price,
+ *   short plate length, plate bytes
+ * </pre>
+ * and a zero length ends the records of a segment. A segment is rolled when the
+ * next record does not fit.
+ *
+ * <p>Appends only write to the mapped pages. A single flusher thread forces them
+ * to disk and wakes up every appender written before the force started, so gates
+ * appending together share one fsync (group commit). On open, a torn or corrupt
+ * tail left by a crash is dropped: the journal ends at the last record whose CRC
+ * and sequence check out.
+ */
+public class EventJournal implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("EventJournal");
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_SIZE = 8;
+    // sequence, type, ticket id, parking number, parking type, in time, out time, price, plate length
+    private static final int FIXED_BODY_SIZE = 8 + 1 + 4 + 4 + 1 + 8 + 8 + 8 + 2;
+    private static final int MAX_PLATE_SIZE = 1024;
+    // high bit of the type byte, clear in the records written before it existed
+    private static final int DISCOUNT_FLAG = 0x80;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    // appends are serialized, which keeps sequences and file positions in the same order
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final CRC32 appendCrc = new CRC32();
+    private volatile Segment current;
+    private long lastSequence;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition written = flushLock.newCondition();
+    private final Condition flushed = flushLock.newCondition();
+    private long writtenSequence;
+    private volatile long durableSequence;
+    private long flushCount;
+    private IOException flushFailure;
+    private boolean closed;
+
+    private final Thread flusher;
+
+    public EventJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public EventJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE + FIXED_BODY_SIZE + MAX_PLATE_SIZE) {
+            throw new IllegalArgumentException("Journal segment size is too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        recover();
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // returns the sequence of the event; it is not durable before awaitDurable returns
+    public long append(JournalEvent event) throws IOException {
+        byte[] plate = event.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        if (plate.length > MAX_PLATE_SIZE) {
+            throw new IllegalArgumentException("Plate is too long for the journal: " + event.getVehicleRegNumber());
+        }
+        int length = FIXED_BODY_SIZE + plate.length;
+        long sequence;
+        appendLock.lock();
+        try {
+            if (isClosed()) {
+                throw new IOException("Journal is closed");
+            }
+            Segment segment = current;
+            if (segment.end + HEADER_SIZE + length > segmentSize) {
+                segment = roll();
+            }
+            sequence = lastSequence + 1;
+            MappedByteBuffer buffer = segment.buffer;
+            int position = segment.end;
+            int body = position + HEADER_SIZE;
+            buffer.putLong(body, sequence);
+            buffer.put(body + 8, (byte) (event.getType().ordinal() | (event.isDiscount() ? DISCOUNT_FLAG : 0)));
+            buffer.putInt(body + 9, event.getTicketId());
+            buffer.putInt(body + 13, event.getParkingNumber());
+            buffer.put(body + 17, (byte) event.getParkingType().ordinal());
+            buffer.putLong(body + 18, event.getInTime());
+            buffer.putLong(body + 26, event.getOutTime());
+            buffer.putDouble(body + 34, event.getPrice());
+            buffer.putShort(body + 42, (short) plate.length);
+            buffer.put(body + FIXED_BODY_SIZE, plate);
+            appendCrc.reset();
+            appendCrc.update(buffer.slice(body, length));
+            buffer.putInt(position + 4, (int) appendCrc.getValue());
+            // the length goes last, a record is never visible before its body
+            buffer.putInt(position, length);
+            segment.end = body + length;
+            lastSequence = sequence;
+        } finally {
+            appendLock.unlock();
+        }
+        flushLock.lock();
+        try {
+            writtenSequence = Math.max(writtenSequence, sequence);
+            written.signal();
+        } finally {
+            flushLock.unlock();
+        }
+        return sequence;
+    }
+
+    public long appendAndSync(JournalEvent event) throws IOException {
+        long sequence = append(event);
+        awaitDurable(sequence);
+        return sequence;
+    }
+
+    public void awaitDurable(long sequence) throws IOException {
+        awaitDurable(sequence, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // false when the timeout elapsed first
+    public boolean awaitDurable(long sequence, long timeout, TimeUnit unit) throws IOException {
+        long remaining = unit.toNanos(timeout);
+        flushLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (flushFailure != null) {
+                    throw new IOException("Journal flush failed", flushFailure);
+                }
+                if (closed && writtenSequence < sequence) {
+                    throw new IOException("Journal is closed");
+                }
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = flushed.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the journal");
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // events after the given sequence, as far as they are durable
+    public Reader reader(long afterSequence) {
+        return new Reader(afterSequence);
+    }
+
+    public long getLastSequence() {
+        appendLock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    // fsyncs so far; fewer than appends when gates share them
+    public long getFlushCount() {
+        flushLock.lock();
+        try {
+            return flushCount;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    // deletes the segments holding only events up to the sequence, never the one being written
+    public int truncateBefore(long sequence) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(1).firstSequence <= sequence + 1) {
+            Segment segment = segments.remove(0);
+            Files.deleteIfExists(segment.path);
+            deleted++;
+        }
+        if (deleted > 0) {
+            logger.info("Deleted " + deleted + " journal segment(s) up to sequence " + sequence);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() {
+        flushLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            written.signal();
+        } finally {
+            flushLock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Journal closed at sequence " + durableSequence);
+    }
+
+    private boolean isClosed() {
+        flushLock.lock();
+        try {
+            return closed;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            flushLock.lock();
+            try {
+                while (writtenSequence == durableSequence && !closed) {
+                    written.awaitUninterruptibly();
+                }
+                if (writtenSequence == durableSequence) {
+                    return;
+                }
+                target = writtenSequence;
+            } finally {
+                flushLock.unlock();
+            }
+            // older segments were forced when they were rolled
+            RuntimeException failure = null;
+            try {
+                current.buffer.force();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            flushLock.lock();
+            try {
+                if (failure != null) {
+                    logger.error("Unable to flush the journal, appends will fail", failure);
+                    flushFailure = new IOException(failure);
+                    closed = true;
+                    flushed.signalAll();
+                    return;
+                }
+                durableSequence = target;
+                flushCount++;
+                flushed.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    // appendLock held
+    private Segment roll() throws IOException {
+        current.buffer.force();
+        Segment next = Segment.create(directory.resolve(segmentName(lastSequence + 1)), lastSequence + 1, segmentSize);
+        segments.add(next);
+        current = next;
+        return next;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparingLong(EventJournal::firstSequenceOf));
+        long sequence = 0;
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long firstSequence = firstSequenceOf(file);
+            if (i > 0 && firstSequence != sequence + 1) {
+                throw new IOException("Journal segment " + file + " does not follow sequence " + sequence);
+            }
+            Segment segment = Segment.open(file, firstSequence, segmentSize);
+            long expected = firstSequence;
+            CRC32 crc = new CRC32();
+            while (segment.end + HEADER_SIZE <= segmentSize) {
+                int length = segment.buffer.getInt(segment.end);
+                if (length == 0) {
+                    break;
+                }
+                if (!isValidRecord(segment.buffer, segment.end, length, expected, crc)) {
+                    if (i < files.size() - 1) {
+                        throw new IOException("Journal segment " + file + " is corrupt at position " + segment.end);
+                    }
+                    logger.warn("Dropping the torn tail of journal segment " + file + " after sequence " + (expected - 1));
+                    for (int p = segment.end; p < segmentSize; p++) {
+                        segment.buffer.put(p, (byte) 0);
+                    }
+                    segment.buffer.force();
+                    break;
+                }
+                segment.end += HEADER_SIZE + length;
+                expected++;
+            }
+            sequence = expected - 1;
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.create(directory.resolve(segmentName(1)), 1, segmentSize));
+        }
+        current = segments.get(segments.size() - 1);
+        lastSequence = sequence;
+        writtenSequence = sequence;
+        durableSequence = sequence;
+        logger.info("Journal opened in " + directory + " with " + segments.size() + " segment(s), last sequence " + sequence);
+    }
+
+    private boolean isValidRecord(MappedByteBuffer buffer, int position, int length, long expectedSequence, CRC32 crc) {
+        if (length < FIXED_BODY_SIZE || position + HEADER_SIZE + length > segmentSize) {
+            return false;
+        }
+        int body = position + HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.slice(body, length));
+        return (int) crc.getValue() == buffer.getInt(position + 4) && buffer.getLong(body) == expectedSequence
+                && FIXED_BODY_SIZE + buffer.getShort(body + 42) == length;
+    }
+
+    private static JournalEvent decode(MappedByteBuffer buffer, int position) {
+        int body = position + HEADER_SIZE;
+        byte[] plate = new byte[buffer.getShort(body + 42)];
+        buffer.get(body + FIXED_BODY_SIZE, plate);
+        int type = buffer.get(body + 8) & 0xff;
+        return new JournalEvent(buffer.getLong(body), JournalEvent.Type.values()[type & ~DISCOUNT_FLAG],
+                buffer.getInt(body + 9), new String(plate, StandardCharsets.UTF_8), buffer.getInt(body + 13),
+                ParkingType.values()[buffer.get(body + 17)], buffer.getLong(body + 18), buffer.getLong(body + 26),
+                buffer.getDouble(body + 34), (type & DISCOUNT_FLAG) != 0);
+    }
+
+    private static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    private static long firstSequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Reads the journal in sequence order, one thread at a time. Stops at the
+     * last durable event; call {@link #next()} again later for the newer ones.
+     */
+    public final class Reader {
+
+        private final CRC32 crc = new CRC32();
+        private Segment segment;
+        private int position;
+        private long nextSequence;
+
+        private Reader(long afterSequence) {
+            this.nextSequence = afterSequence + 1;
+        }
+
+        // null when no durable event is left for now
+        public JournalEvent next() throws IOException {
+            if (nextSequence > durableSequence) {
+                return null;
+            }
+            if (segment == null || position + HEADER_SIZE > segmentSize || segment.buffer.getInt(position) == 0) {
+                seek();
+            }
+            int length = segment.buffer.getInt(position);
+            if (!isValidRecord(segment.buffer, position, length, nextSequence, crc)) {
+                throw new IOException("Journal record " + nextSequence + " is corrupt in " + segment.path);
+            }
+            JournalEvent event = decode(segment.buffer, position);
+            position += HEADER_SIZE + length;
+            nextSequence++;
+            return event;
+        }
+
+        // the segment holding nextSequence, scanned up to it
+        private void seek() throws IOException {
+            Segment found = null;
+            for (Segment candidate : segments) {
+                if (candidate.firstSequence <= nextSequence) {
+                    found = candidate;
+                }
+            }
+            if (found == null) {
+                throw new IOException("Journal event " + nextSequence + " was already truncated");
+            }
+            segment = found;
+            position = 0;
+            for (long sequence = found.firstSequence; sequence < nextSequence; sequence++) {
+                int length = found.buffer.getInt(position);
+                if (length == 0) {
+                    throw new IOException("Journal event " + nextSequence + " is missing from " + found.path);
+                }
+                position += HEADER_SIZE + length;
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long firstSequence;
+        private final MappedByteBuffer buffer;
+        // write position, appendLock held
+        private int end;
+
+        private Segment(Path path, long firstSequence, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.buffer = buffer;
+        }
+
+        private static Segment create(Path path, long firstSequence, int size) throws IOException {
+            return map(path, firstSequence, size, StandardOpenOption.CREATE_NEW);
+        }
+
+        private static Segment open(Path path, long firstSequence, int size) throws IOException {
+            if (Files.size(path) != size) {
+                throw new IOException("Journal segment " + path + " is " + Files.size(path) + " bytes, expected " + size);
+            }
+            return map(path, firstSequence, size, StandardOpenOption.READ);
+        }
+
+        // the mapping outlives the channel
+        private static Segment map(Path path, long firstSequence, int size, StandardOpenOption option) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, option, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (option == StandardOpenOption.CREATE_NEW) {
+                    // the new file is sized and zeroed by the mapping; make its entry durable
+                    channel.force(true);
+                }
+                return new Segment(path, firstSequence, buffer);
+            }
+        }
+    }
+}
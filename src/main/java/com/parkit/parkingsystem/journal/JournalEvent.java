@@ -0,0 +1,123 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Date;
+
+// A vehicle entry or exit as written to the journal. An ENTER opens the ticket
+// and takes its spot, an EXIT closes the ticket and frees the spot.
+public final class JournalEvent {
+
+    public enum Type {
+        ENTER,
+        EXIT
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final int ticketId;
+    private final String vehicleRegNumber;
+    private final int parkingNumber;
+    private final ParkingType parkingType;
+    private final long inTime;
+    private final long outTime;
+    private final double price;
+    private final boolean discount;
+
+    public JournalEvent(long sequence, Type type, int ticketId, String vehicleRegNumber, int parkingNumber,
+            ParkingType parkingType, long inTime, long outTime, double price) {
+        this(sequence, type, ticketId, vehicleRegNumber, parkingNumber, parkingType, inTime, outTime, price, false);
+    }
+
+    public JournalEvent(long sequence, Type type, int ticketId, String vehicleRegNumber, int parkingNumber,
+            ParkingType parkingType, long inTime, long outTime, double price, boolean discount) {
+        this.sequence = sequence;
+        this.type = type;
+        this.ticketId = ticketId;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingNumber = parkingNumber;
+        this.parkingType = parkingType;
+        this.inTime = inTime;
+        this.outTime = outTime;
+        this.price = price;
+        this.discount = discount;
+    }
+
+    // the journal gives the event its sequence when appending it
+    public static JournalEvent entered(Ticket ticket) {
+        return of(Type.ENTER, ticket);
+    }
+
+    public static JournalEvent exited(Ticket ticket) {
+        return of(Type.EXIT, ticket);
+    }
+
+    private static JournalEvent of(Type type, Ticket ticket) {
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        return new JournalEvent(0, type, ticket.getId(), ticket.getVehicleRegNumber(), parkingSpot.getId(),
+                parkingSpot.getParkingType(), ticket.getInTime().getTime(),
+                ticket.getOutTime() == null ? 0 : ticket.getOutTime().getTime(), ticket.getPrice(), ticket.isDiscount());
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getTicketId() {
+        return ticketId;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public long getInTime() {
+        return inTime;
+    }
+
+    // 0 for an ENTER
+    public long getOutTime() {
+        return outTime;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    // the EXIT was priced at the returning vehicle rate
+    public boolean isDiscount() {
+        return discount;
+    }
+
+    public Ticket toTicket() {
+        Ticket ticket = new Ticket();
+        ticket.setId(ticketId);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, type == Type.EXIT));
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(type == Type.EXIT ? new Date(outTime) : null);
+        ticket.setPrice(price);
+        ticket.setDiscount(discount);
+        return ticket;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEvent[" + sequence + " " + type + " ticket " + ticketId + ", " + vehicleRegNumber + ", spot "
+                + parkingNumber + "]";
+    }
+}
@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Keeps its own copy of the parking state by reading the journal, so a snapshot
+// is an exact cut at one sequence without pausing the gates. Journal segments are
+// only deleted once both the latest snapshot and the DB have moved past them.
+public class JournalSnapshotter implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("JournalSnapshotter");
+
+    private final EventJournal journal;
+    private final SnapshotStore snapshotStore;
+    private final ParkingState state;
+    private final EventJournal.Reader reader;
+    // last sequence applied to the DB, journal segments past it are kept
+    private final LongSupplier appliedSequence;
+    private final long intervalMillis;
+    private long snapshotSequence;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Thread thread;
+
+    public JournalSnapshotter(EventJournal journal, SnapshotStore snapshotStore, ParkingState state,
+            long snapshotSequence, LongSupplier appliedSequence, long interval, TimeUnit unit) {
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
+        this.state = state;
+        this.reader = journal.reader(state.getSequence());
+        this.snapshotSequence = snapshotSequence;
+        this.appliedSequence = appliedSequence;
+        this.intervalMillis = unit.toMillis(interval);
+        this.thread = new Thread(this::run, "journal-snapshotter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // applies the new events and writes a snapshot if there were any
+    public synchronized long snapshot() throws IOException {
+        JournalEvent event;
+        while ((event = reader.next()) != null) {
+            state.apply(event);
+        }
+        if (state.getSequence() > snapshotSequence) {
+            snapshotStore.write(state);
+            snapshotSequence = state.getSequence();
+        }
+        long applied = appliedSequence.getAsLong();
+        if (applied > 0) {
+            journal.truncateBefore(Math.min(snapshotSequence, applied));
+        }
+        return snapshotSequence;
+    }
+
+    public synchronized long getSnapshotSequence() {
+        return snapshotSequence;
+    }
+
+    // writes a last snapshot
+    @Override
+    public void close() {
+        stopped.countDown();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            snapshot();
+        } catch (IOException e) {
+            logger.error("Unable to write the shutdown snapshot", e);
+        }
+    }
+
+    private void run() {
+        try {
+            while (!stopped.await(intervalMillis, TimeUnit.MILLISECONDS)) {
+                try {
+                    snapshot();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Unable to write a snapshot, retrying at the next interval", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The whole live state of the lot as of one journal sequence: spot availability,
+// open tickets by plate, visits by plate and the last ticket id. Journal events
+// are applied to it in sequence order, by a single thread.
+public class ParkingState {
+
+    private final Map<Integer, ParkingSpot> parkingSpots = new LinkedHashMap<>();
+    private final Map<String, Ticket> openTickets = new HashMap<>();
+    private final Map<String, Integer> visits = new HashMap<>();
+    private long sequence;
+    private int lastTicketId;
+
+    public ParkingState(long sequence, int lastTicketId) {
+        this.sequence = sequence;
+        this.lastTicketId = lastTicketId;
+    }
+
+    public void putParkingSpot(ParkingSpot parkingSpot) {
+        parkingSpots.put(parkingSpot.getId(), parkingSpot);
+    }
+
+    public void putOpenTicket(Ticket ticket) {
+        openTickets.put(ticket.getVehicleRegNumber(), ticket);
+    }
+
+    public void putVisits(String vehicleRegNumber, int count) {
+        visits.put(vehicleRegNumber, count);
+    }
+
+    public void apply(JournalEvent event) {
+        if (event.getSequence() != sequence + 1) {
+            throw new IllegalStateException("Journal event " + event.getSequence() + " applied after " + sequence);
+        }
+        ParkingSpot parkingSpot = parkingSpots.get(event.getParkingNumber());
+        if (event.getType() == JournalEvent.Type.ENTER) {
+            openTickets.put(event.getVehicleRegNumber(), event.toTicket());
+            visits.merge(event.getVehicleRegNumber(), 1, Integer::sum);
+            lastTicketId = Math.max(lastTicketId, event.getTicketId());
+            if (parkingSpot != null) {
+                parkingSpot.setAvailable(false);
+            }
+        } else {
+            Ticket openTicket = openTickets.get(event.getVehicleRegNumber());
+            if (openTicket != null && openTicket.getId() == event.getTicketId()) {
+                openTickets.remove(event.getVehicleRegNumber());
+            }
+            if (parkingSpot != null) {
+                parkingSpot.setAvailable(true);
+            }
+        }
+        sequence = event.getSequence();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getLastTicketId() {
+        return lastTicketId;
+    }
+
+    // copies, the state keeps changing as events are applied
+    public List<ParkingSpot> getParkingSpots() {
+        List<ParkingSpot> copies = new ArrayList<>(parkingSpots.size());
+        for (ParkingSpot parkingSpot : parkingSpots.values()) {
+            copies.add(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        }
+        return copies;
+    }
+
+    public Map<String, Integer> getVisits() {
+        return new HashMap<>(visits);
+    }
+
+    public Collection<Ticket> getOpenTickets() {
+        return new ArrayList<>(openTickets.values());
+    }
+
+    public int getOpenTicketCount() {
+        return openTickets.size();
+    }
+
+    // for the snapshot writer, without copying
+    Collection<ParkingSpot> parkingSpots() {
+        return parkingSpots.values();
+    }
+
+    Collection<Ticket> openTickets() {
+        return openTickets.values();
+    }
+
+    Map<String, Integer> visits() {
+        return visits;
+    }
+}
@@ -0,0 +1,198 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshots of a {@link ParkingState}, named snapshot-&lt;sequence&gt;.snap.
+ * A snapshot is a fixed header
+ * <pre>
+ * int magic | short format version | long journal sequence | int last ticket id | long body length | int crc32 of the body
+ * </pre>
+ * followed by the spots, the open tickets and the visits per plate. It is written
+ * to a temporary file, fsynced and renamed, so a crash never leaves a partial
+ * snapshot under a snapshot name. The newest snapshots are kept; loading falls
+ * back to an older one when the newest does not check out.
+ */
+public class SnapshotStore {
+
+    private static final Logger logger = LogManager.getLogger("SnapshotStore");
+
+    private static final int MAGIC = 0x504b534e;
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4 + 8 + 4;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    public Path write(ParkingState state) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, state.getSequence(), SNAPSHOT_SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), crc), 64 * 1024));
+            writeBody(out, state);
+            out.flush();
+            long bodyLength = channel.position() - HEADER_SIZE;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(FORMAT_VERSION).putLong(state.getSequence()).putInt(state.getLastTicketId())
+                    .putLong(bodyLength).putInt((int) crc.getValue());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        deleteOlderThan(SNAPSHOTS_KEPT);
+        logger.info("Snapshot " + target.getFileName() + " written, " + state.getOpenTicketCount() + " open tickets, "
+                + state.visits().size() + " plates");
+        return target;
+    }
+
+    // null when there is no readable snapshot
+    public ParkingState loadLatest() {
+        for (Path snapshot : list()) {
+            try {
+                ParkingState state = read(snapshot);
+                logger.info("Snapshot " + snapshot.getFileName() + " loaded, journal sequence " + state.getSequence());
+                return state;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Skipping unreadable snapshot " + snapshot, e);
+            }
+        }
+        return null;
+    }
+
+    private static void writeBody(DataOutputStream out, ParkingState state) throws IOException {
+        out.writeInt(state.parkingSpots().size());
+        for (ParkingSpot parkingSpot : state.parkingSpots()) {
+            out.writeInt(parkingSpot.getId());
+            out.writeByte(parkingSpot.getParkingType().ordinal());
+            out.writeBoolean(parkingSpot.isAvailable());
+        }
+        out.writeInt(state.openTickets().size());
+        for (Ticket ticket : state.openTickets()) {
+            out.writeInt(ticket.getId());
+            out.writeUTF(ticket.getVehicleRegNumber());
+            out.writeInt(ticket.getParkingSpot().getId());
+            out.writeByte(ticket.getParkingSpot().getParkingType().ordinal());
+            out.writeLong(ticket.getInTime().getTime());
+        }
+        out.writeInt(state.visits().size());
+        for (Map.Entry<String, Integer> entry : state.visits().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    private static ParkingState read(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // a short read only happens on a truncated file
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot");
+            }
+            short version = header.getShort();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long sequence = header.getLong();
+            int lastTicketId = header.getInt();
+            long bodyLength = header.getLong();
+            int expectedCrc = header.getInt();
+            if (channel.size() != HEADER_SIZE + bodyLength) {
+                throw new IOException("Snapshot is " + channel.size() + " bytes, expected " + (HEADER_SIZE + bodyLength));
+            }
+
+            CRC32 crc = new CRC32();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new CheckedInputStream(Channels.newInputStream(channel), crc), 64 * 1024));
+            ParkingState state = new ParkingState(sequence, lastTicketId);
+            ParkingType[] types = ParkingType.values();
+            int spots = in.readInt();
+            for (int i = 0; i < spots; i++) {
+                state.putParkingSpot(new ParkingSpot(in.readInt(), types[in.readByte()], in.readBoolean()));
+            }
+            int openTickets = in.readInt();
+            for (int i = 0; i < openTickets; i++) {
+                Ticket ticket = new Ticket();
+                ticket.setId(in.readInt());
+                ticket.setVehicleRegNumber(in.readUTF());
+                ticket.setParkingSpot(new ParkingSpot(in.readInt(), types[in.readByte()], false));
+                ticket.setInTime(new Date(in.readLong()));
+                state.putOpenTicket(ticket);
+            }
+            int plates = in.readInt();
+            for (int i = 0; i < plates; i++) {
+                state.putVisits(in.readUTF(), in.readInt());
+            }
+            if (in.read() != -1 || (int) crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            return state;
+        }
+    }
+
+    // newest first
+    private List<Path> list() {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path snapshot : stream) {
+                snapshots.add(snapshot);
+            }
+        } catch (IOException e) {
+            logger.error("Unable to list snapshots in " + directory, e);
+        }
+        snapshots.sort(Comparator.comparing((Path snapshot) -> snapshot.getFileName().toString()).reversed());
+        return snapshots;
+    }
+
+    private void deleteOlderThan(int kept) {
+        List<Path> snapshots = list();
+        for (int i = kept; i < snapshots.size(); i++) {
+            try {
+                Files.deleteIfExists(snapshots.get(i));
+            } catch (IOException e) {
+                logger.error("Unable to delete old snapshot " + snapshots.get(i), e);
+            }
+        }
+    }
+}
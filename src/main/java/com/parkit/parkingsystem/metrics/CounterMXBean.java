@@ -0,0 +1,7 @@
+package com.parkit.parkingsystem.metrics;
+
+// registered as com.parkit.parkingsystem:type=Counter,name=<counter name>
+public interface CounterMXBean {
+
+    long getCount();
+}
@@ -0,0 +1,17 @@
+package com.parkit.parkingsystem.metrics;
+
+// registered as com.parkit.parkingsystem:type=Latency,name=<histogram name>
+public interface LatencyHistogramMXBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getMedianMicros();
+
+    double get99thPercentileMicros();
+
+    double get999thPercentileMicros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide histograms and counters, looked up by name once and kept in a static
+// field, like loggers. They are exposed over JMX once registerMBeans has been called,
+// including those created afterwards.
+public final class Metrics {
+
+    private static final Logger logger = LogManager.getLogger("Metrics");
+
+    private static final String DOMAIN = "com.parkit.parkingsystem";
+
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static volatile MBeanServer mBeanServer;
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> {
+            LatencyHistogram histogram = new LatencyHistogram(key);
+            register("Latency", key, histogram);
+            return histogram;
+        });
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> {
+            Counter counter = new Counter(key);
+            register("Counter", key, counter);
+            return counter;
+        });
+    }
+
+    public static synchronized void registerMBeans() {
+        if (mBeanServer != null) {
+            return;
+        }
+        mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (LatencyHistogram histogram : histograms.values()) {
+            register("Latency", histogram.getName(), histogram);
+        }
+        for (Counter counter : counters.values()) {
+            register("Counter", counter.getName(), counter);
+        }
+    }
+
+    // one line per histogram then per counter, in name order
+    public static String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (LatencyHistogram histogram : new TreeMap<>(histograms).values()) {
+            dump.append(histogram.getName()).append(' ').append(histogram.snapshot()).append(System.lineSeparator());
+        }
+        for (Counter counter : new TreeMap<>(counters).values()) {
+            dump.append(counter.getName()).append(" count=").append(counter.getCount()).append(System.lineSeparator());
+        }
+        return dump.toString();
+    }
+
+    private static synchronized void register(String type, String name, Object mBean) {
+        MBeanServer server = mBeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mBean, objectName);
+            }
+        } catch (JMException e) {
+            logger.error("Unable to register " + type + " " + name + " over JMX", e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Logs Metrics.dump() at INFO every interval, and once more on close.
+public class MetricsReporter implements AutoCloseable {
+
+    public static final String DUMP_SECONDS_PROPERTY = "parkit.metrics.dumpSeconds";
+
+    private static final Logger logger = LogManager.getLogger("Metrics");
+
+    private final long intervalMillis;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Thread thread;
+
+    public MetricsReporter(long interval, TimeUnit unit) {
+        this.intervalMillis = unit.toMillis(interval);
+        this.thread = new Thread(this::run, "metrics-reporter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        stopped.countDown();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+    }
+
+    private void report() {
+        logger.info("Metrics:" + System.lineSeparator() + Metrics.dump());
+    }
+
+    private void run() {
+        try {
+            while (!stopped.await(intervalMillis, TimeUnit.MILLISECONDS)) {
+                report();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
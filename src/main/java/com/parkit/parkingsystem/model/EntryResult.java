@@ -0,0 +1,78 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+// Outcome of ParkingService.enter, immutable so it can be handed to any thread.
+public final class EntryResult {
+
+    public enum Status {
+        PARKED,
+        LOT_FULL,
+        INVALID_REQUEST,
+        ERROR
+    }
+
+    private final Status status;
+    private final String vehicleRegNumber;
+    private final ParkingType parkingType;
+    private final int parkingNumber;
+    private final long inTime;
+    private final boolean returningVehicle;
+
+    private EntryResult(Status status, String vehicleRegNumber, ParkingType parkingType, int parkingNumber,
+            long inTime, boolean returningVehicle) {
+        this.status = status;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingType = parkingType;
+        this.parkingNumber = parkingNumber;
+        this.inTime = inTime;
+        this.returningVehicle = returningVehicle;
+    }
+
+    public static EntryResult parked(String vehicleRegNumber, ParkingType parkingType, int parkingNumber,
+            Date inTime, boolean returningVehicle) {
+        return new EntryResult(Status.PARKED, vehicleRegNumber, parkingType, parkingNumber, inTime.getTime(),
+                returningVehicle);
+    }
+
+    public static EntryResult rejected(Status status, String vehicleRegNumber, ParkingType parkingType) {
+        return new EntryResult(status, vehicleRegNumber, parkingType, -1, 0, false);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isParked() {
+        return status == Status.PARKED;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    // -1 unless parked
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public Date getInTime() {
+        return isParked() ? new Date(inTime) : null;
+    }
+
+    // the vehicle already has tickets, so the exit fare will be discounted
+    public boolean isReturningVehicle() {
+        return returningVehicle;
+    }
+
+    @Override
+    public String toString() {
+        return "EntryResult[" + status + ", " + vehicleRegNumber + ", " + parkingType + " spot " + parkingNumber + "]";
+    }
+}
@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+// Outcome of ParkingService.exit, immutable so it can be handed to any thread.
+public final class ExitResult {
+
+    public enum Status {
+        EXITED,
+        NO_OPEN_TICKET,
+        INVALID_REQUEST,
+        ERROR
+    }
+
+    private final Status status;
+    private final String vehicleRegNumber;
+    private final ParkingType parkingType;
+    private final int parkingNumber;
+    private final long inTime;
+    private final long outTime;
+    private final double price;
+    private final boolean discountApplied;
+
+    private ExitResult(Status status, String vehicleRegNumber, ParkingType parkingType, int parkingNumber,
+            long inTime, long outTime, double price, boolean discountApplied) {
+        this.status = status;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingType = parkingType;
+        this.parkingNumber = parkingNumber;
+        this.inTime = inTime;
+        this.outTime = outTime;
+        this.price = price;
+        this.discountApplied = discountApplied;
+    }
+
+    public static ExitResult exited(Ticket ticket, boolean discountApplied) {
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        return new ExitResult(Status.EXITED, ticket.getVehicleRegNumber(), parkingSpot.getParkingType(),
+                parkingSpot.getId(), ticket.getInTime().getTime(), ticket.getOutTime().getTime(), ticket.getPrice(),
+                discountApplied);
+    }
+
+    public static ExitResult rejected(Status status, String vehicleRegNumber) {
+        return new ExitResult(status, vehicleRegNumber, null, -1, 0, 0, 0, false);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isExited() {
+        return status == Status.EXITED;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    // -1 unless exited
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public Date getInTime() {
+        return isExited() ? new Date(inTime) : null;
+    }
+
+    public Date getOutTime() {
+        return isExited() ? new Date(outTime) : null;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public boolean isDiscountApplied() {
+        return discountApplied;
+    }
+
+    @Override
+    public String toString() {
+        return "ExitResult[" + status + ", " + vehicleRegNumber + ", spot " + parkingNumber + ", " + price + "]";
+    }
+}
@@ -10,6 +10,7 @@ public class Ticket {
 	private double price;
 	private Date inTime;
 	private Date outTime;
+	private boolean discount;
 
 	public int getId() {
 		return id;
@@ -59,4 +60,13 @@ public class Ticket {
 		this.outTime = outTime;
 	}
 
+	// the price was calculated at the returning vehicle rate
+	public boolean isDiscount() {
+		return discount;
+	}
+
+	public void setDiscount(boolean discount) {
+		this.discount = discount;
+	}
+
 }
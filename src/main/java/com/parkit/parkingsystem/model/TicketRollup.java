@@ -0,0 +1,80 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+// The tickets closed during one bucket of time, for one parking type and rate:
+// how many, what they paid and how long they stayed, all counted at exit.
+public final class TicketRollup {
+
+    public enum Granularity {
+        MINUTE(ChronoUnit.MINUTES),
+        HOUR(ChronoUnit.HOURS),
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        // start of the bucket holding the time, in the local time zone
+        public LocalDateTime bucketOf(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+
+        public LocalDateTime next(LocalDateTime bucket) {
+            return bucket.plus(1, unit);
+        }
+    }
+
+    private final Date bucket;
+    private final ParkingType parkingType;
+    private final boolean discount;
+    private final long tickets;
+    private final double revenue;
+    private final long parkedSeconds;
+
+    public TicketRollup(Date bucket, ParkingType parkingType, boolean discount, long tickets, double revenue,
+            long parkedSeconds) {
+        this.bucket = bucket;
+        this.parkingType = parkingType;
+        this.discount = discount;
+        this.tickets = tickets;
+        this.revenue = revenue;
+        this.parkedSeconds = parkedSeconds;
+    }
+
+    public Date getBucket() {
+        return bucket;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public boolean isDiscount() {
+        return discount;
+    }
+
+    public long getTickets() {
+        return tickets;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public long getParkedSeconds() {
+        return parkedSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "TicketRollup[" + bucket + " " + parkingType + (discount ? " discount" : "") + ", " + tickets
+                + " tickets, revenue " + revenue + ", " + parkedSeconds + "s parked]";
+    }
+}
@@ -0,0 +1,19 @@
+package com.parkit.parkingsystem.model;
+
+public class TicketWithVisits {
+    private final Ticket ticket;
+    private final int visitCount;
+
+    public TicketWithVisits(Ticket ticket, int visitCount) {
+        this.ticket = ticket;
+        this.visitCount = visitCount;
+    }
+
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    public int getVisitCount() {
+        return visitCount;
+    }
+}
@@ -1,55 +1,47 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.tariff.Tariff;
+import com.parkit.parkingsystem.tariff.TariffFile;
 
 public class FareCalculatorService {
 
-	public void calculateFare(Ticket ticket, boolean discount) {
-
-		if ((ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime()))) {
-			throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime().toString());
-		}
+	private static final LatencyHistogram calculateFareLatency = Metrics.histogram("FareCalculatorService.calculateFare");
+	private static final Tariff DEFAULT_TARIFF = Tariff.defaults();
 
-		long inTime = ticket.getInTime().getTime();
-		long outTime = ticket.getOutTime().getTime();
-
-		double duration = ((outTime - inTime) / (60.0 * 60 * 1000));
-
-		if (duration <= 0.5) { // Si en dessous de 30 min de stationnement
-			duration = 0;
-		}
+	// read on every fare, so a reloaded tariff applies from the next exit
+	private final TariffFile tariffFile;
 
-		switch (ticket.getParkingSpot().getParkingType()) {
-		case CAR: {
-			if (discount) {
-				ticket.setPrice(roundValue(duration * Fare.DISCOUNT_CAR_RATE_PER_HOUR));
-			} else {
-				ticket.setPrice(roundValue(duration * Fare.CAR_RATE_PER_HOUR));
-			}
-			break;
+	public FareCalculatorService() {
+		this(null);
+	}
 
-		}
-		case BIKE: {
-			if (discount) {
-				ticket.setPrice(roundValue(duration * Fare.DISCOUNT_BIKE_RATE_PER_HOUR));
-			} else {
-				ticket.setPrice(roundValue(duration * Fare.BIKE_RATE_PER_HOUR));
-			}
-			break;
+	// the rates of the Fare constants when tariffFile is null
+	public FareCalculatorService(TariffFile tariffFile) {
+		this.tariffFile = tariffFile;
+	}
 
-		}
-		default:
-			throw new IllegalArgumentException("Unkown Parking Type");
+	public void calculateFare(Ticket ticket, boolean discount) {
+		long start = System.nanoTime();
+		try {
+			calculate(ticket, discount);
+		} finally {
+			calculateFareLatency.recordSince(start);
 		}
 	}
 
-	private double roundValue(double notRoundValue) {
+	private void calculate(Ticket ticket, boolean discount) {
 
-		double valueMultiply = notRoundValue * 1000;
-		double roundValueMultiply = Math.round(valueMultiply);
-		return roundValueMultiply / 1000;
+		if ((ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime()))) {
+			throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime());
+		}
 
+		Tariff tariff = tariffFile == null ? DEFAULT_TARIFF : tariffFile.getTariff();
+		ticket.setPrice(tariff.fare(ticket.getParkingSpot().getParkingType(), discount,
+				ticket.getInTime().getTime(), ticket.getOutTime().getTime()));
+		ticket.setDiscount(discount);
 	}
 
 }
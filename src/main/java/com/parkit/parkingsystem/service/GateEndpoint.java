@@ -0,0 +1,306 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * TCP endpoint for the gate hardware. One selector thread does all the socket
+ * work; the requests themselves run on the {@link GateServer}.
+ *
+ * <p>The protocol is line based, ASCII, one request per line, and every request
+ * starts with a tag chosen by the gate:
+ * <pre>
+ * &lt;tag&gt; ENTER &lt;plate&gt; &lt;CAR|BIKE&gt;  -&gt;  &lt;tag&gt; PARKED &lt;spot&gt; | LOT_FULL | INVALID_REQUEST | ERROR
+ * &lt;tag&gt; EXIT &lt;plate&gt;              -&gt;  &lt;tag&gt; EXITED &lt;spot&gt; &lt;price&gt; &lt;discounted&gt; | NO_OPEN_TICKET | ...
+ * &lt;tag&gt; QUERY &lt;CAR|BIKE&gt;          -&gt;  &lt;tag&gt; FREE &lt;spot&gt; | LOT_FULL
+ * </pre>
+ * A gate may send many requests without waiting. Answers are written as soon as
+ * they are ready, so they can come back out of order and are matched by tag.
+ */
+public class GateEndpoint implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("GateEndpoint");
+
+    private static final int MAX_LINE_LENGTH = 256;
+    // past this many unanswered requests, or this many answer bytes the gate has not
+    // read yet, a connection is not read until answers go out
+    private static final int MAX_PENDING_PER_CONNECTION = 64;
+    private static final int MAX_QUEUED_OUTPUT_BYTES = 16 * 1024;
+
+    // times a connection stopped being read because its gate did not read its answers
+    private static final Counter outputBackpressure = Metrics.counter("GateEndpoint.outputBackpressure");
+
+    private final GateServer gateServer;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Queue<GateConnection> withNewOutput = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    public GateEndpoint(GateServer gateServer, InetSocketAddress address) throws IOException {
+        this.gateServer = gateServer;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::run, "gate-endpoint");
+        selectorThread.start();
+        logger.info("Gate endpoint listening on " + getLocalAddress());
+    }
+
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        selectorThread.join();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                GateConnection connection;
+                while ((connection = withNewOutput.poll()) != null) {
+                    connection.updateInterest();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        GateConnection gateConnection = (GateConnection) key.attachment();
+                        if (key.isReadable()) {
+                            gateConnection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            gateConnection.write();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // e.g. the gate server rejecting requests once shut down: only this gate is disconnected
+                        logger.error("Gate connection failed", e);
+                        if (key.attachment() != null) {
+                            ((GateConnection) key.attachment()).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Gate endpoint stopped", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() != null) {
+                    ((GateConnection) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.error("Error while closing gate endpoint", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new GateConnection(channel, key));
+    }
+
+    // parsing runs on the selector thread, answers are queued by whichever thread completes them
+    private final class GateConnection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer input = ByteBuffer.allocate(MAX_LINE_LENGTH);
+        private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        // in output, including the answers parsing rejected straight away
+        private final AtomicInteger queuedBytes = new AtomicInteger();
+        private boolean inputClosed;
+        private boolean outputFull;
+
+        private GateConnection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        private void read() throws IOException {
+            if (channel.read(input) < 0) {
+                inputClosed = true;
+            }
+            input.flip();
+            int lineStart = input.position();
+            for (int i = input.position(); i < input.limit(); i++) {
+                if (input.get(i) == '\n') {
+                    String line = new String(input.array(), lineStart, i - lineStart, StandardCharsets.US_ASCII).trim();
+                    if (!line.isEmpty()) {
+                        handle(line);
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            input.position(lineStart);
+            input.compact();
+            if (!input.hasRemaining()) {
+                respond("* ERROR line too long");
+                inputClosed = true;
+            }
+            updateInterest();
+        }
+
+        private void handle(String line) {
+            String[] request = line.split("\\s+");
+            String tag = request[0];
+            String command = request.length > 1 ? request[1].toUpperCase() : "";
+            if ("ENTER".equals(command) && request.length == 4) {
+                ParkingType parkingType = parkingType(request[3]);
+                if (parkingType == null) {
+                    respond(tag + " INVALID_REQUEST");
+                    return;
+                }
+                answer(tag, gateServer.enter(request[2], parkingType), GateEndpoint::format);
+            } else if ("EXIT".equals(command) && request.length == 3) {
+                answer(tag, gateServer.exit(request[2]), GateEndpoint::format);
+            } else if ("QUERY".equals(command) && request.length == 3) {
+                ParkingType parkingType = parkingType(request[2]);
+                if (parkingType == null) {
+                    respond(tag + " INVALID_REQUEST");
+                    return;
+                }
+                answer(tag, gateServer.nextAvailableSlot(parkingType),
+                        parkingNumber -> parkingNumber > 0 ? "FREE " + parkingNumber : "LOT_FULL");
+            } else {
+                respond(tag + " ERROR unknown request");
+            }
+        }
+
+        private <T> void answer(String tag, CompletableFuture<T> future, Function<T, String> formatter) {
+            pending.incrementAndGet();
+            future.whenComplete((result, error) -> {
+                if (error != null) {
+                    logger.error("Gate request " + tag + " failed", error);
+                    respond(tag + " ERROR");
+                } else {
+                    respond(tag + " " + formatter.apply(result));
+                }
+                pending.decrementAndGet();
+                withNewOutput.add(this);
+                selector.wakeup();
+            });
+        }
+
+        private void respond(String line) {
+            ByteBuffer buffer = StandardCharsets.US_ASCII.encode(line + "\n");
+            queuedBytes.addAndGet(buffer.remaining());
+            output.add(buffer);
+        }
+
+        private void write() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = output.peek()) != null) {
+                queuedBytes.addAndGet(-channel.write(buffer));
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                output.poll();
+            }
+            updateInterest();
+        }
+
+        // selector thread only
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            if (inputClosed && pending.get() == 0 && output.isEmpty()) {
+                close();
+                return;
+            }
+            boolean wasOutputFull = outputFull;
+            outputFull = queuedBytes.get() >= MAX_QUEUED_OUTPUT_BYTES;
+            if (outputFull && !wasOutputFull) {
+                outputBackpressure.increment();
+            }
+            int ops = 0;
+            if (!inputClosed && pending.get() < MAX_PENDING_PER_CONNECTION && !outputFull) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Error while closing gate connection", e);
+            }
+        }
+    }
+
+    private static ParkingType parkingType(String value) {
+        try {
+            return ParkingType.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String format(EntryResult result) {
+        return result.isParked() ? "PARKED " + result.getParkingNumber() : result.getStatus().toString();
+    }
+
+    private static String format(ExitResult result) {
+        return result.isExited()
+                ? "EXITED " + result.getParkingNumber() + " " + result.getPrice() + " " + result.isDiscountApplied()
+                : result.getStatus().toString();
+    }
+}
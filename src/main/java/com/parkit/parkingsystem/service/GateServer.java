@@ -0,0 +1,88 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Runs every gate event on its own virtual thread, so a gate waiting on the DB
+// only blocks itself. The semaphore caps how many events are inside the stores
+// at once: keep it at or below the connection pool size, so that extra events
+// park cheaply here instead of timing out on the pool.
+// Waiting on the DB unmounts the virtual thread because the driver, Connector/J
+// 9.x, locks its statements with ReentrantLock; run with -Djdk.tracePinnedThreads=full
+// to check that no other library pins the carriers.
+public class GateServer implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("GateServer");
+
+    public static final String MAX_IN_FLIGHT_PROPERTY = "parkit.gate.maxInFlight";
+
+    private final ParkingService parkingService;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public GateServer(ParkingService parkingService, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.parkingService = parkingService;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight, true);
+    }
+
+    public CompletableFuture<EntryResult> enter(String vehicleRegNumber, ParkingType parkingType) {
+        return CompletableFuture.supplyAsync(() -> withPermit(() -> parkingService.enter(vehicleRegNumber, parkingType)),
+                executor);
+    }
+
+    public CompletableFuture<ExitResult> exit(String vehicleRegNumber) {
+        return CompletableFuture.supplyAsync(() -> withPermit(() -> parkingService.exit(vehicleRegNumber)), executor);
+    }
+
+    public CompletableFuture<Integer> nextAvailableSlot(ParkingType parkingType) {
+        return CompletableFuture.supplyAsync(() -> withPermit(() -> parkingService.getNextAvailableSlot(parkingType)),
+                executor);
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    private <T> T withPermit(Supplier<T> work) {
+        inFlight.acquireUninterruptibly();
+        try {
+            return work.get();
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    // waits for the events already submitted
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.error("Gate events still running after 30s, stopping them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
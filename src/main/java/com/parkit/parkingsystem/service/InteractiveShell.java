@@ -1,11 +1,23 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.config.ConnectionPoolSettings;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.StorageEngine;
+import com.parkit.parkingsystem.dao.TicketExporter;
+import com.parkit.parkingsystem.dao.TicketRollupDAO;
+import com.parkit.parkingsystem.tariff.TariffFile;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
 public class InteractiveShell {
 
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
@@ -16,9 +28,9 @@ public class InteractiveShell {
 
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
-        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-        TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        StorageEngine storageEngine = StorageEngine.fromSystemProperties();
+        TariffFile tariffFile = TariffFile.startFromSystemProperties();
+        ParkingService parkingService = new ParkingService(inputReaderUtil, storageEngine.getParkingSpotStore(), storageEngine.getTicketStore(), tariffFile);
 
         while(continueApp){
             loadMenu();
@@ -35,6 +47,8 @@ public class InteractiveShell {
                 case 3: {
                     System.out.println("Exiting from the system!");
                     continueApp = false;
+                    storageEngine.shutdown();
+                    close(tariffFile);
                     break;
                 }
                 default: System.out.println("Unsupported option. Please enter a number corresponding to the provided menu");
@@ -42,6 +56,112 @@ public class InteractiveShell {
         }
     }
 
+    // One event per line, "<gate> ENTER <plate> <CAR|BIKE>" or "<gate> EXIT <plate>".
+    // Events run concurrently and each answer is printed when it is ready, prefixed by its gate.
+    public static void loadGateServer(){
+        logger.info("Gate server initialized");
+        StorageEngine storageEngine = StorageEngine.fromSystemProperties();
+        TariffFile tariffFile = TariffFile.startFromSystemProperties();
+        ParkingService parkingService = new ParkingService(null, storageEngine.getParkingSpotStore(), storageEngine.getTicketStore(), tariffFile);
+        int maxInFlight = Integer.getInteger(GateServer.MAX_IN_FLIGHT_PROPERTY, new ConnectionPoolSettings().getMaxSize());
+        try (GateServer gateServer = new GateServer(parkingService, maxInFlight);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null){
+                String[] event = line.trim().split("\\s+");
+                if(event.length == 4 && "ENTER".equalsIgnoreCase(event[1])){
+                    String gate = event[0];
+                    ParkingType parkingType;
+                    try {
+                        parkingType = ParkingType.valueOf(event[3].toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        System.out.println(gate + " INVALID_REQUEST " + event[2]);
+                        continue;
+                    }
+                    gateServer.enter(event[2], parkingType).thenAccept(result -> System.out.println(gate + " " + result.getStatus()
+                            + " " + result.getVehicleRegNumber() + (result.isParked() ? " " + result.getParkingNumber() : "")));
+                } else if(event.length == 3 && "EXIT".equalsIgnoreCase(event[1])){
+                    String gate = event[0];
+                    gateServer.exit(event[2]).thenAccept(result -> System.out.println(gate + " " + result.getStatus()
+                            + " " + result.getVehicleRegNumber() + (result.isExited() ? " " + result.getPrice() : "")));
+                } else if(!line.trim().isEmpty()){
+                    System.out.println("Unsupported gate event: " + line);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error while reading gate events", e);
+        } finally {
+            storageEngine.shutdown();
+            close(tariffFile);
+        }
+    }
+
+    // Serves the gate protocol of GateEndpoint on the port until the JVM is stopped.
+    public static void loadGateEndpoint(int port){
+        logger.info("Gate endpoint initialized");
+        StorageEngine storageEngine = StorageEngine.fromSystemProperties();
+        TariffFile tariffFile = TariffFile.startFromSystemProperties();
+        ParkingService parkingService = new ParkingService(null, storageEngine.getParkingSpotStore(), storageEngine.getTicketStore(), tariffFile);
+        int maxInFlight = Integer.getInteger(GateServer.MAX_IN_FLIGHT_PROPERTY, new ConnectionPoolSettings().getMaxSize());
+        GateServer gateServer = new GateServer(parkingService, maxInFlight);
+        try {
+            GateEndpoint gateEndpoint = new GateEndpoint(gateServer, new InetSocketAddress(port));
+            System.out.println("Gate endpoint listening on port " + gateEndpoint.getLocalAddress().getPort());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                gateEndpoint.close();
+                gateServer.close();
+                storageEngine.shutdown();
+                close(tariffFile);
+            }));
+            gateEndpoint.awaitTermination();
+        } catch (IOException e) {
+            logger.error("Unable to start the gate endpoint on port " + port, e);
+            gateServer.close();
+            storageEngine.shutdown();
+            close(tariffFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writes every ticket to the file and exits; the gates may keep running against the same DB.
+    public static void exportTickets(Path file, TicketExporter.Format format){
+        DataBaseConfig dataBaseConfig = new DataBaseConfig();
+        try {
+            long exported = new TicketExporter(dataBaseConfig).export(file, format);
+            System.out.println(exported + " tickets exported to " + file);
+        } catch (Exception e) {
+            logger.error("Unable to export the tickets to " + file, e);
+        } finally {
+            dataBaseConfig.shutdown();
+        }
+    }
+
+    // Recomputes ticket_rollup from the tickets, e.g. after a backfill, with the gates stopped.
+    public static void rebuildRollups(int threads){
+        DataBaseConfig dataBaseConfig = new DataBaseConfig();
+        dataBaseConfig.enablePooling(new ConnectionPoolSettings());
+        try {
+            TicketRollupDAO ticketRollupDAO = new TicketRollupDAO();
+            ticketRollupDAO.dataBaseConfig = dataBaseConfig;
+            long tickets = ticketRollupDAO.rebuild(threads);
+            System.out.println("Rollups rebuilt from " + tickets + " tickets");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Unable to rebuild the ticket rollups", e);
+        } finally {
+            dataBaseConfig.shutdown();
+        }
+    }
+
+    // null when no tariff file is configured
+    private static void close(TariffFile tariffFile){
+        if(tariffFile != null){
+            tariffFile.close();
+        }
+    }
+
     private static void loadMenu(){
         System.out.println("Please select an option. Simply enter the number to choose an action");
         System.out.println("1 New Vehicle Entering - Allocate Parking Space");
@@ -1,71 +1,159 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.config.JdbcTracer;
+import com.parkit.parkingsystem.config.TracedOperation;
 import com.parkit.parkingsystem.constants.ParkingType;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.dao.TimedParkingSpotStore;
+import com.parkit.parkingsystem.dao.TimedTicketStore;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketWithVisits;
+import com.parkit.parkingsystem.tariff.TariffFile;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class ParkingService {
 
 	private static final Logger logger = LogManager.getLogger("ParkingService");
 
-	private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+	private static final LatencyHistogram incomingLatency = Metrics.histogram("ParkingService.processIncomingVehicle");
+	private static final LatencyHistogram exitingLatency = Metrics.histogram("ParkingService.processExitingVehicle");
+	private static final LatencyHistogram enterLatency = Metrics.histogram("ParkingService.enter");
+	private static final LatencyHistogram exitLatency = Metrics.histogram("ParkingService.exit");
+	// ParkingService.enter.LOT_FULL, ParkingService.exit.NO_OPEN_TICKET, ...
+	private static final Map<EntryResult.Status, Counter> entryOutcomes = new EnumMap<>(EntryResult.Status.class);
+	private static final Map<ExitResult.Status, Counter> exitOutcomes = new EnumMap<>(ExitResult.Status.class);
 
-	private InputReaderUtil inputReaderUtil;
-	private ParkingSpotDAO parkingSpotDAO;
-	private TicketDAO ticketDAO;
+	static {
+		for (EntryResult.Status status : EntryResult.Status.values()) {
+			entryOutcomes.put(status, Metrics.counter("ParkingService.enter." + status));
+		}
+		for (ExitResult.Status status : ExitResult.Status.values()) {
+			exitOutcomes.put(status, Metrics.counter("ParkingService.exit." + status));
+		}
+	}
+
+	private final InputReaderUtil inputReaderUtil;
+	private final ParkingSpotStore parkingSpotDAO;
+	private final TicketStore ticketDAO;
+	private final FareCalculatorService fareCalculatorService;
+
+	// headless use through enter and exit, without the console prompts
+	public ParkingService(ParkingSpotStore parkingSpotDAO, TicketStore ticketDAO) {
+		this(null, parkingSpotDAO, ticketDAO);
+	}
 
-	public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+	public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotStore parkingSpotDAO, TicketStore ticketDAO) {
+		this(inputReaderUtil, parkingSpotDAO, ticketDAO, null);
+	}
+
+	// the rates of the Fare constants when tariffFile is null; the caller closes the tariff file
+	public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotStore parkingSpotDAO, TicketStore ticketDAO,
+			TariffFile tariffFile) {
 		this.inputReaderUtil = inputReaderUtil;
-		this.parkingSpotDAO = parkingSpotDAO;
-		this.ticketDAO = ticketDAO;
+		this.parkingSpotDAO = new TimedParkingSpotStore(parkingSpotDAO);
+		this.ticketDAO = new TimedTicketStore(ticketDAO);
+		this.fareCalculatorService = new FareCalculatorService(tariffFile);
 	}
 
+	// console entry: prompts for the vehicle type and plate, then parks through enter
 	public void processIncomingVehicle() {
+		long start = System.nanoTime();
+		TracedOperation traced = JdbcTracer.begin("ParkingService.processIncomingVehicle");
 		try {
 			ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
 			if (parkingSpot != null && parkingSpot.getId() > 0) {
 				String vehicleRegNumber = getVehichleRegNumber();
-				parkingSpot.setAvailable(false);
-				parkingSpotDAO.updateParking(parkingSpot);// allot this parking space and mark it's availability as
-															// false
-				int count = ticketDAO.getNbTicket(vehicleRegNumber);
-
-				Date inTime = new Date();
-				Ticket ticket = new Ticket();
-				ticket.setParkingSpot(parkingSpot);
-				ticket.setVehicleRegNumber(vehicleRegNumber);
-				ticket.setPrice(0);
-				ticket.setInTime(inTime);
-				ticket.setOutTime(null);
-				ticketDAO.saveTicket(ticket);
-
-				if (count < 1) {
+				EntryResult result = enter(vehicleRegNumber, parkingSpot.getParkingType());
+				if (!result.isParked()) {
+					throw new Exception("Vehicle " + vehicleRegNumber + " could not be parked: " + result.getStatus());
+				}
+
+				if (!result.isReturningVehicle()) {
 
 					System.out.println("Hello, this is your first visit, have a nice day !");
 					System.out.println("Generated Ticket and saved in DB");
-					System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
-					System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + inTime);
+					System.out.println("Please park your vehicle in spot number:" + result.getParkingNumber());
+					System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + result.getInTime());
 
 				} else {
 
 					System.out.println("Happy to see you again ! As a regular user of\r\n"
 							+ "our parking, you will get a 5% discount");
 					System.out.println("Generated Ticket and saved in DB");
-					System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
-					System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + inTime);
+					System.out.println("Please park your vehicle in spot number:" + result.getParkingNumber());
+					System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + result.getInTime());
 
 				}
 			}
 
 		} catch (Exception e) {
 			logger.error("Unable to process incoming vehicle", e);
+		} finally {
+			traced.close();
+			incomingLatency.recordSince(start);
+		}
+	}
+
+	// a hint only, the spot is claimed by enter
+	public int getNextAvailableSlot(ParkingType parkingType) {
+		return parkingSpotDAO.getNextAvailableSlot(parkingType);
+	}
+
+	// Claims the lowest free spot of the type and opens a ticket. Safe to call from
+	// several gates at once: the stores hand out each spot to a single caller.
+	public EntryResult enter(String vehicleRegNumber, ParkingType parkingType) {
+		long start = System.nanoTime();
+		EntryResult result;
+		TracedOperation traced = JdbcTracer.begin("ParkingService.enter");
+		try {
+			result = tryEnter(vehicleRegNumber, parkingType);
+		} finally {
+			traced.close();
+		}
+		enterLatency.recordSince(start);
+		entryOutcomes.get(result.getStatus()).increment();
+		return result;
+	}
+
+	private EntryResult tryEnter(String vehicleRegNumber, ParkingType parkingType) {
+		if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty() || parkingType == null) {
+			return EntryResult.rejected(EntryResult.Status.INVALID_REQUEST, vehicleRegNumber, parkingType);
+		}
+		Date inTime = new Date();
+		Ticket ticket = new Ticket();
+		// claim, count and insert share one connection and commit together, or not at all
+		try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+			int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(unitOfWork, parkingType);
+			if (parkingNumber <= 0) {
+				return EntryResult.rejected(EntryResult.Status.LOT_FULL, vehicleRegNumber, parkingType);
+			}
+			int count = ticketDAO.getNbTicket(unitOfWork, vehicleRegNumber);
+
+			ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+			ticket.setVehicleRegNumber(vehicleRegNumber);
+			ticket.setPrice(0);
+			ticket.setInTime(inTime);
+			ticket.setOutTime(null);
+			ticketDAO.saveTicket(unitOfWork, ticket);
+			unitOfWork.commit();
+			return EntryResult.parked(vehicleRegNumber, parkingType, parkingNumber, inTime, count > 0);
+		} catch (Exception e) {
+			logger.error("Unable to park vehicle " + vehicleRegNumber, e);
+			return EntryResult.rejected(EntryResult.Status.ERROR, vehicleRegNumber, parkingType);
 		}
 	}
 
@@ -112,27 +200,18 @@ public class ParkingService {
 		}
 	}
 
+	// console exit: prompts for the plate, then closes the ticket through exit
 	public void processExitingVehicle() {
+		long start = System.nanoTime();
+		TracedOperation traced = JdbcTracer.begin("ParkingService.processExitingVehicle");
 		try {
 			String vehicleRegNumber = getVehichleRegNumber();
-			Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-			int countTicket = ticketDAO.getNbTicket(vehicleRegNumber);
-			Date outTime = new Date();
-			ticket.setOutTime(outTime);
-
-			if (countTicket > 1) {
-				fareCalculatorService.calculateFare(ticket, true);
-			} else {
-				fareCalculatorService.calculateFare(ticket, false); // Pas de réduction
-			}
+			ExitResult result = exit(vehicleRegNumber);
 
-			if (ticketDAO.updateTicket(ticket)) {
-				ParkingSpot parkingSpot = ticket.getParkingSpot();
-				parkingSpot.setAvailable(true);
-				parkingSpotDAO.updateParking(parkingSpot);
-				System.out.println("Please pay the parking fare:" + ticket.getPrice());
+			if (result.isExited()) {
+				System.out.println("Please pay the parking fare:" + result.getPrice());
 				System.out.println(
-						"Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
+						"Recorded out-time for vehicle number:" + result.getVehicleRegNumber() + " is:" + result.getOutTime());
 			} else {
 				System.out.println("Unable to update ticket information. Error occurred");
 			}
@@ -140,7 +219,66 @@ public class ParkingService {
 		} catch (Exception e) {
 			logger.error("Unable to process exiting vehicle", e);
 
+		} finally {
+			traced.close();
+			exitingLatency.recordSince(start);
+		}
+
+	}
+
+	// Prices and closes the open ticket of the plate and frees its spot. Two gates
+	// exiting the same plate cannot both succeed: the ticket is only closed once.
+	public ExitResult exit(String vehicleRegNumber) {
+		long start = System.nanoTime();
+		ExitResult result;
+		TracedOperation traced = JdbcTracer.begin("ParkingService.exit");
+		try {
+			result = tryExit(vehicleRegNumber);
+		} finally {
+			traced.close();
+		}
+		exitLatency.recordSince(start);
+		exitOutcomes.get(result.getStatus()).increment();
+		return result;
+	}
+
+	private ExitResult tryExit(String vehicleRegNumber) {
+		if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty()) {
+			return ExitResult.rejected(ExitResult.Status.INVALID_REQUEST, vehicleRegNumber);
 		}
+		// the ticket is closed and its spot released in the same transaction, or neither is.
+		// 5 round-trips on the JDBC stores: autocommit off, the ticket with its visits, one batch
+		// holding the close, its rollups and the release, the commit, then autocommit back on
+		try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+			TicketWithVisits ticketWithVisits = ticketDAO.getTicketWithVisits(unitOfWork, vehicleRegNumber);
+			if (ticketWithVisits == null || ticketWithVisits.getTicket().getOutTime() != null) {
+				return ExitResult.rejected(ExitResult.Status.NO_OPEN_TICKET, vehicleRegNumber);
+			}
+			Ticket ticket = ticketWithVisits.getTicket();
+			ticket.setOutTime(new Date());
+
+			boolean discount = ticketWithVisits.getVisitCount() > 1;
+			fareCalculatorService.calculateFare(ticket, discount);
 
+			if (!ticketDAO.closeTicket(unitOfWork, ticket)) {
+				// closed meanwhile by another gate
+				return ExitResult.rejected(ExitResult.Status.NO_OPEN_TICKET, vehicleRegNumber);
+			}
+			if (!parkingSpotDAO.releaseParkingSpot(unitOfWork, ticket.getParkingSpot())) {
+				logger.error("Parking spot " + ticket.getParkingSpot().getId() + " of vehicle " + vehicleRegNumber
+						+ " could not be released");
+				return ExitResult.rejected(ExitResult.Status.ERROR, vehicleRegNumber);
+			}
+			if (!unitOfWork.executeBatch()) {
+				// the close updated no row: closed meanwhile by another gate, everything is rolled back
+				return ExitResult.rejected(ExitResult.Status.NO_OPEN_TICKET, vehicleRegNumber);
+			}
+			unitOfWork.commit();
+			ticket.getParkingSpot().setAvailable(true);
+			return ExitResult.exited(ticket, discount);
+		} catch (Exception e) {
+			logger.error("Unable to process exit of vehicle " + vehicleRegNumber, e);
+			return ExitResult.rejected(ExitResult.Status.ERROR, vehicleRegNumber);
+		}
 	}
 }
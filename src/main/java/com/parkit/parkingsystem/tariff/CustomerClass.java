@@ -0,0 +1,7 @@
+package com.parkit.parkingsystem.tariff;
+
+// RETURNING vehicles already have a ticket and get the discounted rates
+public enum CustomerClass {
+    REGULAR,
+    RETURNING
+}
@@ -0,0 +1,230 @@
+package com.parkit.parkingsystem.tariff;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/**
+ * Rates per hour by parking type, customer class and band, compiled into flat
+ * arrays so {@link #fare} is a few lookups and integer operations, without
+ * allocating. Amounts are kept in thousandths and durations in milliseconds, so
+ * a fare is rounded once, half up, to the thousandth.
+ *
+ * <p>A stay up to the free threshold costs nothing, a longer one is charged for
+ * its whole duration, every part of it at the rate of the band it falls in: the
+ * cost of the hours of the week is summed up front, so a stay of any length
+ * costs a few lookups per day. A daily cap limits the price of every started 24
+ * hours of the stay. Built from properties:
+ * <pre>
+ * freeMinutes=30
+ * night=22-6                      start hour, end hour, local time
+ * weekend=SATURDAY,SUNDAY
+ * CAR.REGULAR.rate=1.5            prices the type, required for each priced type
+ * CAR.RETURNING.rate=1.425        defaults to the REGULAR rate
+ * CAR.REGULAR.rate.NIGHT=1        defaults to the class rate
+ * CAR.REGULAR.dailyCap=20         no cap by default
+ * </pre>
+ */
+public final class Tariff {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+    private static final long WEEK = 7 * DAY;
+    private static final int HOURS_PER_WEEK = 7 * 24;
+    private static final int CLASSES = CustomerClass.values().length;
+    private static final int BANDS = TariffBand.values().length;
+
+    // Costs are in thousandths times milliseconds per hour, i.e. thousandths scaled
+    // by HOUR, so parts of an hour add up exactly and are divided by HOUR once.
+    // Hours of the week start on Monday 00:00, in the time zone the tariff was built in.
+
+    private final boolean[] priced;
+    // thousandths per hour, by (parking type * CLASSES + customer class) * HOURS_PER_WEEK + hour of the week
+    private final long[] hourRates;
+    // thousandths from the start of the week to the start of the hour, by cell * (HOURS_PER_WEEK + 1) + hour,
+    // the last one of a cell being its whole week
+    private final long[] weekCosts;
+    // cost per started day, by cell
+    private final long[] dailyCaps;
+    private final long freeMillis;
+    private final TimeZone timeZone;
+
+    // rates by cell * BANDS + band, dailyCaps in thousandths, bands by hour of the week
+    private Tariff(boolean[] priced, long[] rates, long[] dailyCaps, long freeMillis, byte[] bands) {
+        int cells = dailyCaps.length;
+        this.priced = priced;
+        this.hourRates = new long[cells * HOURS_PER_WEEK];
+        this.weekCosts = new long[cells * (HOURS_PER_WEEK + 1)];
+        this.dailyCaps = new long[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+                long rate = rates[cell * BANDS + bands[hour]];
+                hourRates[cell * HOURS_PER_WEEK + hour] = rate;
+                weekCosts[cell * (HOURS_PER_WEEK + 1) + hour + 1] = weekCosts[cell * (HOURS_PER_WEEK + 1) + hour] + rate;
+            }
+            this.dailyCaps[cell] = dailyCaps[cell] == Long.MAX_VALUE ? Long.MAX_VALUE : dailyCaps[cell] * HOUR;
+        }
+        this.freeMillis = freeMillis;
+        this.timeZone = TimeZone.getDefault();
+    }
+
+    // the rates of the Fare constants: 30 free minutes, no band, no cap
+    public static Tariff defaults() {
+        Properties properties = new Properties();
+        properties.setProperty("freeMinutes", "30");
+        properties.setProperty("CAR.REGULAR.rate", String.valueOf(Fare.CAR_RATE_PER_HOUR));
+        properties.setProperty("CAR.RETURNING.rate", String.valueOf(Fare.DISCOUNT_CAR_RATE_PER_HOUR));
+        properties.setProperty("BIKE.REGULAR.rate", String.valueOf(Fare.BIKE_RATE_PER_HOUR));
+        properties.setProperty("BIKE.RETURNING.rate", String.valueOf(Fare.DISCOUNT_BIKE_RATE_PER_HOUR));
+        return parse(properties);
+    }
+
+    // IllegalArgumentException on an unknown key or an invalid value
+    public static Tariff parse(Properties properties) {
+        ParkingType[] parkingTypes = ParkingType.values();
+        boolean[] priced = new boolean[parkingTypes.length];
+        long[] rates = new long[parkingTypes.length * CLASSES * BANDS];
+        long[] dailyCaps = new long[parkingTypes.length * CLASSES];
+        int keys = 0;
+        for (ParkingType parkingType : parkingTypes) {
+            String regularRate = properties.getProperty(parkingType + "." + CustomerClass.REGULAR + ".rate");
+            if (regularRate == null) {
+                continue;
+            }
+            priced[parkingType.ordinal()] = true;
+            for (CustomerClass customerClass : CustomerClass.values()) {
+                String prefix = parkingType + "." + customerClass;
+                String classRate = properties.getProperty(prefix + ".rate");
+                keys += classRate == null ? 0 : 1;
+                long rate = thousandths(prefix + ".rate", classRate == null ? regularRate : classRate);
+                int cell = parkingType.ordinal() * CLASSES + customerClass.ordinal();
+                for (TariffBand band : TariffBand.values()) {
+                    String bandRate = properties.getProperty(prefix + ".rate." + band);
+                    keys += bandRate == null ? 0 : 1;
+                    rates[cell * BANDS + band.ordinal()] = bandRate == null ? rate : thousandths(prefix + ".rate." + band, bandRate);
+                }
+                String dailyCap = properties.getProperty(prefix + ".dailyCap");
+                keys += dailyCap == null ? 0 : 1;
+                dailyCaps[cell] = dailyCap == null ? Long.MAX_VALUE : thousandths(prefix + ".dailyCap", dailyCap);
+            }
+        }
+
+        long freeMinutes = 0;
+        String free = properties.getProperty("freeMinutes");
+        if (free != null) {
+            keys++;
+            freeMinutes = parseLong("freeMinutes", free);
+        }
+        byte[] bands = new byte[HOURS_PER_WEEK];
+        String night = properties.getProperty("night");
+        if (night != null) {
+            keys++;
+            String[] hours = night.trim().split("-");
+            if (hours.length != 2) {
+                throw new IllegalArgumentException("night must be <start hour>-<end hour>: " + night);
+            }
+            int start = (int) parseLong("night", hours[0]);
+            int end = (int) parseLong("night", hours[1]);
+            if (start > 23 || end > 23) {
+                throw new IllegalArgumentException("night hours must be 0 to 23: " + night);
+            }
+            // 22-6 wraps around midnight
+            for (int hour = start; hour != end; hour = (hour + 1) % 24) {
+                for (int day = 0; day < 7; day++) {
+                    bands[day * 24 + hour] = (byte) TariffBand.NIGHT.ordinal();
+                }
+            }
+        }
+        String weekend = properties.getProperty("weekend");
+        if (weekend != null) {
+            keys++;
+            for (String day : weekend.split(",")) {
+                DayOfWeek dayOfWeek;
+                try {
+                    dayOfWeek = DayOfWeek.valueOf(day.trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown weekend day: " + day, e);
+                }
+                for (int hour = 0; hour < 24; hour++) {
+                    bands[(dayOfWeek.getValue() - 1) * 24 + hour] = (byte) TariffBand.WEEKEND.ordinal();
+                }
+            }
+        }
+        // every key was counted once above, unless it is misspelled
+        if (keys != properties.size()) {
+            throw new IllegalArgumentException("Unknown tariff keys in " + properties.stringPropertyNames());
+        }
+        return new Tariff(priced, rates, dailyCaps, freeMinutes * 60 * 1000, bands);
+    }
+
+    // the price of the stay, rounded to the thousandth; IllegalArgumentException for an unpriced type
+    public double fare(ParkingType parkingType, boolean returning, long inTime, long outTime) {
+        int type = parkingType.ordinal();
+        if (!priced[type] || outTime < inTime) {
+            throw new IllegalArgumentException(priced[type] ? "Out time provided is incorrect" : "Unkown Parking Type");
+        }
+        int cell = type * CLASSES + (returning ? CustomerClass.RETURNING.ordinal() : CustomerClass.REGULAR.ordinal());
+        long cap = dailyCaps[cell];
+
+        long duration = outTime - inTime;
+        long charged = duration > freeMillis ? duration : 0;
+        long days = charged / DAY;
+        // from the start of the entry's week, at the entry's offset
+        long local = inTime + timeZone.getOffset(inTime);
+        // 1970-01-01 was a Thursday, day 3 of a week starting on Monday
+        long start = Math.floorMod(Math.floorDiv(local, DAY) + 3, 7) * DAY + Math.floorMod(local, DAY);
+
+        // day d of the stay costs what day d + 7 does, so at most 7 distinct days are priced
+        long price = 0;
+        long week = 0;
+        for (int day = 0; day < 7 && day < days; day++) {
+            long dayPrice = Math.min(cost(cell, start + day * DAY, start + (day + 1) * DAY), cap);
+            price += day < days % 7 ? dayPrice : 0;
+            week += dayPrice;
+        }
+        price += days / 7 * week;
+        price += Math.min(cost(cell, start + days * DAY, start + charged), cap);
+        return ((price + HOUR / 2) / HOUR) / 1000.0;
+    }
+
+    // cost of [from, to), both from the start of a week
+    private long cost(int cell, long from, long to) {
+        return costSinceWeekStart(cell, to) - costSinceWeekStart(cell, from);
+    }
+
+    private long costSinceWeekStart(int cell, long time) {
+        int hour = (int) (time % WEEK / HOUR);
+        return time / WEEK * weekCosts[cell * (HOURS_PER_WEEK + 1) + HOURS_PER_WEEK] * HOUR
+                + weekCosts[cell * (HOURS_PER_WEEK + 1) + hour] * HOUR
+                + time % HOUR * hourRates[cell * HOURS_PER_WEEK + hour];
+    }
+
+    private static long thousandths(String key, String value) {
+        try {
+            BigDecimal amount = new BigDecimal(value.trim());
+            if (amount.signum() < 0) {
+                throw new IllegalArgumentException(key + " must not be negative: " + value);
+            }
+            return amount.movePointRight(3).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not an amount: " + value, e);
+        }
+    }
+
+    private static long parseLong(String key, String value) {
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed < 0) {
+                throw new IllegalArgumentException(key + " must not be negative: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a number: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.parkit.parkingsystem.tariff;
+
+// The part of the week a stay starts in. WEEKEND wins over NIGHT.
+public enum TariffBand {
+    STANDARD,
+    NIGHT,
+    WEEKEND
+}
@@ -0,0 +1,118 @@
+package com.parkit.parkingsystem.tariff;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// The tariff of a properties file, read again when the file changes. A file that
+// does not parse is logged and the tariff in use is kept, so a bad edit never
+// stops the gates; fares always see one whole tariff, old or new.
+public class TariffFile implements AutoCloseable {
+
+    // -Dparkit.tariff.file=tariff.properties -Dparkit.tariff.reloadSeconds=10
+    public static final String FILE_PROPERTY = "parkit.tariff.file";
+    public static final String RELOAD_SECONDS_PROPERTY = "parkit.tariff.reloadSeconds";
+
+    private static final Logger logger = LogManager.getLogger("TariffFile");
+
+    private final Path path;
+    private final long intervalMillis;
+    private volatile Tariff tariff;
+    private FileTime lastModified;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private Thread thread;
+
+    // IOException or IllegalArgumentException when the file cannot be read as a tariff
+    public TariffFile(Path path, long interval, TimeUnit unit) throws IOException {
+        this.path = path;
+        this.intervalMillis = unit.toMillis(interval);
+        this.lastModified = Files.getLastModifiedTime(path);
+        this.tariff = read(path);
+    }
+
+    // started, or null when no tariff file is configured
+    public static TariffFile startFromSystemProperties() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null) {
+            return null;
+        }
+        try {
+            TariffFile tariffFile = new TariffFile(Paths.get(file), Long.getLong(RELOAD_SECONDS_PROPERTY, 10), TimeUnit.SECONDS);
+            tariffFile.start();
+            logger.info("Tariff read from " + file);
+            return tariffFile;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to read the tariff " + file + ", using the default rates", e);
+            return null;
+        }
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "tariff-reloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    // returns true when the file changed and its tariff is now in use
+    public synchronized boolean reload() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(path);
+            if (modified.equals(lastModified)) {
+                return false;
+            }
+            // a bad file is logged once, then again when it changes
+            lastModified = modified;
+            tariff = read(path);
+            logger.info("Tariff reloaded from " + path);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to reload the tariff " + path + ", keeping the current one", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        stopped.countDown();
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!stopped.await(intervalMillis, TimeUnit.MILLISECONDS)) {
+                reload();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Tariff read(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return Tariff.parse(properties);
+    }
+}
@@ -0,0 +1,8 @@
+-- GET_TICKET, GET_TICKET_WITH_VISITS and DISCOUNT_GET_TICKET: the plate's tickets, newest first
+create index IDX_TICKET_PLATE_IN_TIME on ticket(VEHICLE_REG_NUMBER, IN_TIME);
+
+-- GET_OPEN_TICKETS: MySQL has no partial index, so open tickets (OUT_TIME null) lead a covering index
+create index IDX_TICKET_OPEN on ticket(OUT_TIME, VEHICLE_REG_NUMBER, PARKING_NUMBER, IN_TIME, PRICE);
+
+-- GET_NEXT_PARKING_SPOT(_AFTER): min(PARKING_NUMBER) is read straight from the index
+create index IDX_PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER);
@@ -0,0 +1,7 @@
+-- sequence of the last journal event applied to the ticket and parking tables
+create table journal_checkpoint(
+ ID int PRIMARY KEY,
+ SEQUENCE bigint NOT NULL
+);
+
+insert into journal_checkpoint(ID, SEQUENCE) values(1, 0);
@@ -0,0 +1,11 @@
+-- months of OUT_TIME, as yyyymm, for which TicketArchiver created a ticket_history_<PARTITION_MONTH> table
+create table ticket_history_partition(
+ PARTITION_MONTH int PRIMARY KEY
+);
+
+-- tickets and last ticket id of every plate with archived tickets, so a visit count reads one row of history
+create table ticket_history_visits(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISITS int NOT NULL,
+ LAST_ID int NOT NULL
+);
@@ -0,0 +1,11 @@
+-- tickets closed, revenue and parked time per MINUTE, HOUR and DAY of OUT_TIME, by parking type and rate
+create table ticket_rollup(
+ GRANULARITY varchar(6) NOT NULL,
+ BUCKET DATETIME NOT NULL,
+ PARKING_TYPE varchar(10) NOT NULL,
+ DISCOUNT bool NOT NULL,
+ TICKETS int NOT NULL,
+ REVENUE double NOT NULL,
+ PARKED_SECONDS bigint NOT NULL,
+ PRIMARY KEY (GRANULARITY, BUCKET, PARKING_TYPE, DISCOUNT)
+);
@@ -0,0 +1,11 @@
+-- ticket_rollup as TicketRollupDAO.rebuild recomputes it, copied to ticket_rollup once every chunk succeeded
+create table ticket_rollup_rebuild(
+ GRANULARITY varchar(6) NOT NULL,
+ BUCKET DATETIME NOT NULL,
+ PARKING_TYPE varchar(10) NOT NULL,
+ DISCOUNT bool NOT NULL,
+ TICKETS int NOT NULL,
+ REVENUE double NOT NULL,
+ PARKED_SECONDS bigint NOT NULL,
+ PRIMARY KEY (GRANULARITY, BUCKET, PARKING_TYPE, DISCOUNT)
+);
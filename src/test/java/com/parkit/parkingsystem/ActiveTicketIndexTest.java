@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.ActiveTicketIndex;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ActiveTicketIndexTest {
+
+	private DataBaseConfig dataBaseConfig;
+	private TicketDAO ticketDAO;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBaseConfig = H2TestConfig.migrated();
+		execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, false, 'CAR'), (2, false, 'CAR')");
+		ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		ticketDAO.activeTicketIndex = new ActiveTicketIndex();
+	}
+
+	@Test
+	public void indexedTicketsAreCopies() {
+		ActiveTicketIndex index = new ActiveTicketIndex();
+		Ticket ticket = openTicket(7, 1, "ABCDEF");
+		index.put(ticket);
+		ticket.setPrice(99);
+
+		Ticket indexed = index.get("ABCDEF");
+		assertEquals(7, indexed.getId());
+		assertEquals(1, indexed.getParkingSpot().getId());
+		assertEquals(0, indexed.getPrice());
+		indexed.getParkingSpot().setAvailable(true);
+		assertFalse(index.get("ABCDEF").getParkingSpot().isAvailable());
+		assertNull(index.get("GHIJKL"));
+
+		// only the indexed ticket of the plate is removed
+		assertFalse(index.remove(openTicket(8, 1, "ABCDEF")));
+		assertTrue(index.remove(ticket));
+		assertNull(index.get("ABCDEF"));
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void savedTicketIsServedFromTheIndexUntilItIsClosed() throws Exception {
+		Ticket ticket = openTicket(0, 1, "ABCDEF");
+		assertTrue(ticketDAO.saveTicket(ticket));
+		assertEquals(1, ticketDAO.activeTicketIndex.size());
+		// the table no longer has it, the index still does
+		execute("delete from ticket");
+		assertEquals(ticket.getId(), ticketDAO.getTicket("ABCDEF").getId());
+
+		execute("insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME) values("
+				+ ticket.getId() + ", 1, 'ABCDEF', 0, current_timestamp)");
+		ticket.setOutTime(new Date());
+		ticket.setPrice(1.5);
+		try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+			assertTrue(ticketDAO.closeTicket(unitOfWork, ticket));
+			// removed once the close is committed
+			assertNotNull(ticketDAO.activeTicketIndex.get("ABCDEF"));
+			unitOfWork.commit();
+		}
+		assertNull(ticketDAO.activeTicketIndex.get("ABCDEF"));
+		assertEquals(0, ticketDAO.activeTicketIndex.size());
+	}
+
+	@Test
+	public void missIsReadFromTheTicketTable() throws Exception {
+		execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME) values(2, 'GHIJKL', 0, current_timestamp)");
+
+		Ticket ticket = ticketDAO.getTicket("GHIJKL");
+
+		assertNotNull(ticket);
+		assertEquals(2, ticket.getParkingSpot().getId());
+		assertNull(ticket.getOutTime());
+		assertNull(ticketDAO.getTicket("UNKNOWN"));
+	}
+
+	private static Ticket openTicket(int id, int parkingNumber, String vehicleRegNumber) {
+		Ticket ticket = new Ticket();
+		ticket.setId(id);
+		ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setInTime(new Date());
+		return ticket;
+	}
+
+	private void execute(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+}
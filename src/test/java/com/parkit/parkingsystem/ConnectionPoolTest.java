@@ -0,0 +1,146 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.ConnectionPoolSettings;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.PoolStatistics;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ConnectionPoolTest {
+
+	private List<Connection> physicalConnections;
+	private DataBaseConfig dataBaseConfig;
+	private ConnectionPoolSettings settings;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		physicalConnections = new ArrayList<>();
+		dataBaseConfig = new DataBaseConfig() {
+			@Override
+			protected Connection createConnection() throws SQLException {
+				Connection connection = mock(Connection.class);
+				when(connection.getAutoCommit()).thenReturn(true);
+				when(connection.isValid(anyInt())).thenReturn(true);
+				when(connection.prepareStatement(anyString())).thenAnswer(invocation -> mock(PreparedStatement.class));
+				physicalConnections.add(connection);
+				return connection;
+			}
+		};
+		settings = new ConnectionPoolSettings();
+		settings.setMinSize(1);
+		settings.setMaxSize(2);
+		settings.setAcquireTimeoutMillis(50);
+	}
+
+	@AfterEach
+	private void tearDown() {
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void closedConnectionIsReused() throws Exception {
+		dataBaseConfig.enablePooling(settings);
+
+		Connection first = dataBaseConfig.getConnection();
+		dataBaseConfig.closeConnection(first);
+		Connection second = dataBaseConfig.getConnection();
+		second.createStatement();
+		dataBaseConfig.closeConnection(second);
+
+		assertEquals(1, physicalConnections.size());
+		verify(physicalConnections.get(0), never()).close();
+		verify(physicalConnections.get(0), times(1)).createStatement();
+		assertTrue(first.isClosed());
+		assertThrows(SQLException.class, () -> first.createStatement());
+	}
+
+	@Test
+	public void acquireTimesOutWhenPoolIsExhausted() throws Exception {
+		dataBaseConfig.enablePooling(settings);
+
+		Connection first = dataBaseConfig.getConnection();
+		Connection second = dataBaseConfig.getConnection();
+
+		assertThrows(SQLTransientConnectionException.class, () -> dataBaseConfig.getConnection());
+		PoolStatistics statistics = dataBaseConfig.getPoolStatistics();
+		assertEquals(2, statistics.getActive());
+		assertEquals(0, statistics.getIdle());
+		assertEquals(1, statistics.getTimeoutCount());
+
+		dataBaseConfig.closeConnection(first);
+		dataBaseConfig.closeConnection(second);
+		assertEquals(2, dataBaseConfig.getPoolStatistics().getIdle());
+	}
+
+	@Test
+	public void invalidIdleConnectionIsReplaced() throws Exception {
+		settings.setValidationIntervalMillis(0);
+		dataBaseConfig.enablePooling(settings);
+		when(physicalConnections.get(0).isValid(anyInt())).thenReturn(false);
+
+		Connection connection = dataBaseConfig.getConnection();
+		connection.createStatement();
+
+		assertEquals(2, physicalConnections.size());
+		verify(physicalConnections.get(0), times(1)).close();
+		verify(physicalConnections.get(1), times(1)).createStatement();
+	}
+
+	@Test
+	public void idleConnectionsAboveMinimumAreEvicted() throws Exception {
+		settings.setIdleTimeoutMillis(-1);
+		ConnectionPool connectionPool = new ConnectionPool(dataBaseConfig, settings);
+
+		Connection first = connectionPool.acquire();
+		Connection second = connectionPool.acquire();
+		first.close();
+		second.close();
+		assertEquals(2, connectionPool.getStatistics().getIdle());
+
+		connectionPool.evictIdleConnections();
+
+		assertEquals(1, connectionPool.getStatistics().getIdle());
+		verify(physicalConnections.get(0), times(1)).close();
+		connectionPool.shutdown();
+	}
+
+	@Test
+	public void preparedStatementsAreCachedPerConnection() throws Exception {
+		settings.setMaxSize(1);
+		settings.setStatementCacheSize(1);
+		dataBaseConfig.enablePooling(settings);
+
+		for (int i = 0; i < 3; i++) {
+			Connection connection = dataBaseConfig.getConnection();
+			PreparedStatement ps = connection.prepareStatement(DBConstants.DISCOUNT_GET_TICKET);
+			ps.setString(1, "ABCDEF");
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(connection);
+		}
+		Connection connection = dataBaseConfig.getConnection();
+		connection.prepareStatement(DBConstants.GET_TICKET).close();
+		connection.close();
+
+		Connection physical = physicalConnections.get(0);
+		verify(physical, times(1)).prepareStatement(DBConstants.DISCOUNT_GET_TICKET);
+		verify(physical, times(1)).prepareStatement(DBConstants.GET_TICKET);
+		PoolStatistics statistics = dataBaseConfig.getPoolStatistics();
+		assertEquals(2, statistics.getStatementCacheHits());
+		assertEquals(2, statistics.getStatementCacheMisses());
+	}
+}
@@ -0,0 +1,112 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.EventJournal;
+import com.parkit.parkingsystem.journal.JournalEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventJournalTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void eventsAreReadBackInOrderAfterReopening() throws Exception {
+		try (EventJournal journal = new EventJournal(directory, SEGMENT_SIZE)) {
+			assertEquals(1, journal.appendAndSync(event(JournalEvent.Type.ENTER, 1, "ABCDEF")));
+			assertEquals(2, journal.appendAndSync(event(JournalEvent.Type.EXIT, 1, "ABCDEF")));
+		}
+
+		try (EventJournal journal = new EventJournal(directory, SEGMENT_SIZE)) {
+			List<JournalEvent> events = readAll(journal, 0);
+			assertEquals(2, events.size());
+			assertEquals(JournalEvent.Type.ENTER, events.get(0).getType());
+			assertEquals(JournalEvent.Type.EXIT, events.get(1).getType());
+			assertEquals("ABCDEF", events.get(1).getVehicleRegNumber());
+			assertEquals(1.5, events.get(1).getPrice());
+			assertFalse(events.get(0).isDiscount());
+			assertTrue(events.get(1).isDiscount());
+			assertEquals(3, journal.appendAndSync(event(JournalEvent.Type.ENTER, 2, "GHIJKL")));
+			assertEquals(1, readAll(journal, 2).size());
+		}
+	}
+
+	@Test
+	public void rollsSegmentsAndTruncatesTheAppliedOnes() throws Exception {
+		try (EventJournal journal = new EventJournal(directory, SEGMENT_SIZE)) {
+			for (int i = 1; i <= 300; i++) {
+				journal.append(event(JournalEvent.Type.ENTER, i, "CAR" + i));
+			}
+			journal.awaitDurable(300);
+			assertTrue(journal.getSegmentCount() > 1);
+
+			List<JournalEvent> events = readAll(journal, 0);
+			assertEquals(300, events.size());
+			for (int i = 0; i < events.size(); i++) {
+				assertEquals(i + 1, events.get(i).getSequence());
+				assertEquals(i + 1, events.get(i).getTicketId());
+			}
+
+			assertTrue(journal.truncateBefore(250) > 0);
+			assertEquals(50, readAll(journal, 250).size());
+		}
+		try (EventJournal journal = new EventJournal(directory, SEGMENT_SIZE)) {
+			assertEquals(300, journal.getLastSequence());
+		}
+	}
+
+	@Test
+	public void dropsATornRecordLeftByACrash() throws Exception {
+		try (EventJournal journal = new EventJournal(directory, SEGMENT_SIZE)) {
+			journal.appendAndSync(event(JournalEvent.Type.ENTER, 1, "ABCDEF"));
+		}
+		Path segment;
+		try (Stream<Path> files = Files.list(directory)) {
+			segment = files.findFirst().orElseThrow(IOException::new);
+		}
+		// a length and half a body, as if the process died while appending
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			ByteBuffer torn = ByteBuffer.allocate(20).putInt(60).putInt(12345).putLong(2);
+			torn.flip();
+			channel.write(torn, 8 + 44 + 6);
+		}
+
+		try (EventJournal journal = new EventJournal(directory, SEGMENT_SIZE)) {
+			assertEquals(1, journal.getLastSequence());
+			assertEquals(2, journal.appendAndSync(event(JournalEvent.Type.EXIT, 1, "ABCDEF")));
+			assertEquals(2, readAll(journal, 0).size());
+		}
+	}
+
+	private static JournalEvent event(JournalEvent.Type type, int ticketId, String vehicleRegNumber) {
+		long inTime = System.currentTimeMillis() - (60 * 60 * 1000);
+		return new JournalEvent(0, type, ticketId, vehicleRegNumber, 1, ParkingType.CAR, inTime,
+				type == JournalEvent.Type.EXIT ? System.currentTimeMillis() : 0, type == JournalEvent.Type.EXIT ? 1.5 : 0,
+				type == JournalEvent.Type.EXIT);
+	}
+
+	private static List<JournalEvent> readAll(EventJournal journal, long afterSequence) throws IOException {
+		List<JournalEvent> events = new ArrayList<>();
+		EventJournal.Reader reader = journal.reader(afterSequence);
+		JournalEvent event;
+		while ((event = reader.next()) != null) {
+			events.add(event);
+		}
+		return events;
+	}
+}
@@ -0,0 +1,160 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.InMemoryStorageEngine;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.service.GateEndpoint;
+import com.parkit.parkingsystem.service.GateServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateEndpointTest {
+
+	private GateServer gateServer;
+	private GateEndpoint gateEndpoint;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		InMemoryStorageEngine storageEngine = new InMemoryStorageEngine(3, 2);
+		gateServer = new GateServer(new ParkingService(storageEngine.getParkingSpotStore(), storageEngine.getTicketStore()), 4);
+		gateEndpoint = new GateEndpoint(gateServer, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		gateEndpoint.close();
+		gateServer.close();
+	}
+
+	@Test
+	public void answersPipelinedRequestsByTag() throws Exception {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateEndpoint.getLocalAddress().getPort())) {
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+			out.write("1 ENTER AAA CAR\n2 ENTER BBB BIKE\n3 QUERY BIKE\n4 FLY AAA\n5 ENTER CCC TRUCK\n"
+					.getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			Map<String, String> answers = readAnswers(in, 5);
+			assertTrue(answers.get("1").startsWith("PARKED "));
+			assertTrue(answers.get("2").startsWith("PARKED "));
+			assertTrue(answers.get("3").matches("FREE \\d+|LOT_FULL"));
+			assertEquals("ERROR unknown request", answers.get("4"));
+			assertEquals("INVALID_REQUEST", answers.get("5"));
+
+			out.write("6 EXIT AAA\n7 EXIT ZZZ\n".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			answers = readAnswers(in, 2);
+			assertTrue(answers.get("6").startsWith("EXITED " + 1 + " "));
+			assertEquals("NO_OPEN_TICKET", answers.get("7"));
+		}
+	}
+
+	@Test
+	public void loadClientRunsEveryVehicleThroughEntryAndExit() throws Exception {
+		GateLoadClient client = new GateLoadClient("127.0.0.1", gateEndpoint.getLocalAddress().getPort(), 200, 2);
+
+		long[][] latencies = client.run(1);
+
+		assertEquals(400, latencies[0].length);
+		assertEquals(200, client.getStatuses().get("PARKED").get());
+		assertEquals(200, client.getStatuses().get("EXITED").get());
+	}
+
+	@Test
+	public void failingRequestOnlyDisconnectsItsGate() throws Exception {
+		// requests are rejected once the gate server is shut down
+		gateServer.close();
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateEndpoint.getLocalAddress().getPort())) {
+			socket.getOutputStream().write("1 ENTER AAA CAR\n".getBytes(StandardCharsets.US_ASCII));
+			socket.getOutputStream().flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			assertNull(in.readLine());
+		}
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateEndpoint.getLocalAddress().getPort())) {
+			socket.getOutputStream().write("2 FLY AAA\n".getBytes(StandardCharsets.US_ASCII));
+			socket.getOutputStream().flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			assertEquals("2 ERROR unknown request", in.readLine());
+		}
+	}
+
+	@Test
+	public void lineTooLongIsAnsweredThenTheGateIsDisconnected() throws Exception {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateEndpoint.getLocalAddress().getPort())) {
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+			out.write(("1 ENTER AAA CAR\n2 ENTER " + "A".repeat(300)).getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			Map<String, String> answers = readAnswers(in, 2);
+			assertTrue(answers.get("1").startsWith("PARKED "));
+			assertEquals("ERROR line too long", answers.get("*"));
+			assertNull(in.readLine());
+		}
+	}
+
+	@Test
+	public void gateNotReadingItsAnswersIsNotReadEither() throws Exception {
+		Counter outputBackpressure = Metrics.counter("GateEndpoint.outputBackpressure");
+		long before = outputBackpressure.getCount();
+		try (Socket socket = new Socket()) {
+			socket.setReceiveBufferSize(4096);
+			socket.connect(gateEndpoint.getLocalAddress());
+			OutputStream out = socket.getOutputStream();
+			// about 10MB of "ERROR unknown request" answers, more than the socket buffers hold
+			byte[] requests = "1 FLY\n".repeat(1000).getBytes(StandardCharsets.US_ASCII);
+			CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+				try {
+					for (int i = 0; i < 400; i++) {
+						out.write(requests);
+					}
+					out.flush();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (outputBackpressure.getCount() == before && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertTrue(outputBackpressure.getCount() > before, "the endpoint kept reading");
+
+			// reading the answers resumes the requests
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			for (int i = 0; i < 400 * 1000; i++) {
+				assertEquals("1 ERROR unknown request", in.readLine());
+			}
+			writer.get(10, TimeUnit.SECONDS);
+		}
+	}
+
+	private static Map<String, String> readAnswers(BufferedReader in, int count) throws Exception {
+		Map<String, String> answers = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			String line = in.readLine();
+			int space = line.indexOf(' ');
+			answers.put(line.substring(0, space), line.substring(space + 1));
+		}
+		return answers;
+	}
+}
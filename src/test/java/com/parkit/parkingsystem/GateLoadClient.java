@@ -0,0 +1,137 @@
+package com.parkit.parkingsystem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives a GateEndpoint with simulated gates and prints the sustained throughput
+// and latency percentiles. Every vehicle enters, and exits once its entry is answered:
+//   java ... GateLoadClient <host> <port> <gates> <vehicles per gate> <requests in flight per gate>
+public class GateLoadClient {
+
+    private final String host;
+    private final int port;
+    private final int vehiclesPerGate;
+    private final int pipelineDepth;
+    private final Map<String, AtomicLong> statuses = new ConcurrentSkipListMap<>();
+
+    public GateLoadClient(String host, int port, int vehiclesPerGate, int pipelineDepth) {
+        this.host = host;
+        this.port = port;
+        this.vehiclesPerGate = vehiclesPerGate;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 5) {
+            System.out.println("Usage: GateLoadClient <host> <port> <gates> <vehicles per gate> <requests in flight per gate>");
+            return;
+        }
+        GateLoadClient client = new GateLoadClient(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[3]),
+                Integer.parseInt(args[4]));
+        int gates = Integer.parseInt(args[2]);
+        long start = System.nanoTime();
+        long[][] latencies = client.run(gates);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d requests from %d gates in %.2fs: %.0f requests/s%n", all.length, gates, seconds,
+                all.length / seconds);
+        System.out.printf("latency p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms%n", percentile(all, 0.5),
+                percentile(all, 0.99), percentile(all, 0.999), percentile(all, 1));
+        System.out.println("answers " + client.statuses);
+    }
+
+    public long[][] run(int gates) throws InterruptedException {
+        long[][] latencies = new long[gates][];
+        Thread[] threads = new Thread[gates];
+        for (int g = 0; g < gates; g++) {
+            int gate = g;
+            threads[g] = new Thread(() -> {
+                try {
+                    latencies[gate] = runGate("G" + gate);
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException("Gate G" + gate + " failed", e);
+                }
+            });
+            threads[g].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return latencies;
+    }
+
+    public Map<String, AtomicLong> getStatuses() {
+        return statuses;
+    }
+
+    // one connection per gate: this thread sends the entries, the reader answers each entry with its exit
+    private long[] runGate(String gate) throws IOException, InterruptedException {
+        long[] latencies = new long[vehiclesPerGate * 2];
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Semaphore window = new Semaphore(pipelineDepth);
+            Map<String, Long> sentAt = new ConcurrentHashMap<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    int answers = 0;
+                    String line;
+                    while (answers < latencies.length && (line = in.readLine()) != null) {
+                        String[] answer = line.split(" ");
+                        Long sent = sentAt.remove(answer[0]);
+                        if (sent != null) {
+                            latencies[answers++] = System.nanoTime() - sent;
+                        }
+                        statuses.computeIfAbsent(answer[1], s -> new AtomicLong()).incrementAndGet();
+                        String vehicle = answer[0].substring(0, answer[0].length() - 1);
+                        if (answer[0].endsWith("e")) {
+                            // the exit reuses the entry's slot in the window
+                            send(out, sentAt, vehicle + "x EXIT " + vehicle);
+                        } else {
+                            window.release();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Gate " + gate + " lost its connection", e);
+                }
+            });
+            reader.start();
+            for (int i = 0; i < vehiclesPerGate; i++) {
+                window.acquire();
+                String vehicle = gate + "-" + i;
+                send(out, sentAt, vehicle + "e ENTER " + vehicle + " CAR");
+            }
+            reader.join();
+        }
+        return latencies;
+    }
+
+    private static void send(OutputStream out, Map<String, Long> sentAt, String request) throws IOException {
+        sentAt.put(request.substring(0, request.indexOf(' ')), System.nanoTime());
+        byte[] bytes = (request + "\n").getBytes(StandardCharsets.US_ASCII);
+        synchronized (out) {
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,83 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InMemoryStorageEngine;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.GateServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateServerTest {
+
+	@Test
+	public void runsGateEventsConcurrentlyWithinTheInFlightCap() throws Exception {
+		InMemoryStorageEngine storageEngine = new InMemoryStorageEngine(60, 0);
+		SlowParkingSpotStore parkingSpotStore = new SlowParkingSpotStore(storageEngine.getParkingSpotStore());
+		ParkingService parkingService = new ParkingService(parkingSpotStore, storageEngine.getTicketStore());
+
+		List<CompletableFuture<EntryResult>> entries = new ArrayList<>();
+		try (GateServer gateServer = new GateServer(parkingService, 4)) {
+			for (int i = 0; i < 60; i++) {
+				entries.add(gateServer.enter("GATE" + i, ParkingType.CAR));
+			}
+			CompletableFuture.allOf(entries.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+		}
+
+		Set<Integer> spots = new HashSet<>();
+		for (CompletableFuture<EntryResult> entry : entries) {
+			assertTrue(entry.get().isParked());
+			assertTrue(spots.add(entry.get().getParkingNumber()));
+		}
+		assertTrue(parkingSpotStore.maxConcurrent.get() <= 4);
+		assertTrue(parkingSpotStore.maxConcurrent.get() > 1);
+	}
+
+	// records how many callers are inside the store at once
+	private static final class SlowParkingSpotStore implements ParkingSpotStore {
+		private final InMemoryParkingSpotStore delegate;
+		private final AtomicInteger concurrent = new AtomicInteger();
+		private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		private SlowParkingSpotStore(InMemoryParkingSpotStore delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public int getNextAvailableSlot(ParkingType parkingType) {
+			return delegate.getNextAvailableSlot(parkingType);
+		}
+
+		@Override
+		public int claimNextAvailableSlot(UnitOfWork unitOfWork, ParkingType parkingType) {
+			maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(5);
+				return delegate.claimNextAvailableSlot(unitOfWork, parkingType);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return -1;
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		}
+
+		@Override
+		public boolean releaseParkingSpot(UnitOfWork unitOfWork, ParkingSpot parkingSpot) {
+			return delegate.releaseParkingSpot(unitOfWork, parkingSpot);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InMemoryStorageEngine;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class InMemoryStorageEngineTest {
+
+	@Mock
+	private InputReaderUtil inputReaderUtil;
+
+	private InMemoryParkingSpotStore parkingSpotStore;
+	private InMemoryTicketStore ticketStore;
+	private ParkingService parkingService;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		InMemoryStorageEngine storageEngine = new InMemoryStorageEngine(3, 2);
+		parkingSpotStore = storageEngine.getParkingSpotStore();
+		ticketStore = storageEngine.getTicketStore();
+		parkingService = new ParkingService(inputReaderUtil, parkingSpotStore, ticketStore);
+	}
+
+	@Test
+	public void parkingAndExitingFreesTheSpotAndCountsTheVisit() throws Exception {
+		when(inputReaderUtil.readSelection()).thenReturn(1);
+		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+
+		parkingService.processIncomingVehicle();
+		assertEquals(2, parkingSpotStore.getAvailableCount(ParkingType.CAR));
+		assertEquals(1, ticketStore.getOpenTicketCount());
+
+		parkingService.processExitingVehicle();
+		assertEquals(3, parkingSpotStore.getAvailableCount(ParkingType.CAR));
+		assertEquals(0, ticketStore.getOpenTicketCount());
+		try (UnitOfWork unitOfWork = ticketStore.beginUnitOfWork()) {
+			assertEquals(1, ticketStore.getNbTicket(unitOfWork, "ABCDEF"));
+		}
+	}
+
+	@Test
+	public void rolledBackEntryLeavesNoTraces() throws Exception {
+		try (UnitOfWork unitOfWork = ticketStore.beginUnitOfWork()) {
+			int parkingNumber = parkingSpotStore.claimNextAvailableSlot(unitOfWork, ParkingType.BIKE);
+			assertEquals(4, parkingNumber);
+			Ticket ticket = new Ticket();
+			ticket.setVehicleRegNumber("GHIJKL");
+			ticket.setInTime(new Date());
+			ticketStore.saveTicket(unitOfWork, ticket);
+		}
+
+		assertEquals(2, parkingSpotStore.getAvailableCount(ParkingType.BIKE));
+		assertEquals(0, ticketStore.getOpenTicketCount());
+		try (UnitOfWork unitOfWork = ticketStore.beginUnitOfWork()) {
+			assertNull(ticketStore.getTicketWithVisits(unitOfWork, "GHIJKL"));
+		}
+	}
+
+	@Test
+	public void gatesEnteringAndExitingInParallelNeverShareASpot() throws Exception {
+		int capacity = 200;
+		InMemoryStorageEngine storageEngine = new InMemoryStorageEngine(capacity, 0);
+		ParkingService headless = new ParkingService(storageEngine.getParkingSpotStore(), storageEngine.getTicketStore());
+		int gates = 12;
+		Set<Integer> occupied = ConcurrentHashMap.newKeySet();
+		AtomicInteger sharedSpots = new AtomicInteger();
+		AtomicInteger failures = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(gates);
+		for (int g = 0; g < gates; g++) {
+			String gate = "G" + g;
+			executor.execute(() -> {
+				for (int i = 0; i < 2000; i++) {
+					String plate = gate + "-" + (i % 10);
+					EntryResult entry = headless.enter(plate, ParkingType.CAR);
+					if (!entry.isParked()) {
+						failures.incrementAndGet();
+						continue;
+					}
+					if (!occupied.add(entry.getParkingNumber())) {
+						sharedSpots.incrementAndGet();
+					}
+					occupied.remove(entry.getParkingNumber());
+					if (!headless.exit(plate).isExited()) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(0, sharedSpots.get());
+		assertEquals(0, failures.get());
+		assertEquals(capacity, storageEngine.getParkingSpotStore().getAvailableCount(ParkingType.CAR));
+		assertEquals(0, storageEngine.getTicketStore().getOpenTicketCount());
+	}
+}
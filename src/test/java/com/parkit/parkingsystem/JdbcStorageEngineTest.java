@@ -0,0 +1,27 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.JdbcStorageEngine;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcStorageEngineTest {
+
+	@Test
+	public void failedMigrationStopsTheStart() throws Exception {
+		DataBaseConfig dataBaseConfig = H2TestConfig.empty();
+		// created by hand, V1 cannot create it
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute("create table parking(PARKING_NUMBER int PRIMARY KEY)");
+		}
+
+		IllegalStateException failure = assertThrows(IllegalStateException.class,
+				() -> new JdbcStorageEngine(dataBaseConfig));
+		assertEquals("Unable to migrate the DB schema", failure.getMessage());
+	}
+}
@@ -0,0 +1,136 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.JdbcTracer;
+import com.parkit.parkingsystem.config.OperationStatistics;
+import com.parkit.parkingsystem.config.TracedOperation;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcTracerTest {
+
+	private DataBaseConfig dataBaseConfig;
+	private ParkingSpotDAO parkingSpotDAO;
+	private TicketDAO ticketDAO;
+	private ParkingService parkingService;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBaseConfig = H2TestConfig.migrated();
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, true, 'CAR'), (2, true, 'CAR')");
+		}
+		dataBaseConfig.enableTracing(1000);
+		JdbcTracer.reset();
+
+		parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+		ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+	}
+
+	// tracing is global, the other tests run untraced
+	@AfterEach
+	private void tearDownPerTest() {
+		JdbcTracer.disable();
+		JdbcTracer.reset();
+	}
+
+	@Test
+	public void entryAndExitStayWithinTheirRoundTripBudget() {
+		TracedOperation entry = JdbcTracer.begin("test.enter");
+		try (entry) {
+			assertTrue(parkingService.enter("ABCDEF", ParkingType.CAR).isParked());
+		}
+		// autocommit off, spot lookup, claim, visit count, insert, commit, autocommit back on
+		assertEquals(7, entry.getRoundTrips());
+		assertEquals(1, entry.getCommits());
+		assertEquals(List.of("GET_NEXT_PARKING_SPOT", "CLAIM_PARKING_SPOT", "DISCOUNT_GET_TICKET", "SAVE_TICKET"),
+				List.copyOf(entry.getQueries().keySet()));
+
+		TracedOperation exit = JdbcTracer.begin("test.exit");
+		try (exit) {
+			assertTrue(parkingService.exit("ABCDEF").isExited());
+		}
+		// autocommit off, ticket with visits, one batch for the close, its rollups and the spot release,
+		// commit, autocommit back on
+		assertEquals(5, exit.getRoundTrips());
+		assertEquals(1, exit.getCommits());
+		assertEquals(List.of("GET_TICKET_WITH_VISITS", "CLOSE_TICKET", "ADD_TICKET_ROLLUP", "UPDATE_PARKING_SPOT"),
+				List.copyOf(exit.getQueries().keySet()));
+		assertEquals(1, exit.getQueries().get("CLOSE_TICKET").getRows());
+		assertEquals(1, exit.getQueries().get("UPDATE_PARKING_SPOT").getRows());
+		// minute, hour and day
+		assertEquals(3, exit.getQueries().get("ADD_TICKET_ROLLUP").getStatements());
+		assertEquals(1, exit.getQueries().get("ADD_TICKET_ROLLUP").getRoundTrips());
+	}
+
+	@Test
+	public void statisticsAddUpPerOperation() {
+		assertTrue(parkingService.enter("ABCDEF", ParkingType.CAR).isParked());
+		assertTrue(parkingService.enter("GHIJKL", ParkingType.CAR).isParked());
+		assertFalse(parkingService.exit("MNOPQR").isExited());
+
+		OperationStatistics entries = JdbcTracer.getStatistics("ParkingService.enter");
+		assertEquals(2, entries.getCount());
+		assertEquals(2, entries.getCommits());
+		assertEquals(7, entries.getAverageRoundTrips());
+		assertEquals(2, entries.getQueries().get("SAVE_TICKET").getStatements());
+		OperationStatistics exits = JdbcTracer.getStatistics("ParkingService.exit");
+		// no ticket found, the unit of work is rolled back: autocommit off, lookup, rollback, autocommit on
+		assertEquals(1, exits.getCount());
+		assertEquals(0, exits.getCommits());
+		assertEquals(4, exits.getRoundTrips());
+		assertEquals(0, exits.getRows());
+	}
+
+	@Test
+	public void closeFoundStaleWhenTheBatchRunsIsRolledBack() throws Exception {
+		assertTrue(parkingService.enter("ABCDEF", ParkingType.CAR).isParked());
+		try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+			Ticket ticket = ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF").getTicket();
+			// another gate closes it between the read and the batch
+			execute("update ticket set OUT_TIME = current_timestamp");
+			ticket.setOutTime(new Date());
+			ticket.setPrice(1.5);
+
+			assertTrue(ticketDAO.closeTicket(unitOfWork, ticket));
+			assertTrue(parkingSpotDAO.releaseParkingSpot(unitOfWork, ticket.getParkingSpot()));
+			assertFalse(unitOfWork.executeBatch());
+		}
+		// the release and the rollups went with the close
+		assertEquals(0, count("select count(*) from parking where AVAILABLE = true and PARKING_NUMBER = 1"));
+		assertEquals(0, count("select count(*) from ticket_rollup"));
+	}
+
+	private void execute(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private int count(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.JournaledStorageEngine;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import com.parkit.parkingsystem.journal.EventJournal;
+import com.parkit.parkingsystem.journal.JournalEvent;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournaledStorageEngineTest {
+
+	@TempDir
+	Path journalDirectory;
+
+	private DataBaseConfig dataBaseConfig;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBaseConfig = H2TestConfig.migrated();
+		execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, true, 'CAR'), (2, true, 'CAR'), (3, true, 'BIKE')");
+	}
+
+	@Test
+	public void entriesAndExitsReachTheTablesThroughTheJournal() throws Exception {
+		JournaledStorageEngine storageEngine = new JournaledStorageEngine(dataBaseConfig, journalDirectory);
+		ParkingService parkingService = new ParkingService(storageEngine.getParkingSpotStore(),
+				storageEngine.getTicketStore());
+
+		EntryResult entry = parkingService.enter("ABCDEF", ParkingType.CAR);
+		assertTrue(entry.isParked());
+		assertEquals(1, entry.getParkingNumber());
+		ExitResult exit = parkingService.exit("ABCDEF");
+		assertTrue(exit.isExited());
+		assertEquals(2, storageEngine.getJournal().getDurableSequence());
+		storageEngine.shutdown();
+
+		assertEquals(2, queryInt("select SEQUENCE from journal_checkpoint"));
+		assertEquals(1, queryInt("select count(*) from ticket where VEHICLE_REG_NUMBER = 'ABCDEF' and OUT_TIME is not null"));
+		assertEquals(2, queryInt("select count(*) from parking where TYPE = 'CAR' and AVAILABLE = true"));
+	}
+
+	@Test
+	public void eventsNotYetAppliedAreReplayedOnStart() throws Exception {
+		Ticket ticket = new Ticket();
+		ticket.setId(1);
+		ticket.setVehicleRegNumber("ABCDEF");
+		ticket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+		ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+		// the process stopped after journaling the entry, before the projector ran
+		try (EventJournal journal = new EventJournal(journalDirectory)) {
+			journal.appendAndSync(JournalEvent.entered(ticket));
+		}
+
+		JournaledStorageEngine storageEngine = new JournaledStorageEngine(dataBaseConfig, journalDirectory);
+		assertEquals(1, queryInt("select count(*) from ticket where OUT_TIME is null"));
+		assertEquals(1, storageEngine.getTicketStore().getOpenTicketCount());
+		ParkingService parkingService = new ParkingService(storageEngine.getParkingSpotStore(),
+				storageEngine.getTicketStore());
+
+		assertEquals(1, parkingService.enter("GHIJKL", ParkingType.CAR).getParkingNumber());
+		assertEquals(EntryResult.Status.LOT_FULL, parkingService.enter("MNOPQR", ParkingType.CAR).getStatus());
+		ExitResult exit = parkingService.exit("ABCDEF");
+		assertTrue(exit.isExited());
+		assertEquals(2, exit.getParkingNumber());
+		storageEngine.shutdown();
+
+		assertEquals(2, queryInt("select max(ID) from ticket"));
+		assertEquals(1, queryInt("select count(*) from ticket where OUT_TIME is not null"));
+	}
+
+	@Test
+	public void restartsFromTheSnapshotWithoutReadingTheTables() throws Exception {
+		JournaledStorageEngine storageEngine = new JournaledStorageEngine(dataBaseConfig, journalDirectory);
+		ParkingService parkingService = new ParkingService(storageEngine.getParkingSpotStore(),
+				storageEngine.getTicketStore());
+		parkingService.enter("ABCDEF", ParkingType.CAR);
+		parkingService.exit("ABCDEF");
+		parkingService.enter("ABCDEF", ParkingType.CAR);
+		storageEngine.shutdown();
+		assertEquals(3, storageEngine.getSnapshotter().getSnapshotSequence());
+
+		// the restarted engine must not rebuild its state from these rows
+		execute("delete from ticket");
+		execute("update parking set AVAILABLE = true");
+
+		storageEngine = new JournaledStorageEngine(dataBaseConfig, journalDirectory);
+		parkingService = new ParkingService(storageEngine.getParkingSpotStore(), storageEngine.getTicketStore());
+		assertEquals(1, storageEngine.getTicketStore().getOpenTicketCount());
+		assertEquals(2, parkingService.enter("GHIJKL", ParkingType.CAR).getParkingNumber());
+		ExitResult exit = parkingService.exit("ABCDEF");
+		assertTrue(exit.isExited());
+		assertTrue(exit.isDiscountApplied());
+		storageEngine.shutdown();
+	}
+
+	private void execute(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private int queryInt(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				Statement statement = con.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			assertTrue(rs.next());
+			return rs.getInt(1);
+		}
+	}
+}
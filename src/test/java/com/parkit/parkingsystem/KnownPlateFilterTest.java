@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.KnownPlateFilter;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KnownPlateFilterTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void addedPlatesAreAlwaysKnownWhileTheFilterGrows() {
+		KnownPlateFilter filter = new KnownPlateFilter(1000, 0.01);
+		for (int i = 0; i < 20000; i++) {
+			filter.add("AB-" + i);
+		}
+
+		for (int i = 0; i < 20000; i++) {
+			assertTrue(filter.mightContain("AB-" + i));
+		}
+		assertTrue(filter.getStageCount() > 1);
+	}
+
+	@Test
+	public void falsePositiveRateStaysUnderTarget() {
+		KnownPlateFilter filter = new KnownPlateFilter(1000, 0.01);
+		for (int i = 0; i < 20000; i++) {
+			filter.add("AB-" + i);
+		}
+
+		int falsePositives = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (filter.mightContain("ZZ-" + i)) {
+				falsePositives++;
+			}
+		}
+		assertTrue(falsePositives < 1000, "false positives: " + falsePositives);
+	}
+
+	@Test
+	public void savedFilterIsReloadedWithItsTicketWatermark() throws Exception {
+		KnownPlateFilter filter = new KnownPlateFilter(100, 0.01);
+		filter.add("ABCDEF");
+		filter.recordTicketId(42);
+		Path file = tempDir.resolve("known-plates.bloom");
+
+		filter.save(file);
+		KnownPlateFilter reloaded = KnownPlateFilter.load(file);
+
+		assertTrue(reloaded.mightContain("ABCDEF"));
+		assertFalse(reloaded.mightContain("GHIJKL"));
+		assertEquals(42, reloaded.getHighestTicketId());
+		assertEquals(1, reloaded.getNegativeCount());
+	}
+
+	@Test
+	public void savedFilterAheadOfTheTicketTableIsRebuilt() throws Exception {
+		// written before the DB was restored to a backup holding ticket 1 only
+		KnownPlateFilter filter = new KnownPlateFilter(100, 0.01);
+		filter.add("ABCDEF");
+		filter.recordTicketId(42);
+		Path file = tempDir.resolve("known-plates.bloom");
+		filter.save(file);
+		DataBaseConfig dataBaseConfig = H2TestConfig.migrated();
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, true, 'CAR')");
+			statement.execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)"
+					+ " values(1, 'RESTORED', 1.5, '2024-01-10 10:00:00', '2024-01-10 11:00:00')");
+		}
+		TicketDAO ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+
+		ticketDAO.loadKnownPlateFilter(file);
+
+		assertTrue(ticketDAO.knownPlateFilter.mightContain("RESTORED"));
+		assertFalse(ticketDAO.knownPlateFilter.mightContain("ABCDEF"));
+		assertEquals(1, ticketDAO.knownPlateFilter.getHighestTicketId());
+		assertEquals(1, ticketDAO.getNbTicket("RESTORED"));
+	}
+}
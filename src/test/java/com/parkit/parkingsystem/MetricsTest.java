@@ -0,0 +1,82 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryStorageEngine;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.LatencySnapshot;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+	@Test
+	public void percentilesAreWithinThreePercentOfTheRecordedValues() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500500, snapshot.getMean(), 0.001);
+		assertEquals(1000000, snapshot.getMax());
+		assertEquals(500000, snapshot.getValueAtPercentile(50), 500000 * 0.032);
+		assertEquals(990000, snapshot.getValueAtPercentile(99), 990000 * 0.032);
+		assertEquals(1000000, snapshot.getValueAtPercentile(100));
+		assertEquals(0, new LatencyHistogram("empty").snapshot().getValueAtPercentile(99));
+	}
+
+	@Test
+	public void concurrentRecordingLosesNoValue() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			executor.submit(() -> {
+				for (int i = 0; i < 100000; i++) {
+					histogram.record(i);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(800000, histogram.snapshot().getCount());
+		assertEquals(99999, histogram.snapshot().getMax());
+	}
+
+	@Test
+	public void outcomesAndLatenciesAreReadableOverJmx() throws Exception {
+		Metrics.registerMBeans();
+		InMemoryStorageEngine storageEngine = new InMemoryStorageEngine(1, 1);
+		ParkingService parkingService = new ParkingService(storageEngine.getParkingSpotStore(), storageEngine.getTicketStore());
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName lotFull = new ObjectName("com.parkit.parkingsystem:type=Counter,name=ParkingService.enter.LOT_FULL");
+		ObjectName noOpenTicket = new ObjectName("com.parkit.parkingsystem:type=Counter,name=ParkingService.exit.NO_OPEN_TICKET");
+		ObjectName enter = new ObjectName("com.parkit.parkingsystem:type=Latency,name=ParkingService.enter");
+		long lotFullBefore = (Long) server.getAttribute(lotFull, "Count");
+		long noOpenTicketBefore = (Long) server.getAttribute(noOpenTicket, "Count");
+		long enterBefore = (Long) server.getAttribute(enter, "Count");
+
+		assertEquals(EntryResult.Status.PARKED, parkingService.enter("ABCDEF", ParkingType.CAR).getStatus());
+		assertEquals(EntryResult.Status.LOT_FULL, parkingService.enter("GHIJKL", ParkingType.CAR).getStatus());
+		assertEquals(ExitResult.Status.NO_OPEN_TICKET, parkingService.exit("MNOPQR").getStatus());
+
+		assertEquals(lotFullBefore + 1, (Long) server.getAttribute(lotFull, "Count"));
+		assertEquals(noOpenTicketBefore + 1, (Long) server.getAttribute(noOpenTicket, "Count"));
+		assertEquals(enterBefore + 2, (Long) server.getAttribute(enter, "Count"));
+		assertTrue((Double) server.getAttribute(enter, "MaxMicros") > 0);
+		assertTrue(Metrics.dump().contains("TicketStore.saveTicket count="));
+	}
+}
@@ -3,8 +3,12 @@ package com.parkit.parkingsystem;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketWithVisits;
 import com.parkit.parkingsystem.service.ParkingService;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,6 +18,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.Date;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,6 +32,8 @@ public class ParkingServiceTest {
 	private static ParkingSpotDAO parkingSpotDAO;
 	@Mock
 	private static TicketDAO ticketDAO;
+	@Mock
+	private static UnitOfWork unitOfWork;
 
 	@BeforeEach
 	private void setUpPerTest() {
@@ -34,6 +41,8 @@ public class ParkingServiceTest {
 		try {
 
 			parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+			// the batched close updated its ticket
+			lenient().when(unitOfWork.executeBatch()).thenReturn(true);
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -42,7 +51,7 @@ public class ParkingServiceTest {
 	}
 
 	@Test
-	public void testprocessExitingVehicleCar() {
+	public void testprocessExitingVehicleCar() throws Exception {
 
 		Ticket ticket = new Ticket();
 		ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
@@ -51,23 +60,23 @@ public class ParkingServiceTest {
 		ticket.setVehicleRegNumber("ABCDEF");
 
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-		when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
-		when(ticketDAO.getNbTicket(anyString())).thenReturn(1);
-		when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
-		when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF")).thenReturn(new TicketWithVisits(ticket, 1));
+		when(ticketDAO.closeTicket(any(UnitOfWork.class), any(Ticket.class))).thenReturn(true);
+		when(parkingSpotDAO.releaseParkingSpot(unitOfWork, parkingSpot)).thenReturn(true);
 
 		parkingService.processExitingVehicle();
 
 		verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-		verify(ticketDAO, Mockito.times(1)).getTicket("ABCDEF");
-		verify(ticketDAO, Mockito.times(1)).getNbTicket("ABCDEF");
-		verify(ticketDAO, Mockito.times(1)).updateTicket(any(Ticket.class));
-		verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+		verify(ticketDAO, Mockito.times(1)).getTicketWithVisits(unitOfWork, "ABCDEF");
+		verify(ticketDAO, Mockito.times(1)).closeTicket(unitOfWork, ticket);
+		verify(parkingSpotDAO, Mockito.times(1)).releaseParkingSpot(unitOfWork, parkingSpot);
+		verify(unitOfWork, Mockito.times(1)).commit();
 
 	}
 
 	@Test
-	public void testprocessExitingVehicleCarMoreThanOneTicket() {
+	public void testprocessExitingVehicleCarMoreThanOneTicket() throws Exception {
 
 		Ticket ticket = new Ticket();
 		ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
@@ -76,23 +85,23 @@ public class ParkingServiceTest {
 		ticket.setVehicleRegNumber("ABCDEF");
 
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-		when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
-		when(ticketDAO.getNbTicket(anyString())).thenReturn(4);
-		when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
-		when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF")).thenReturn(new TicketWithVisits(ticket, 4));
+		when(ticketDAO.closeTicket(any(UnitOfWork.class), any(Ticket.class))).thenReturn(true);
+		when(parkingSpotDAO.releaseParkingSpot(unitOfWork, parkingSpot)).thenReturn(true);
 
 		parkingService.processExitingVehicle();
 
 		verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-		verify(ticketDAO, Mockito.times(1)).getTicket("ABCDEF");
-		verify(ticketDAO, Mockito.times(1)).getNbTicket("ABCDEF");
-		verify(ticketDAO, Mockito.times(1)).updateTicket(any(Ticket.class));
-		verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+		verify(ticketDAO, Mockito.times(1)).getTicketWithVisits(unitOfWork, "ABCDEF");
+		verify(ticketDAO, Mockito.times(1)).closeTicket(unitOfWork, ticket);
+		verify(parkingSpotDAO, Mockito.times(1)).releaseParkingSpot(unitOfWork, parkingSpot);
+		verify(unitOfWork, Mockito.times(1)).commit();
 
 	}
 
 	@Test
-	public void testprocessExitingVehicleCarUnableUpdate() {
+	public void testprocessExitingVehicleCarUnableUpdate() throws Exception {
 
 		Ticket ticket = new Ticket();
 		ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
@@ -101,21 +110,48 @@ public class ParkingServiceTest {
 		ticket.setVehicleRegNumber("ABCDEF");
 
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-		when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
-		when(ticketDAO.getNbTicket(anyString())).thenReturn(1);
-		when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(false);
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF")).thenReturn(new TicketWithVisits(ticket, 1));
+		when(ticketDAO.closeTicket(any(UnitOfWork.class), any(Ticket.class))).thenReturn(false);
 
 		parkingService.processExitingVehicle();
 
 		verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-		verify(ticketDAO, Mockito.times(1)).getTicket("ABCDEF");
-		verify(ticketDAO, Mockito.times(1)).getNbTicket("ABCDEF");
-		verify(ticketDAO, Mockito.times(1)).updateTicket(any(Ticket.class));
+		verify(ticketDAO, Mockito.times(1)).getTicketWithVisits(unitOfWork, "ABCDEF");
+		verify(ticketDAO, Mockito.times(1)).closeTicket(unitOfWork, ticket);
+		verify(parkingSpotDAO, Mockito.never()).releaseParkingSpot(any(UnitOfWork.class), any(ParkingSpot.class));
+		verify(unitOfWork, Mockito.never()).commit();
+		verify(unitOfWork, Mockito.times(1)).close();
+
+	}
+
+	@Test
+	public void testprocessExitingVehicleClosedMeanwhile() throws Exception {
+
+		Ticket ticket = new Ticket();
+		ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+		ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+		ticket.setParkingSpot(parkingSpot);
+		ticket.setVehicleRegNumber("ABCDEF");
+
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF")).thenReturn(new TicketWithVisits(ticket, 1));
+		when(ticketDAO.closeTicket(unitOfWork, ticket)).thenReturn(true);
+		when(parkingSpotDAO.releaseParkingSpot(unitOfWork, parkingSpot)).thenReturn(true);
+		// the close in the batch updated no row
+		when(unitOfWork.executeBatch()).thenReturn(false);
+
+		ExitResult result = parkingService.exit("ABCDEF");
+
+		assertEquals(ExitResult.Status.NO_OPEN_TICKET, result.getStatus());
+		verify(unitOfWork, Mockito.never()).commit();
+		verify(unitOfWork, Mockito.times(1)).close();
+		assertFalse(parkingSpot.isAvailable());
 
 	}
 
 	@Test
-	public void testprocessExitingVehicleCarDiscount() {
+	public void testprocessExitingVehicleSpotNotReleased() throws Exception {
 
 		Ticket ticket = new Ticket();
 		ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
@@ -124,43 +160,70 @@ public class ParkingServiceTest {
 		ticket.setVehicleRegNumber("ABCDEF");
 
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-		when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
-		when(ticketDAO.getNbTicket(anyString())).thenReturn(0);
-		when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
-		when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF")).thenReturn(new TicketWithVisits(ticket, 1));
+		when(ticketDAO.closeTicket(unitOfWork, ticket)).thenReturn(true);
+		when(parkingSpotDAO.releaseParkingSpot(unitOfWork, parkingSpot)).thenThrow(new java.sql.SQLException("lock wait timeout"));
+
+		parkingService.processExitingVehicle();
+
+		// the ticket close is rolled back with the failed release
+		verify(unitOfWork, Mockito.never()).commit();
+		verify(unitOfWork, Mockito.times(1)).close();
+		assertFalse(parkingSpot.isAvailable());
+
+	}
+
+	@Test
+	public void testprocessExitingVehicleCarDiscount() throws Exception {
+
+		Ticket ticket = new Ticket();
+		ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+		ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+		ticket.setParkingSpot(parkingSpot);
+		ticket.setVehicleRegNumber("ABCDEF");
+
+		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF")).thenReturn(new TicketWithVisits(ticket, 0));
+		when(ticketDAO.closeTicket(any(UnitOfWork.class), any(Ticket.class))).thenReturn(true);
+		when(parkingSpotDAO.releaseParkingSpot(unitOfWork, parkingSpot)).thenReturn(true);
 
 		parkingService.processExitingVehicle();
 
 		verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-		verify(ticketDAO, Mockito.times(1)).getTicket("ABCDEF");
-		verify(ticketDAO, Mockito.times(1)).updateTicket(any(Ticket.class));
-		verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+		verify(ticketDAO, Mockito.times(1)).getTicketWithVisits(unitOfWork, "ABCDEF");
+		verify(ticketDAO, Mockito.times(1)).closeTicket(unitOfWork, ticket);
+		verify(parkingSpotDAO, Mockito.times(1)).releaseParkingSpot(unitOfWork, parkingSpot);
+		verify(unitOfWork, Mockito.times(1)).commit();
 
 	}
 
 	@Test
-    public void testProcessIncomingVehicle() {
+    public void testProcessIncomingVehicle() throws Exception {
     		
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-		when(ticketDAO.getNbTicket(anyString())).thenReturn(1);	
-		when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
     	when(inputReaderUtil.readSelection()).thenReturn(1);
-    	when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);  	
-    	when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+    	when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+    	when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+    	when(parkingSpotDAO.claimNextAvailableSlot(any(UnitOfWork.class), any(ParkingType.class))).thenReturn(1);
+		when(ticketDAO.getNbTicket(any(UnitOfWork.class), anyString())).thenReturn(1);	
     		
     	parkingService.processIncomingVehicle();
     	  		
     	verify(inputReaderUtil, Mockito.times(1)).readSelection();
     	verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-        verify(parkingSpotDAO, Mockito.times(1)).getNextAvailableSlot(any(ParkingType.class));
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
-        verify(ticketDAO, Mockito.times(1)).getNbTicket("ABCDEF");
-        verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class)); 	
+        verify(parkingSpotDAO, Mockito.times(1)).claimNextAvailableSlot(unitOfWork, ParkingType.CAR);
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
+        verify(ticketDAO, Mockito.times(1)).getNbTicket(unitOfWork, "ABCDEF");
+        verify(ticketDAO, Mockito.times(1)).saveTicket(eq(unitOfWork), any(Ticket.class));
+        verify(unitOfWork, Mockito.times(1)).commit();
+        verify(unitOfWork, Mockito.times(1)).close();
     	
     }
 
 	@Test
-    public void testProcessIncomingVehicleWrong() {
+    public void testProcessIncomingVehicleWrong() throws Exception {
     		
     	when(inputReaderUtil.readSelection()).thenReturn(3);	
     		
@@ -171,11 +234,103 @@ public class ParkingServiceTest {
     	verify(parkingSpotDAO, never()).getNextAvailableSlot(ParkingType.CAR);
     	verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
     	verify(parkingSpotDAO, never()).getNextAvailableSlot(any(ParkingType.class));
-    	verify(ticketDAO, never()).getNbTicket("ABCDEF");
-    	verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+    	verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(UnitOfWork.class), any(ParkingType.class));
+    	verify(ticketDAO, never()).getNbTicket(any(UnitOfWork.class), anyString());
+    	verify(ticketDAO, never()).saveTicket(any(UnitOfWork.class), any(Ticket.class));
   	
     }
 
+	@Test
+	public void testProcessIncomingVehicleInvalidPlateClaimsNothing() throws Exception {
+
+		when(inputReaderUtil.readSelection()).thenReturn(1);
+		when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+		when(inputReaderUtil.readVehicleRegistrationNumber()).thenThrow(new IllegalArgumentException("Invalid input provided"));
+
+		parkingService.processIncomingVehicle();
+
+		verify(ticketDAO, never()).beginUnitOfWork();
+		verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(UnitOfWork.class), any(ParkingType.class));
+		verify(ticketDAO, never()).saveTicket(any(UnitOfWork.class), any(Ticket.class));
+
+	}
+
+	@Test
+	public void testProcessIncomingVehicleLotFilledBeforeClaim() throws Exception {
+
+		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+		when(inputReaderUtil.readSelection()).thenReturn(1);
+		when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(parkingSpotDAO.claimNextAvailableSlot(any(UnitOfWork.class), any(ParkingType.class))).thenReturn(-1);
+
+		parkingService.processIncomingVehicle();
+
+		verify(ticketDAO, never()).saveTicket(any(UnitOfWork.class), any(Ticket.class));
+		verify(unitOfWork, never()).commit();
+		verify(unitOfWork, Mockito.times(1)).close();
+
+	}
+
+	@Test
+	public void testEnterReportsFullLot() throws Exception {
+
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(parkingSpotDAO.claimNextAvailableSlot(unitOfWork, ParkingType.BIKE)).thenReturn(-1);
+
+		EntryResult result = parkingService.enter("ABCDEF", ParkingType.BIKE);
+
+		assertEquals(EntryResult.Status.LOT_FULL, result.getStatus());
+		assertEquals(-1, result.getParkingNumber());
+		assertNull(result.getInTime());
+		verify(inputReaderUtil, never()).readSelection();
+		verify(ticketDAO, never()).saveTicket(any(UnitOfWork.class), any(Ticket.class));
+
+	}
+
+	@Test
+	public void testExitReturnsPriceAndDiscount() throws Exception {
+
+		Ticket ticket = new Ticket();
+		ParkingSpot parkingSpot = new ParkingSpot(2, ParkingType.CAR, false);
+		ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+		ticket.setParkingSpot(parkingSpot);
+		ticket.setVehicleRegNumber("ABCDEF");
+
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF")).thenReturn(new TicketWithVisits(ticket, 3));
+		when(ticketDAO.closeTicket(unitOfWork, ticket)).thenReturn(true);
+		when(parkingSpotDAO.releaseParkingSpot(unitOfWork, parkingSpot)).thenReturn(true);
+
+		ExitResult result = parkingService.exit("ABCDEF");
+
+		assertEquals(ExitResult.Status.EXITED, result.getStatus());
+		assertEquals(2, result.getParkingNumber());
+		assertTrue(result.isDiscountApplied());
+		assertEquals(ticket.getPrice(), result.getPrice());
+		assertNotNull(result.getOutTime());
+		verify(inputReaderUtil, never()).readVehicleRegistrationNumber();
+
+	}
+
+	@Test
+	public void testExitOfAlreadyClosedTicket() throws Exception {
+
+		Ticket ticket = new Ticket();
+		ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+		ticket.setOutTime(new Date());
+		ticket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, true));
+		ticket.setVehicleRegNumber("ABCDEF");
+
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ABCDEF")).thenReturn(new TicketWithVisits(ticket, 1));
+
+		assertEquals(ExitResult.Status.NO_OPEN_TICKET, parkingService.exit("ABCDEF").getStatus());
+		verify(ticketDAO, never()).closeTicket(any(UnitOfWork.class), any(Ticket.class));
+		verify(unitOfWork, never()).commit();
+
+	}
+
 	@Test
 	public void testGetNextParkingNumberIfAvailable() {
 
@@ -214,7 +369,7 @@ public class ParkingServiceTest {
 	}
 
 	@Test
-	public void testprocessNoExitingVehicle() {
+	public void testprocessNoExitingVehicle() throws Exception {
 
 		Ticket ticket = new Ticket();
 		ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
@@ -223,13 +378,16 @@ public class ParkingServiceTest {
 		ticket.setVehicleRegNumber("ABCDEF");
 
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ZZZZZ");
-		when(ticketDAO.getTicket(anyString())).thenReturn(null);
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicketWithVisits(unitOfWork, "ZZZZZ")).thenReturn(null);
 
 		try {
 			parkingService.processExitingVehicle();
 		} catch (IllegalArgumentException e) {
 
 		}
+		verify(ticketDAO, Mockito.never()).closeTicket(any(UnitOfWork.class), any(Ticket.class));
+		verify(unitOfWork, Mockito.never()).commit();
 
 	}
 
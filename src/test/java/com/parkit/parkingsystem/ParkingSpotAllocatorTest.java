@@ -0,0 +1,83 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.ParkingSpotAllocator;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingSpotAllocatorTest {
+
+	@Test
+	public void claimsLowestAvailableSpotOfTheRequestedType() {
+		ParkingSpotAllocator allocator = new ParkingSpotAllocator(Arrays.asList(
+				new ParkingSpot(5, ParkingType.BIKE, true), new ParkingSpot(3, ParkingType.CAR, true),
+				new ParkingSpot(1, ParkingType.CAR, false), new ParkingSpot(2, ParkingType.CAR, true),
+				new ParkingSpot(4, ParkingType.BIKE, true)));
+
+		assertEquals(2, allocator.claim(ParkingType.CAR));
+		assertEquals(4, allocator.claim(ParkingType.BIKE));
+		assertEquals(3, allocator.claim(ParkingType.CAR));
+		assertEquals(-1, allocator.claim(ParkingType.CAR));
+
+		assertTrue(allocator.release(new ParkingSpot(1, ParkingType.CAR, true)));
+		assertEquals(1, allocator.peek(ParkingType.CAR));
+		assertEquals(1, allocator.claim(ParkingType.CAR));
+		assertEquals(0, allocator.getAvailableCount(ParkingType.CAR));
+		assertEquals(1, allocator.getAvailableCount(ParkingType.BIKE));
+	}
+
+	@Test
+	public void concurrentClaimsNeverHandOutTheSameSpotTwice() throws Exception {
+		int capacity = 20000;
+		List<ParkingSpot> parkingSpots = new ArrayList<>();
+		for (int i = 1; i <= capacity; i++) {
+			parkingSpots.add(new ParkingSpot(i, ParkingType.CAR, true));
+		}
+		ParkingSpotAllocator allocator = new ParkingSpotAllocator(parkingSpots);
+		Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+		Set<Integer> releasedOnce = ConcurrentHashMap.newKeySet();
+		AtomicInteger duplicates = new AtomicInteger();
+		int threads = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				int number;
+				while ((number = allocator.claim(ParkingType.CAR)) > 0) {
+					if (!claimed.add(number)) {
+						duplicates.incrementAndGet();
+					}
+					if (number % 7 == 0 && releasedOnce.add(number)) {
+						claimed.remove(number);
+						allocator.release(new ParkingSpot(number, ParkingType.CAR, true));
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(0, duplicates.get());
+		assertEquals(capacity, claimed.size());
+		assertEquals(0, allocator.getAvailableCount(ParkingType.CAR));
+	}
+}
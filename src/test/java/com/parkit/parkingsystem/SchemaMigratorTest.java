@@ -0,0 +1,114 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchemaMigratorTest {
+
+	private DataBaseConfig dataBaseConfig;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBaseConfig = H2TestConfig.empty();
+	}
+
+	@Test
+	public void migratesAnEmptyDatabaseToTheLatestVersionOnce() throws Exception {
+		SchemaMigrator migrator = new SchemaMigrator(dataBaseConfig);
+
+		assertEquals(0, migrator.getCurrentVersion());
+		assertEquals(SchemaMigrator.getLatestVersion(), migrator.migrate());
+		assertEquals(SchemaMigrator.getLatestVersion(), migrator.getCurrentVersion());
+		assertEquals(0, migrator.migrate());
+	}
+
+	@Test
+	public void createsTheHotQueryIndexes() throws Exception {
+		new SchemaMigrator(dataBaseConfig).migrate();
+
+		Set<String> indexes = new HashSet<>();
+		try (Connection con = dataBaseConfig.getConnection();
+				Statement statement = con.createStatement();
+				ResultSet rs = statement.executeQuery("select INDEX_NAME from INFORMATION_SCHEMA.INDEXES")) {
+			while (rs.next()) {
+				indexes.add(rs.getString(1).toUpperCase());
+			}
+		}
+		assertTrue(indexes.contains("IDX_TICKET_PLATE_IN_TIME"));
+		assertTrue(indexes.contains("IDX_TICKET_OPEN"));
+		assertTrue(indexes.contains("IDX_PARKING_TYPE_AVAILABLE"));
+	}
+
+	@Test
+	public void discountIsAddedToTicketAndToTheHistoryMonthsArchivedBeforeIt() throws Exception {
+		SchemaMigrator migrator = new SchemaMigrator(dataBaseConfig);
+		migrator.migrate();
+		// back to V5: ticket without DISCOUNT, and two months as the V4 archiver created them
+		execute("alter table ticket drop column DISCOUNT");
+		execute("delete from schema_version where VERSION = 6");
+		for (int month : new int[] { 202401, 202402 }) {
+			execute("create table ticket_history_" + month + "(ID int PRIMARY KEY, PARKING_NUMBER int NOT NULL,"
+					+ " VEHICLE_REG_NUMBER varchar(10) NOT NULL, PRICE double, IN_TIME DATETIME NOT NULL, OUT_TIME DATETIME NOT NULL)");
+			execute("insert into ticket_history_partition(PARTITION_MONTH) values(" + month + ")");
+		}
+		execute("insert into ticket_history_202401 values(1, 1, 'ABCDEF', 1.5, '2024-01-02 10:00:00', '2024-01-02 11:00:00'),"
+				+ " (2, 1, 'ABCDEF', 1.5, '2024-01-03 10:00:00', '2024-01-03 11:00:00')");
+		execute("insert into ticket_history_202402 values(3, 1, 'ABCDEF', 1.5, '2024-02-02 10:00:00', '2024-02-02 11:00:00'),"
+				+ " (4, 1, 'GHIJKL', 1.5, '2024-02-02 10:00:00', '2024-02-02 11:00:00')");
+		execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, false, 'CAR')");
+		execute("insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME) values"
+				+ "(5, 1, 'GHIJKL', 0, '2024-03-02 10:00:00'), (6, 1, 'MNOPQR', 0, '2024-03-02 10:00:00')");
+
+		assertEquals(1, migrator.migrate());
+
+		assertEquals(Set.of(2, 3, 5), discountedIds("select ID, DISCOUNT from ticket_history_202401"
+				+ " union all select ID, DISCOUNT from ticket_history_202402 union all select ID, DISCOUNT from ticket"));
+		assertEquals(0, migrator.migrate());
+	}
+
+	@Test
+	public void interruptedDiscountMigrationRunsAgain() throws Exception {
+		SchemaMigrator migrator = new SchemaMigrator(dataBaseConfig);
+		migrator.migrate();
+		execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, false, 'CAR')");
+		execute("insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values"
+				+ "(1, 1, 'ABCDEF', 1.5, '2024-03-01 10:00:00', '2024-03-01 11:00:00'), (2, 1, 'ABCDEF', 0, '2024-03-02 10:00:00', null)");
+		// the column was added, then the migration stopped before its backfill was recorded
+		execute("delete from schema_version where VERSION = 6");
+
+		assertEquals(1, migrator.migrate());
+
+		assertEquals(Set.of(2), discountedIds("select ID, DISCOUNT from ticket"));
+	}
+
+	private Set<Integer> discountedIds(String sql) throws Exception {
+		Set<Integer> ids = new HashSet<>();
+		try (Connection con = dataBaseConfig.getConnection();
+				Statement statement = con.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			while (rs.next()) {
+				if (rs.getBoolean(2)) {
+					ids.add(rs.getInt(1));
+				}
+			}
+		}
+		return ids;
+	}
+
+	private void execute(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.JournalEvent;
+import com.parkit.parkingsystem.journal.ParkingState;
+import com.parkit.parkingsystem.journal.SnapshotStore;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotStoreTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void snapshotHoldsSpotsOpenTicketsAndVisits() throws Exception {
+		SnapshotStore snapshotStore = new SnapshotStore(directory);
+		snapshotStore.write(stateAfter(3));
+
+		ParkingState loaded = snapshotStore.loadLatest();
+		assertEquals(3, loaded.getSequence());
+		assertEquals(8, loaded.getLastTicketId());
+		assertEquals(1, loaded.getOpenTicketCount());
+		Ticket openTicket = loaded.getOpenTickets().iterator().next();
+		assertEquals("GHIJKL", openTicket.getVehicleRegNumber());
+		assertEquals(2, openTicket.getParkingSpot().getId());
+		assertEquals(3, loaded.getVisits().get("ABCDEF"));
+		assertEquals(1, loaded.getVisits().get("GHIJKL"));
+		assertTrue(loaded.getParkingSpots().get(0).isAvailable());
+		assertFalse(loaded.getParkingSpots().get(1).isAvailable());
+	}
+
+	@Test
+	public void corruptSnapshotFallsBackToTheOlderOne() throws Exception {
+		SnapshotStore snapshotStore = new SnapshotStore(directory);
+		snapshotStore.write(stateAfter(1));
+		Path newest = snapshotStore.write(stateAfter(3));
+		try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 42 }), channel.size() - 3);
+		}
+
+		assertEquals(1, snapshotStore.loadLatest().getSequence());
+	}
+
+	// ABCDEF visited twice before, then GHIJKL parks in spot 2 and ABCDEF comes and goes
+	private static ParkingState stateAfter(long sequence) {
+		ParkingState state = new ParkingState(0, 6);
+		state.putParkingSpot(new ParkingSpot(1, ParkingType.CAR, true));
+		state.putParkingSpot(new ParkingSpot(2, ParkingType.CAR, true));
+		state.putParkingSpot(new ParkingSpot(3, ParkingType.BIKE, true));
+		state.putVisits("ABCDEF", 2);
+		long inTime = System.currentTimeMillis();
+		state.apply(new JournalEvent(1, JournalEvent.Type.ENTER, 7, "GHIJKL", 2, ParkingType.CAR, inTime, 0, 0));
+		if (sequence > 1) {
+			state.apply(new JournalEvent(2, JournalEvent.Type.ENTER, 8, "ABCDEF", 1, ParkingType.CAR, inTime, 0, 0));
+			state.apply(new JournalEvent(3, JournalEvent.Type.EXIT, 8, "ABCDEF", 1, ParkingType.CAR, inTime,
+					inTime + 60000, 1.5));
+		}
+		return state;
+	}
+}
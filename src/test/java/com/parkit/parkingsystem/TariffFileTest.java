@@ -0,0 +1,113 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.tariff.Tariff;
+import com.parkit.parkingsystem.tariff.TariffFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TariffFileTest {
+
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void stayIsSplitAcrossBandsAndCappedEveryDay() {
+		Properties properties = new Properties();
+		properties.setProperty("freeMinutes", "30");
+		properties.setProperty("night", "22-6");
+		properties.setProperty("weekend", "SATURDAY,SUNDAY");
+		properties.setProperty("CAR.REGULAR.rate", "2");
+		properties.setProperty("CAR.REGULAR.rate.NIGHT", "1");
+		properties.setProperty("CAR.REGULAR.rate.WEEKEND", "3");
+		properties.setProperty("CAR.REGULAR.dailyCap", "20");
+		Tariff tariff = Tariff.parse(properties);
+
+		// Wednesday morning, night, Saturday night
+		long wednesday = Timestamp.valueOf("2024-03-06 10:00:00").getTime();
+		long wednesdayNight = Timestamp.valueOf("2024-03-06 23:00:00").getTime();
+		long saturdayNight = Timestamp.valueOf("2024-03-09 23:00:00").getTime();
+		assertEquals(4.0, tariff.fare(ParkingType.CAR, false, wednesday, wednesday + 2 * HOUR));
+		assertEquals(2.0, tariff.fare(ParkingType.CAR, false, wednesdayNight, wednesdayNight + 2 * HOUR));
+		assertEquals(6.0, tariff.fare(ParkingType.CAR, false, saturdayNight, saturdayNight + 2 * HOUR));
+		// every part of a stay at its own band: 2h standard then 2h night, Friday night into Saturday
+		long wednesdayEvening = Timestamp.valueOf("2024-03-06 20:00:00").getTime();
+		long fridayNight = Timestamp.valueOf("2024-03-08 22:00:00").getTime();
+		assertEquals(6.0, tariff.fare(ParkingType.CAR, false, wednesdayEvening, wednesdayEvening + 4 * HOUR));
+		assertEquals(8.0, tariff.fare(ParkingType.CAR, false, fridayNight, fridayNight + 4 * HOUR));
+		assertEquals(1.5, tariff.fare(ParkingType.CAR, false, wednesdayEvening + 3 * HOUR / 2, wednesdayEvening + 5 * HOUR / 2));
+		// RETURNING has the REGULAR rates unless it has its own
+		assertEquals(4.0, tariff.fare(ParkingType.CAR, true, wednesday, wednesday + 2 * HOUR));
+		assertEquals(0.0, tariff.fare(ParkingType.CAR, false, wednesday, wednesday + HOUR / 2));
+
+		assertEquals(20.0, tariff.fare(ParkingType.CAR, false, wednesday, wednesday + 20 * HOUR));
+		assertEquals(44.0, tariff.fare(ParkingType.CAR, false, wednesday, wednesday + 50 * HOUR));
+
+		// a day costs what the same day of the next week does
+		properties.setProperty("BIKE.REGULAR.rate", "1");
+		properties.setProperty("BIKE.REGULAR.rate.WEEKEND", "2");
+		Tariff bikes = Tariff.parse(properties);
+		long friday = Timestamp.valueOf("2024-03-08 12:00:00").getTime();
+		// a week is 5 days at 24 and 2 at 48
+		assertEquals(216.0, bikes.fare(ParkingType.BIKE, false, wednesday, wednesday + 7 * 24 * HOUR));
+		assertEquals(456.0, bikes.fare(ParkingType.BIKE, false, wednesday, wednesday + 15 * 24 * HOUR));
+		assertEquals(216.0 + 36.0 + 2.0, bikes.fare(ParkingType.BIKE, false, friday, friday + 8 * 24 * HOUR + HOUR));
+		properties.remove("BIKE.REGULAR.rate");
+		properties.remove("BIKE.REGULAR.rate.WEEKEND");
+
+		assertThrows(IllegalArgumentException.class, () -> tariff.fare(ParkingType.BIKE, false, wednesday, wednesday + HOUR));
+		properties.setProperty("CAR.REGULAR.rat", "2");
+		assertThrows(IllegalArgumentException.class, () -> Tariff.parse(properties));
+	}
+
+	@Test
+	public void changedFileIsReloadedAndABadOneKeepsTheCurrentTariff() throws Exception {
+		Path path = dir.resolve("tariff.properties");
+		Files.write(path, "CAR.REGULAR.rate=1.5\n".getBytes(StandardCharsets.ISO_8859_1));
+		try (TariffFile tariffFile = new TariffFile(path, 1, TimeUnit.HOURS)) {
+			FareCalculatorService fareCalculatorService = new FareCalculatorService(tariffFile);
+			assertEquals(1.5, fareOfOneHour(fareCalculatorService));
+			assertFalse(tariffFile.reload());
+
+			write(path, "CAR.REGULAR.rate=3\nCAR.RETURNING.rate=2.5\n", 1);
+			assertTrue(tariffFile.reload());
+			assertEquals(3.0, fareOfOneHour(fareCalculatorService));
+
+			write(path, "CAR.REGULAR.rate=-1\n", 2);
+			assertFalse(tariffFile.reload());
+			assertEquals(3.0, fareOfOneHour(fareCalculatorService));
+		}
+	}
+
+	private double fareOfOneHour(FareCalculatorService fareCalculatorService) {
+		Ticket ticket = new Ticket();
+		ticket.setInTime(new Date(System.currentTimeMillis() - HOUR));
+		ticket.setOutTime(new Date(ticket.getInTime().getTime() + HOUR));
+		ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+		fareCalculatorService.calculateFare(ticket, false);
+		return ticket.getPrice();
+	}
+
+	// moves the modification time forward, the file system may keep whole seconds only
+	private void write(Path path, String content, int seconds) throws Exception {
+		FileTime modified = Files.getLastModifiedTime(path);
+		Files.write(path, content.getBytes(StandardCharsets.ISO_8859_1));
+		Files.setLastModifiedTime(path, FileTime.fromMillis(modified.toMillis() + TimeUnit.SECONDS.toMillis(seconds)));
+	}
+}
@@ -0,0 +1,122 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketArchiver;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketArchiverTest {
+
+	private static final Timestamp CUTOFF = Timestamp.valueOf("2024-06-01 00:00:00");
+
+	private DataBaseConfig dataBaseConfig;
+	private TicketDAO ticketDAO;
+	private TicketArchiver ticketArchiver;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBaseConfig = H2TestConfig.migrated();
+		execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, true, 'CAR'), (2, false, 'CAR')");
+		execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values"
+				+ "(1, 'OLD', 1.5, '2024-01-10 10:00:00', '2024-01-10 11:00:00'),"
+				+ "(1, 'OLD', 3, '2024-02-29 22:00:00', '2024-03-01 00:00:00'),"
+				+ "(2, 'PARKED', 0, '2024-04-01 10:00:00', null),"
+				+ "(1, 'LAST', 1.5, '2024-05-01 10:00:00', '2024-05-01 11:00:00')");
+
+		ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		ticketArchiver = new TicketArchiver(dataBaseConfig, 30, 60, TimeUnit.DAYS);
+	}
+
+	@Test
+	public void closedTicketsMoveToTheHistoryOfTheirExitMonth() throws Exception {
+		assertEquals(2, ticketArchiver.archiveClosedBefore(CUTOFF));
+
+		// the open ticket stays, and so does the newest one that ticket ids continue from
+		assertEquals(2, count("ticket"));
+		assertEquals(1, count("ticket_history_202401"));
+		assertEquals(1, count("ticket_history_202403"));
+		assertEquals(2, count("ticket_history_partition"));
+		assertEquals(2, ticketDAO.getNbTicket("OLD"));
+		List<Ticket> tickets = ticketDAO.getTickets("OLD");
+		assertEquals(2, tickets.size());
+		assertEquals(2, tickets.get(0).getId());
+		assertEquals(1, tickets.get(1).getId());
+		try (UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig)) {
+			Map<String, Integer> visits = ticketDAO.getVisitCounts(unitOfWork);
+			assertEquals(2, visits.get("OLD"));
+			assertEquals(1, visits.get("PARKED"));
+			assertEquals(4, ticketDAO.getLastTicketId(unitOfWork));
+		}
+
+		// nothing left to move
+		assertEquals(0, ticketArchiver.archiveClosedBefore(CUTOFF));
+		assertEquals(2, ticketArchiver.getArchivedCount());
+	}
+
+	@Test
+	public void monthCreatedByAnotherArchiverIsReused() throws Exception {
+		// partitions are cached by the first batch
+		assertEquals(2, ticketArchiver.archiveClosedBefore(CUTOFF));
+		TicketArchiver otherArchiver = new TicketArchiver(dataBaseConfig, 30, 60, TimeUnit.DAYS);
+		execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values"
+				+ "(1, 'OTHER', 1.5, '2024-05-02 10:00:00', '2024-05-02 11:00:00'),"
+				+ "(1, 'NEWEST', 1.5, '2024-05-03 10:00:00', '2024-05-03 11:00:00')");
+		assertEquals(2, otherArchiver.archiveClosedBefore(CUTOFF));
+		assertEquals(2, count("ticket_history_202405"));
+
+		execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values"
+				+ "(1, 'NEWER', 1.5, '2024-05-04 10:00:00', '2024-05-04 11:00:00')");
+		assertEquals(1, ticketArchiver.archiveClosedBefore(CUTOFF));
+		assertEquals(3, count("ticket_history_202405"));
+		assertEquals(3, count("ticket_history_partition"));
+	}
+
+	@Test
+	public void archivedVisitsStillEarnTheDiscount() throws Exception {
+		ticketArchiver.archiveClosedBefore(CUTOFF);
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+		ParkingService parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+
+		EntryResult entry = parkingService.enter("OLD", ParkingType.CAR);
+		assertTrue(entry.isParked());
+		assertTrue(entry.isReturningVehicle());
+		ExitResult exit = parkingService.exit("OLD");
+		assertTrue(exit.isExited());
+		assertTrue(exit.isDiscountApplied());
+	}
+
+	private void execute(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private int count(String table) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement();
+				ResultSet rs = statement.executeQuery("select count(*) from " + table)) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
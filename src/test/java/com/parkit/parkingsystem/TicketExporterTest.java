@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.TicketArchiver;
+import com.parkit.parkingsystem.dao.TicketExporter;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketExporterTest {
+
+	// more than a page, part of them archived
+	private static final int CLOSED_TICKETS = 15000;
+	private static final int ARCHIVED_TICKETS = 3000;
+
+	@TempDir
+	Path directory;
+
+	private TicketExporter ticketExporter;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		DataBaseConfig dataBaseConfig = H2TestConfig.migrated();
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, false, 'CAR')");
+			statement.execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)"
+					+ " select 1, concat('P', X), 1.5, timestamp '2024-01-10 10:00:00',"
+					+ " case when X <= " + ARCHIVED_TICKETS + " then timestamp '2024-01-10 11:05:09'"
+					+ " else timestamp '2024-07-01 11:05:09' end from system_range(1, " + CLOSED_TICKETS + ")");
+			statement.execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)"
+					+ " values(1, 'A,\"B', 0, '2024-08-02 09:00:00', null)");
+		}
+		new TicketArchiver(dataBaseConfig, 30, 60, TimeUnit.DAYS)
+				.archiveClosedBefore(Timestamp.valueOf("2024-06-01 00:00:00"));
+		ticketExporter = new TicketExporter(dataBaseConfig);
+	}
+
+	@Test
+	public void csvHoldsEveryTicketOnce() throws Exception {
+		Path file = directory.resolve("tickets.csv");
+		assertEquals(CLOSED_TICKETS + 1, ticketExporter.export(file, TicketExporter.Format.CSV));
+
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals(CLOSED_TICKETS + 2, lines.size());
+		assertEquals("ID,PARKING_NUMBER,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME", lines.get(0));
+		assertTrue(lines.contains("3001,1,P3001,1.5,2024-01-10 10:00:00,2024-07-01 11:05:09"));
+		assertTrue(lines.contains("3000,1,P3000,1.5,2024-01-10 10:00:00,2024-01-10 11:05:09"));
+		assertTrue(lines.contains("15001,1,\"A,\"\"B\",0.0,2024-08-02 09:00:00,"));
+		Set<String> ids = new HashSet<>();
+		for (String line : lines.subList(1, lines.size())) {
+			ids.add(line.substring(0, line.indexOf(',')));
+		}
+		assertEquals(CLOSED_TICKETS + 1, ids.size());
+		assertFalse(Files.exists(directory.resolve("tickets.csv.tmp")));
+	}
+
+	@Test
+	public void binaryRowsEndWithTheirCount() throws Exception {
+		Path file = directory.resolve("tickets.bin");
+		assertEquals(CLOSED_TICKETS + 1, ticketExporter.export(file, TicketExporter.Format.BINARY));
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			assertEquals(TicketExporter.MAGIC, in.readInt());
+			assertEquals(TicketExporter.FORMAT_VERSION, in.readShort());
+			long rows = 0;
+			boolean openTicketFound = false;
+			while (in.readByte() == 1) {
+				int id = in.readInt();
+				assertEquals(1, in.readInt());
+				byte[] plate = new byte[in.readByte()];
+				in.readFully(plate);
+				double price = in.readDouble();
+				long inTime = in.readLong();
+				long outTime = in.readLong();
+				if (id == CLOSED_TICKETS + 1) {
+					assertEquals("A,\"B", new String(plate, StandardCharsets.UTF_8));
+					assertEquals(Timestamp.valueOf("2024-08-02 09:00:00").getTime(), inTime);
+					assertEquals(-1, outTime);
+					openTicketFound = true;
+				} else {
+					assertEquals("P" + id, new String(plate, StandardCharsets.UTF_8));
+					assertEquals(1.5, price);
+				}
+				rows++;
+			}
+			assertEquals(rows, in.readLong());
+			assertEquals(CLOSED_TICKETS + 1, rows);
+			assertTrue(openTicketFound);
+			assertEquals(-1, in.read());
+		}
+	}
+}
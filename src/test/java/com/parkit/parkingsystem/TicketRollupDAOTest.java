@@ -0,0 +1,175 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPoolSettings;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketArchiver;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketRollupDAO;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketRollup;
+import com.parkit.parkingsystem.model.TicketRollup.Granularity;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketRollupDAOTest {
+
+	private DataBaseConfig dataBaseConfig;
+	private TicketRollupDAO ticketRollupDAO;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBaseConfig = H2TestConfig.migrated();
+		execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, true, 'CAR'), (2, true, 'BIKE')");
+		dataBaseConfig.enablePooling(new ConnectionPoolSettings());
+		// small chunks, so a few thousand tickets make several of them
+		ticketRollupDAO = new TicketRollupDAO(1000);
+		ticketRollupDAO.dataBaseConfig = dataBaseConfig;
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void exitsAreAddedToTheirMinuteHourAndDay() throws Exception {
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+		TicketDAO ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		ParkingService parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+
+		// two hours each, the second visit at the returning vehicle rate
+		ExitResult first = parkTwoHours(parkingService);
+		ExitResult second = parkTwoHours(parkingService);
+		assertFalse(first.isDiscountApplied());
+		assertTrue(second.isDiscountApplied());
+
+		for (Granularity granularity : Granularity.values()) {
+			List<TicketRollup> rollups = ticketRollupDAO.getRollups(granularity,
+					new Date(first.getOutTime().getTime() - TimeUnit.DAYS.toMillis(1)),
+					new Date(second.getOutTime().getTime() + TimeUnit.DAYS.toMillis(1)));
+			long tickets = 0;
+			double revenue = 0;
+			double discountRevenue = 0;
+			for (TicketRollup rollup : rollups) {
+				assertEquals(ParkingType.CAR, rollup.getParkingType());
+				assertEquals(TimeUnit.HOURS.toSeconds(2) * rollup.getTickets(), rollup.getParkedSeconds(), 2);
+				tickets += rollup.getTickets();
+				revenue += rollup.getRevenue();
+				discountRevenue += rollup.isDiscount() ? rollup.getRevenue() : 0;
+			}
+			assertEquals(2, tickets, granularity.name());
+			assertEquals(first.getPrice() + second.getPrice(), revenue, 0.001);
+			assertEquals(second.getPrice(), discountRevenue, 0.001);
+		}
+		List<TicketRollup> day = ticketRollupDAO.getRollups(Granularity.DAY, second.getOutTime());
+		assertTrue(day.stream().anyMatch(TicketRollup::isDiscount));
+	}
+
+	@Test
+	public void ticketClosedThroughUpdateTicketIsAddedOnce() throws Exception {
+		TicketDAO ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		execute("insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME) values(1, 1, 'ABCDEF', 0, '2024-03-01 10:00:00')");
+		Ticket ticket = ticketDAO.getTicket("ABCDEF");
+		ticket.setOutTime(Timestamp.valueOf("2024-03-01 12:00:00"));
+		ticket.setPrice(3);
+
+		assertTrue(ticketDAO.updateTicket(ticket));
+		// a correction of the closed ticket
+		ticket.setPrice(2);
+		assertTrue(ticketDAO.updateTicket(ticket));
+
+		List<TicketRollup> day = ticketRollupDAO.getRollups(Granularity.DAY, Timestamp.valueOf("2024-03-01 12:00:00"));
+		assertEquals(1, day.size());
+		assertEquals(1, day.get(0).getTickets());
+		assertEquals(3, day.get(0).getRevenue(), 0.001);
+		assertEquals(2, ticketDAO.getTicket("ABCDEF").getPrice(), 0.001);
+	}
+
+	@Test
+	public void rebuildAddsUpBackfilledAndArchivedTicketsInParallelChunks() throws Exception {
+		// 5,000 closed cars, one per hour of 2024-03-01 and 2024-03-02 in turn, every other one discounted
+		execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, DISCOUNT)"
+				+ " select 1, concat('P', mod(X, 500)), 1.5, dateadd('HOUR', mod(X, 48), timestamp '2024-03-01 00:00:00'),"
+				+ " dateadd('HOUR', mod(X, 48), timestamp '2024-03-01 00:30:00'), mod(X, 2) = 0 from system_range(1, 5000)");
+		new TicketArchiver(dataBaseConfig, 30, 60, TimeUnit.DAYS)
+				.archiveClosedBefore(Timestamp.valueOf("2024-03-02 00:00:00"));
+
+		assertEquals(5000, ticketRollupDAO.rebuild(4));
+		// and again, from scratch
+		assertEquals(5000, ticketRollupDAO.rebuild(4));
+
+		List<TicketRollup> firstDay = ticketRollupDAO.getRollups(Granularity.DAY, Timestamp.valueOf("2024-03-01 12:00:00"));
+		assertEquals(2, firstDay.size());
+		assertFalse(firstDay.get(0).isDiscount());
+		assertEquals(1252, firstDay.get(0).getTickets());
+		assertEquals(1252 * 1.5, firstDay.get(0).getRevenue(), 0.001);
+		assertEquals(1252 * 1800, firstDay.get(0).getParkedSeconds());
+		assertTrue(firstDay.get(1).isDiscount());
+		assertEquals(1252, firstDay.get(1).getTickets());
+
+		List<TicketRollup> hour = ticketRollupDAO.getRollups(Granularity.HOUR, Timestamp.valueOf("2024-03-01 05:45:00"));
+		assertEquals(1, hour.size());
+		assertEquals(105, hour.get(0).getTickets());
+		assertEquals(Timestamp.valueOf("2024-03-01 05:00:00").getTime(), hour.get(0).getBucket().getTime());
+		assertEquals(105, ticketRollupDAO.getRollups(Granularity.MINUTE, Timestamp.valueOf("2024-03-01 05:30:59"))
+				.get(0).getTickets());
+
+		long tickets = 0;
+		for (TicketRollup rollup : ticketRollupDAO.getRollups(Granularity.HOUR, Timestamp.valueOf("2024-03-01 00:00:00"),
+				Timestamp.valueOf("2024-03-03 00:00:00"))) {
+			tickets += rollup.getTickets();
+		}
+		assertEquals(5000, tickets);
+	}
+
+	@Test
+	public void failedRebuildKeepsThePreviousRollups() throws Exception {
+		execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, DISCOUNT) values"
+				+ "(1, 'ABCDEF', 1.5, '2024-03-01 10:00:00', '2024-03-01 11:00:00', false)");
+		assertEquals(1, ticketRollupDAO.rebuild(2));
+		// a chunk fails on a type no tariff knows
+		execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(3, true, 'TRUCK')");
+		execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, DISCOUNT) values"
+				+ "(3, 'GHIJKL', 1.5, '2024-03-01 10:00:00', '2024-03-01 11:00:00', false),"
+				+ "(1, 'MNOPQR', 1.5, '2024-03-01 10:00:00', '2024-03-01 11:00:00', false)");
+
+		assertThrows(SQLException.class, () -> ticketRollupDAO.rebuild(2));
+
+		List<TicketRollup> day = ticketRollupDAO.getRollups(Granularity.DAY, Timestamp.valueOf("2024-03-01 12:00:00"));
+		assertEquals(1, day.size());
+		assertEquals(1, day.get(0).getTickets());
+	}
+
+	private ExitResult parkTwoHours(ParkingService parkingService) throws Exception {
+		assertTrue(parkingService.enter("ABCDEF", ParkingType.CAR).isParked());
+		execute("update ticket set IN_TIME = dateadd('HOUR', -2, IN_TIME) where OUT_TIME is null");
+		ExitResult exit = parkingService.exit("ABCDEF");
+		assertTrue(exit.isExited());
+		return exit;
+	}
+
+	private void execute(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.cache.VisitCounter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VisitCounterTest {
+
+	@Test
+	public void countIsLoadedOnceThenBumpedBySaves() {
+		VisitCounter counter = new VisitCounter(10);
+		AtomicInteger loads = new AtomicInteger();
+		Function<String, Integer> loader = plate -> {
+			loads.incrementAndGet();
+			return 1;
+		};
+
+		assertEquals(1, counter.getVisits("ABCDEF", loader));
+		assertEquals(1, counter.getVisits("ABCDEF", loader));
+		counter.beginVisit("ABCDEF");
+		counter.recordVisit("ABCDEF");
+		assertEquals(2, counter.getVisits("ABCDEF", loader));
+		assertEquals(1, loads.get());
+
+		// a rolled back save changes nothing
+		counter.beginVisit("ABCDEF");
+		counter.abortVisit("ABCDEF");
+		assertEquals(2, counter.getVisits("ABCDEF", loader));
+	}
+
+	@Test
+	public void failedLoadIsNotCached() {
+		VisitCounter counter = new VisitCounter(10);
+
+		assertNull(counter.getVisits("ABCDEF", plate -> null));
+		assertEquals(0, counter.size());
+		assertEquals(3, counter.getVisits("ABCDEF", plate -> 3));
+		assertEquals(1, counter.size());
+	}
+
+	@Test
+	public void countsReadSinceTheLastEvictionAreKept() {
+		VisitCounter counter = new VisitCounter(2);
+		counter.getVisits("A", plate -> 1);
+		counter.getVisits("B", plate -> 2);
+		// B is read again, A is not
+		counter.getVisits("B", plate -> -1);
+
+		counter.getVisits("C", plate -> 3);
+
+		assertEquals(2, counter.size());
+		assertEquals(2, counter.getVisits("B", plate -> -1));
+		assertEquals(3, counter.getVisits("C", plate -> -1));
+		assertEquals(10, counter.getVisits("A", plate -> 10));
+	}
+
+	@Test
+	public void plateThatJustEnteredIsKept() {
+		VisitCounter counter = new VisitCounter(2);
+		counter.getVisits("A", plate -> 1);
+		counter.getVisits("B", plate -> 2);
+		counter.beginVisit("A");
+		counter.recordVisit("A");
+
+		counter.getVisits("C", plate -> 3);
+
+		assertEquals(2, counter.getVisits("A", plate -> -1));
+		assertEquals(3, counter.getVisits("C", plate -> -1));
+	}
+
+	@Test
+	public void evictionResumesWhereTheLastOneStopped() {
+		VisitCounter counter = new VisitCounter(4);
+		for (String plate : new String[] { "A", "B", "C", "D" }) {
+			counter.getVisits(plate, p -> 1);
+		}
+		// evicts A, then B for A loaded again
+		counter.getVisits("E", plate -> 1);
+		counter.getVisits("A", plate -> 2);
+
+		// the hand is past A, C is the next count it has not spared
+		counter.getVisits("F", plate -> 1);
+
+		assertEquals(4, counter.size());
+		assertEquals(2, counter.getVisits("A", plate -> -1));
+		assertEquals(-1, counter.getVisits("C", plate -> -1));
+	}
+
+	@Test
+	public void countLoadedWhileATicketIsSavedIsNotCached() throws Exception {
+		VisitCounter counter = new VisitCounter(10);
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch saved = new CountDownLatch(1);
+		CompletableFuture<Integer> load = CompletableFuture.supplyAsync(() -> counter.getVisits("ABCDEF", plate -> {
+			loading.countDown();
+			try {
+				saved.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			// the COUNT already sees the saved ticket
+			return 2;
+		}));
+		assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+		// neither waits for the load
+		counter.beginVisit("ABCDEF");
+		counter.recordVisit("ABCDEF");
+		assertEquals(7, counter.getVisits("GHIJKL", plate -> 7));
+		saved.countDown();
+
+		assertEquals(2, load.get(5, TimeUnit.SECONDS));
+		assertEquals(2, counter.getVisits("ABCDEF", plate -> 2));
+		counter.beginVisit("ABCDEF");
+		counter.recordVisit("ABCDEF");
+		assertEquals(3, counter.getVisits("ABCDEF", plate -> -1));
+	}
+}
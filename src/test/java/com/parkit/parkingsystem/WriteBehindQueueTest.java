@@ -0,0 +1,153 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPoolSettings;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.WriteBehindQueue;
+import com.parkit.parkingsystem.dao.WriteBehindStatistics;
+import com.parkit.parkingsystem.integration.config.H2TestConfig;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.service.GateServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindQueueTest {
+
+	private static final int SPOTS = 40;
+
+	private DataBaseConfig dataBaseConfig;
+	private ParkingSpotDAO parkingSpotDAO;
+	private TicketDAO ticketDAO;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBaseConfig = H2TestConfig.migrated();
+		for (int i = 1; i <= SPOTS; i++) {
+			execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(" + i + ", true, 'CAR')");
+		}
+		dataBaseConfig.enablePooling(new ConnectionPoolSettings());
+
+		parkingSpotDAO = new ParkingSpotDAO();
+		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+		parkingSpotDAO.loadAllocator();
+		ticketDAO = new TicketDAO();
+		ticketDAO.dataBaseConfig = dataBaseConfig;
+		ticketDAO.loadActiveTicketIndex();
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void concurrentGatesShareFlushesAndGetTheirTicketIds() throws Exception {
+		WriteBehindQueue queue = new WriteBehindQueue(dataBaseConfig, 16, 50);
+		parkingSpotDAO.writeBehindQueue = queue;
+		ticketDAO.writeBehindQueue = queue;
+		ParkingService parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+
+		List<CompletableFuture<EntryResult>> entries = new ArrayList<>();
+		try (GateServer gateServer = new GateServer(parkingService, SPOTS)) {
+			for (int i = 0; i < SPOTS; i++) {
+				entries.add(gateServer.enter("WB" + i, ParkingType.CAR));
+			}
+			CompletableFuture.allOf(entries.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+		}
+		for (CompletableFuture<EntryResult> entry : entries) {
+			assertTrue(entry.get().isParked());
+		}
+		assertEquals(SPOTS, queryInt("select count(distinct ID) from ticket where OUT_TIME is null"));
+		assertEquals(0, queryInt("select count(*) from parking where AVAILABLE = true"));
+
+		Set<Integer> spots = new HashSet<>();
+		for (int i = 0; i < SPOTS; i++) {
+			ExitResult exit = parkingService.exit("WB" + i);
+			assertTrue(exit.isExited());
+			assertTrue(spots.add(exit.getParkingNumber()));
+		}
+		queue.close();
+
+		assertEquals(SPOTS, queryInt("select count(*) from parking where AVAILABLE = true"));
+		assertEquals(SPOTS, queryInt("select count(*) from ticket where OUT_TIME is not null"));
+		WriteBehindStatistics statistics = queue.getStatistics();
+		assertEquals(SPOTS * 4, statistics.getWriteCount());
+		assertTrue(statistics.getAverageBatchSize() > 2, statistics.toString());
+		assertEquals(0, statistics.getFailedFlushes());
+	}
+
+	@Test
+	public void aFailedWriteOnlyFailsItsOwnGate() throws Exception {
+		WriteBehindQueue queue = new WriteBehindQueue(dataBaseConfig, 16, 50);
+		parkingSpotDAO.writeBehindQueue = queue;
+		ticketDAO.writeBehindQueue = queue;
+		ParkingService parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+
+		CompletableFuture<EntryResult> valid;
+		CompletableFuture<EntryResult> tooLong;
+		try (GateServer gateServer = new GateServer(parkingService, 2)) {
+			valid = gateServer.enter("ABCDEF", ParkingType.CAR);
+			// VEHICLE_REG_NUMBER is a varchar(10)
+			tooLong = gateServer.enter("ABCDEFGHIJKLMNOP", ParkingType.CAR);
+			CompletableFuture.allOf(valid, tooLong).get(30, TimeUnit.SECONDS);
+		}
+		queue.close();
+
+		assertTrue(valid.get().isParked());
+		assertEquals(EntryResult.Status.ERROR, tooLong.get().getStatus());
+		assertEquals(1, queryInt("select count(*) from ticket"));
+		assertEquals(SPOTS - 1, queryInt("select count(*) from parking where AVAILABLE = true"));
+		assertEquals(SPOTS - 1, parkingSpotDAO.parkingSpotAllocator.getAvailableCount(ParkingType.CAR));
+	}
+
+	@Test
+	public void flushesAreExportedAsMetrics() throws Exception {
+		long flushes = Metrics.histogram("WriteBehindQueue.flush").getCount();
+		long writes = Metrics.counter("WriteBehindQueue.writes").getCount();
+		WriteBehindQueue queue = new WriteBehindQueue(dataBaseConfig, 16, 0);
+
+		queue.submit(List.of(WriteBehindQueue.updateParkingSpot(1, false), WriteBehindQueue.updateParkingSpot(2, false)))
+				.get(5, TimeUnit.SECONDS);
+		queue.close();
+
+		assertEquals(flushes + 1, Metrics.histogram("WriteBehindQueue.flush").getCount());
+		assertEquals(writes + 2, Metrics.counter("WriteBehindQueue.writes").getCount());
+		assertTrue(Metrics.dump().contains("WriteBehindQueue.flush.time count="));
+		assertEquals(SPOTS - 2, queryInt("select count(*) from parking where AVAILABLE = true"));
+		assertThrows(IllegalStateException.class,
+				() -> queue.submit(List.of(WriteBehindQueue.updateParkingSpot(1, true))));
+	}
+
+	private void execute(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private int queryInt(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				Statement statement = con.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			assertTrue(rs.next());
+			return rs.getInt(1);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.parkit.parkingsystem.integration;
 
+import com.parkit.parkingsystem.config.ConnectionPoolSettings;
+import com.parkit.parkingsystem.config.SchemaMigrator;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.constants.Fare;
@@ -36,6 +38,8 @@ public class ParkingDataBaseIT {
 
 	@BeforeAll
 	private static void setUp() throws Exception {
+		dataBaseTestConfig.enablePooling(new ConnectionPoolSettings());
+		new SchemaMigrator(dataBaseTestConfig).migrate();
 		parkingSpotDAO = new ParkingSpotDAO();
 		parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
 		ticketDAO = new TicketDAO();//
@@ -52,6 +56,7 @@ public class ParkingDataBaseIT {
 	@AfterAll
 	private static void tearDown() {
 
+		dataBaseTestConfig.shutdown();
 	}
 
 	@Test
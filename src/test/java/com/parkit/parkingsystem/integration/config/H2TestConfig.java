@@ -0,0 +1,35 @@
+package com.parkit.parkingsystem.integration.config;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.UUID;
+
+// An in-memory H2 database in MySQL mode, a new one per instance, kept until the JVM exits
+public class H2TestConfig extends DataBaseConfig {
+
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private H2TestConfig() {
+    }
+
+    // no table, not even the schema history
+    public static H2TestConfig empty() {
+        return new H2TestConfig();
+    }
+
+    // migrated to the latest schema version
+    public static H2TestConfig migrated() throws Exception {
+        H2TestConfig dataBaseConfig = new H2TestConfig();
+        new SchemaMigrator(dataBaseConfig).migrate();
+        return dataBaseConfig;
+    }
+
+    @Override
+    protected Connection createConnection() throws SQLException {
+        return DriverManager.getConnection(url, "sa", "");
+    }
+}